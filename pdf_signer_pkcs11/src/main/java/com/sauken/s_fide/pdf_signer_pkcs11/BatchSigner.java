@@ -0,0 +1,344 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs11;
+
+import com.sauken.s_fide.pdf_signer_pkcs11.PDFSignerPKCS11.SignatureParameters;
+import com.sauken.s_fide.pdf_signer_pkcs11.PdfSigningEngine.SigningRequest;
+import com.sauken.s_fide.pdf_signer_pkcs11.PdfSigningEngine.SigningResult;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.LongSummaryStatistics;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Firma una lista de documentos (un directorio filtrado por un patrón glob o un archivo
+ * de lista) a través de una sesión abierta por cada token. Los hilos de trabajo leen,
+ * calculan el hash y escriben cada PDF en paralelo; sólo la operación de firma se
+ * serializa en el hilo propietario de cada token. Con varios slots los documentos se
+ * reparten con {@link SlotScheduler}.
+ */
+final class BatchSigner {
+    private static final String DEFAULT_GLOB = "*.pdf";
+
+    record BatchEntry(
+            Path input,
+            Path output,
+            boolean signed,
+            boolean skipped,
+            long bytes,
+            long elapsedMillis,
+            long timestampMillis,
+            String error
+    ) {}
+
+    private BatchSigner() {
+    }
+
+    static boolean run(SignatureParameters params, PdfSigningEngine engine) throws IOException {
+        List<TokenSession> sessions = engine.sessions();
+        List<Path> inputs = collectInputs(params);
+        if (inputs.isEmpty()) {
+            System.err.println("Error: No se encontraron documentos PDF para firmar");
+            return false;
+        }
+
+        int workers = Math.max(Math.min(params.workers(), inputs.size()), 1);
+        System.out.println("Firmando " + inputs.size() + " documentos con " + sessions.size() + " token(s) en los slots "
+                + sessions.stream().map(session -> Integer.toString(session.slotNumber()))
+                        .collect(Collectors.joining(", "))
+                + " y " + workers + " hilos de trabajo");
+
+        long start = System.nanoTime();
+        SlotScheduler scheduler = new SlotScheduler(sessions);
+        List<BatchEntry> entries;
+        if (params.ledgerPath() == null) {
+            entries = scheduler.run(inputs, workers,
+                    (session, input) -> engine.sign(session, new SigningRequest(input, params.options())));
+        } else {
+            try (SigningLedger ledger = SigningLedger.open(Paths.get(params.ledgerPath()))) {
+                entries = runWithLedger(params, engine, scheduler, ledger, inputs, workers);
+            }
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        writeSummary(params, entries, elapsedMillis);
+        writeContainerSummary(engine.containerStats());
+        writeSlotSummary(scheduler.stats(), elapsedMillis);
+        return entries.stream().allMatch(BatchEntry::signed);
+    }
+
+    /**
+     * Calcula en paralelo la clave de cada documento, descarta los que el registro indica
+     * como ya firmados y firma el resto, agregando cada uno al registro apenas termina.
+     */
+    private static List<BatchEntry> runWithLedger(SignatureParameters params, PdfSigningEngine engine,
+                                                  SlotScheduler scheduler, SigningLedger ledger, List<Path> inputs,
+                                                  int workers) throws IOException {
+        byte[] parametersDigest;
+        try {
+            parametersDigest = SigningLedger.parametersDigest(engine.signerCertificates(), params.options());
+        } catch (GeneralSecurityException e) {
+            throw new IOException("No se pudo calcular la clave del registro de firmas: " + e.getMessage(), e);
+        }
+        System.out.println("Registro de firmas: " + ledger.size() + " documentos en " + ledger.file());
+
+        BatchEntry[] entries = new BatchEntry[inputs.size()];
+        Map<Path, SigningLedger.Key> keys = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            List<Future<?>> futures = new ArrayList<>(inputs.size());
+            for (int i = 0; i < inputs.size(); i++) {
+                int index = i;
+                futures.add(executor.submit(
+                        () -> entries[index] = lookup(ledger, parametersDigest, inputs.get(index), keys)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Proceso interrumpido", e);
+        } catch (ExecutionException e) {
+            throw new IOException(describe(e), e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<Path> pending = new ArrayList<>();
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] == null) {
+                pending.add(inputs.get(i));
+            }
+        }
+
+        Iterator<BatchEntry> signed = scheduler.run(pending, workers, (session, input) -> {
+            SigningResult result = engine.sign(session, new SigningRequest(input, params.options()));
+            SigningLedger.Key key = keys.get(input);
+            if (key != null) {
+                ledger.record(key, result.output());
+            }
+            return result;
+        }).iterator();
+        for (int i = 0; i < entries.length; i++) {
+            if (entries[i] == null) {
+                entries[i] = signed.next();
+            }
+        }
+        return Arrays.asList(entries);
+    }
+
+    /**
+     * Devuelve la entrada del documento si ya está firmado, o {@code null} si hay que
+     * firmarlo. Los errores de lectura se dejan para el firmado, que los informa.
+     */
+    private static BatchEntry lookup(SigningLedger ledger, byte[] parametersDigest, Path input,
+                                     Map<Path, SigningLedger.Key> keys) {
+        long start = System.nanoTime();
+        try {
+            if (!Files.isRegularFile(input)) {
+                return null;
+            }
+            Path output = PdfSigningEngine.defaultOutputPath(input);
+            SigningLedger.Key key = SigningLedger.key(input, output, parametersDigest);
+            if (ledger.isSigned(key, output)) {
+                return new BatchEntry(input, output, true, true, Files.size(input),
+                        (System.nanoTime() - start) / 1_000_000, -1, null);
+            }
+            keys.put(input, key);
+        } catch (IOException e) {
+            // sin clave el documento se firma igual, pero no se registra
+        }
+        return null;
+    }
+
+    static List<Path> collectInputs(SignatureParameters params) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+
+        if (params.directory() != null) {
+            String glob = params.glob() != null ? params.glob() : DEFAULT_GLOB;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(params.directory()), glob)) {
+                for (Path path : stream) {
+                    if (Files.isRegularFile(path) && !isSignedOutput(path)) {
+                        inputs.add(path);
+                    }
+                }
+            }
+            inputs.sort(null);
+        }
+
+        if (params.fileList() != null) {
+            try (Stream<String> lines = Files.lines(Paths.get(params.fileList()), StandardCharsets.UTF_8)) {
+                lines.map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .map(Paths::get)
+                        .forEach(inputs::add);
+            }
+        }
+
+        return inputs;
+    }
+
+    private static boolean isSignedOutput(Path path) {
+        String fileName = path.getFileName().toString();
+        int dotIndex = fileName.lastIndexOf('.');
+        String baseName = dotIndex < 0 ? fileName : fileName.substring(0, dotIndex);
+        return baseName.endsWith(PdfSigningEngine.OUTPUT_SUFFIX);
+    }
+
+    static String describe(Throwable error) {
+        Throwable cause = error;
+        while (cause.getCause() != null && cause.getCause().getMessage() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.toString();
+    }
+
+    private static void writeSummary(SignatureParameters params, List<BatchEntry> entries, long elapsedMillis)
+            throws IOException {
+
+        long signedCount = entries.stream().filter(entry -> entry.signed() && !entry.skipped()).count();
+        long skippedCount = entries.stream().filter(BatchEntry::skipped).count();
+        long failedCount = entries.stream().filter(entry -> !entry.signed()).count();
+        long totalBytes = entries.stream()
+                .filter(entry -> entry.signed() && !entry.skipped())
+                .mapToLong(BatchEntry::bytes)
+                .sum();
+        double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+
+        if (params.reportPath() != null) {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(params.reportPath()), StandardCharsets.UTF_8);
+                 PrintWriter out = new PrintWriter(writer)) {
+                out.println("archivo;estado;salida;bytes;milisegundos;tsa_milisegundos;error");
+                for (BatchEntry entry : entries) {
+                    out.println(String.join(";",
+                            entry.input().toString(),
+                            entry.skipped() ? "OMITIDO" : entry.signed() ? "FIRMADO" : "ERROR",
+                            entry.output() != null ? entry.output().toString() : "",
+                            Long.toString(entry.bytes()),
+                            Long.toString(entry.elapsedMillis()),
+                            entry.timestampMillis() >= 0 ? Long.toString(entry.timestampMillis()) : "",
+                            entry.error() != null ? entry.error().replace(';', ',') : ""));
+                }
+            }
+            System.out.println("Resumen por archivo guardado en: " + Paths.get(params.reportPath()).toAbsolutePath());
+        }
+
+        for (BatchEntry entry : entries) {
+            if (!entry.signed()) {
+                System.err.println("Error: " + entry.input() + ": " + entry.error());
+            }
+        }
+
+        System.out.println("\n=== RESUMEN DEL LOTE ===");
+        System.out.println("Documentos procesados: " + entries.size());
+        System.out.println("Documentos firmados: " + signedCount);
+        if (skippedCount > 0) {
+            System.out.println("Documentos omitidos (ya firmados según el registro): " + skippedCount);
+        }
+        System.out.println("Documentos con error: " + failedCount);
+        System.out.println(String.format(Locale.ROOT, "Tiempo total: %.2f s", seconds));
+        System.out.println(String.format(Locale.ROOT, "Rendimiento: %.2f documentos/s, %.2f MB/s",
+                signedCount / seconds, totalBytes / seconds / (1024.0 * 1024.0)));
+
+        LongSummaryStatistics timestamps = entries.stream()
+                .mapToLong(BatchEntry::timestampMillis)
+                .filter(millis -> millis >= 0)
+                .summaryStatistics();
+        if (timestamps.getCount() > 0) {
+            System.out.println(String.format(Locale.ROOT,
+                    "Sello de tiempo: %d consultas, promedio %.0f ms, mínimo %d ms, máximo %d ms",
+                    timestamps.getCount(), timestamps.getAverage(), timestamps.getMin(), timestamps.getMax()));
+        }
+    }
+
+    private static void writeContainerSummary(ContainerSizeEstimator.Stats stats) {
+        if (stats.signatures() == 0) {
+            return;
+        }
+        System.out.println(String.format(Locale.ROOT,
+                "Contenedor de firma: %d bytes reservados, %d bytes usados (%.1f %%), %d reintentos por espacio",
+                stats.reservedBytes(), stats.usedBytes(), stats.usedPercentage(), stats.retries()));
+    }
+
+    private static void writeSlotSummary(List<SlotScheduler.SlotStats> stats, long elapsedMillis) {
+        if (stats.size() < 2) {
+            return;
+        }
+        double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+
+        System.out.println("\n=== RENDIMIENTO POR SLOT ===");
+        for (SlotScheduler.SlotStats slot : stats) {
+            System.out.println(String.format(Locale.ROOT,
+                    "Slot %d: %d firmados (%d tomados de otras colas), %d fallos del token, %.2f documentos/s%s",
+                    slot.slotNumber(), slot.signed(), slot.stolen(), slot.tokenFailures(), slot.signed() / seconds,
+                    slot.active() ? "" : " - fuera de rotación"));
+        }
+    }
+}
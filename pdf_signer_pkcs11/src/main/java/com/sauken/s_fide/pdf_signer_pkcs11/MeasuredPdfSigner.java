@@ -0,0 +1,116 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs11;
+
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfString;
+import com.itextpdf.kernel.pdf.StampingProperties;
+import com.itextpdf.signatures.PdfSigner;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+/**
+ * {@link PdfSigner} que registra cuántos bytes del /Contents reservado ocupa el
+ * contenedor de firma y marca en el {@link PhaseClock} las fases de escritura, hash del
+ * /ByteRange y firma.
+ */
+final class MeasuredPdfSigner extends PdfSigner {
+    private final PhaseClock clock;
+    private int containerBytes = -1;
+
+    MeasuredPdfSigner(PdfReader reader, OutputStream outputStream, StampingProperties properties, PhaseClock clock)
+            throws IOException {
+        super(reader, outputStream, properties);
+        this.clock = clock;
+    }
+
+    MeasuredPdfSigner(PdfReader reader, OutputStream outputStream, String path, StampingProperties properties,
+                      PhaseClock clock) throws IOException {
+        super(reader, outputStream, path, properties);
+        this.clock = clock;
+    }
+
+    /**
+     * Bytes del contenedor CMS escrito, o -1 si todavía no se firmó.
+     */
+    int containerBytes() {
+        return containerBytes;
+    }
+
+    @Override
+    protected void preClose(Map<PdfName, Integer> exclusionSizes) throws IOException {
+        clock.enter(PhaseClock.WRITE);
+        super.preClose(exclusionSizes);
+    }
+
+    @Override
+    protected InputStream getRangeStream() throws IOException {
+        long expectedBytes = 0;
+        for (int i = 1; i < range.length; i += 2) {
+            expectedBytes += range[i];
+        }
+        return clock.measureHash(super.getRangeStream(), expectedBytes);
+    }
+
+    @Override
+    protected void close(PdfDictionary update) throws IOException {
+        clock.enter(PhaseClock.WRITE);
+        PdfString contents = update.getAsString(PdfName.Contents);
+        if (contents != null) {
+            containerBytes = ContainerSizeEstimator.encodedLength(contents.getValueBytes());
+        }
+        super.close(update);
+    }
+}
@@ -50,28 +50,31 @@
 
 package com.sauken.s_fide.pdf_signer_pkcs11;
 
-import com.itextpdf.kernel.geom.Rectangle;
-import com.itextpdf.kernel.pdf.*;
-import com.itextpdf.signatures.*;
+import com.itextpdf.kernel.pdf.CompressionConstants;
+import com.sauken.s_fide.pdf_signer_pkcs11.PdfSigningEngine.SigningOptions;
+import com.sauken.s_fide.pdf_signer_pkcs11.PdfSigningEngine.SigningRequest;
+import com.sauken.s_fide.pdf_signer_pkcs11.PdfSigningEngine.SigningResult;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.*;
-import java.security.cert.Certificate;
-import java.security.cert.X509Certificate;
-import javax.security.auth.x500.X500Principal;
 import java.io.UnsupportedEncodingException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class PDFSignerPKCS11 {
     private static final Logger logger = Logger.getLogger(PDFSignerPKCS11.class.getName());
-    private static final String OUTPUT_SUFFIX = "-signed";
+    private static final String AUTO_PROVIDER = "auto";
+    private static final String STANDARD_STREAM = "-";
     private static final String VERSION = "S-FIDE PDFSignerPKCS11 v1.0.0 - Grupo Sauken S.A.";
     private static final String LICENSE_TEXT = readResourceFile("/LICENSE.txt");
     private static final String HELP_TEXT = readResourceFile("/HELP.txt");
@@ -89,16 +92,28 @@ public class PDFSignerPKCS11 {
         }
     }
 
-    private record SignatureParameters(
+    record SignatureParameters(
             String pdfPath,
+            String outputPath,
             String libraryPath,
             String password,
-            int slotNumber,
-            boolean lock,
-            float xPos,
-            float yPos,
-            String customText
-    ) {}
+            List<Integer> slotNumbers,
+            SigningOptions options,
+            String directory,
+            String glob,
+            String fileList,
+            int workers,
+            String reportPath,
+            String ledgerPath
+    ) {
+        boolean isBatch() {
+            return directory != null || fileList != null;
+        }
+
+        boolean isStreaming() {
+            return STANDARD_STREAM.equals(pdfPath) || STANDARD_STREAM.equals(outputPath);
+        }
+    }
 
     public static void main(String[] args) {
         try {
@@ -120,8 +135,23 @@ public class PDFSignerPKCS11 {
                 return;
             }
 
-            signDocument(params);
-            System.exit(0);
+            boolean signed;
+            try (PdfSigningEngine engine = PdfSigningEngine.open(
+                    Paths.get(params.libraryPath()), params.password().toCharArray(), params.slotNumbers())) {
+                if (params.isBatch()) {
+                    signed = BatchSigner.run(params, engine);
+                } else if (params.isStreaming()) {
+                    signStreaming(params, engine);
+                    signed = true;
+                } else {
+                    Path output = params.outputPath() != null ? Paths.get(params.outputPath()) : null;
+                    SigningResult result = engine.sign(
+                            new SigningRequest(Paths.get(params.pdfPath()), output, params.options()));
+                    System.out.println("Documento firmado exitosamente: " + result.output().toAbsolutePath());
+                    signed = true;
+                }
+            }
+            System.exit(signed ? 0 : 1);
 
         } catch (Exception e) {
             logger.log(Level.SEVERE, "Error en la ejecución: {0}", e.getMessage());
@@ -130,6 +160,37 @@ public class PDFSignerPKCS11 {
         }
     }
 
+    /**
+     * Firma leyendo de la entrada estándar o escribiendo en la salida estándar ("-"), sin
+     * archivos temporales. Los mensajes van a la salida de errores para no mezclarse con
+     * el PDF.
+     */
+    private static void signStreaming(SignatureParameters params, PdfSigningEngine engine) throws Exception {
+        boolean toStdout = params.outputPath() == null || STANDARD_STREAM.equals(params.outputPath());
+        Path outputPath = toStdout ? null : Paths.get(params.outputPath());
+        WritableByteChannel output = toStdout
+                ? new FileOutputStream(FileDescriptor.out).getChannel()
+                : FileChannel.open(outputPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE);
+        boolean signed = false;
+        try {
+            SigningResult result = STANDARD_STREAM.equals(params.pdfPath())
+                    ? engine.sign(System.in, output, params.options())
+                    : engine.sign(Paths.get(params.pdfPath()), output, params.options());
+            signed = true;
+            errorStream.println("Documento firmado exitosamente: "
+                    + (toStdout ? "salida estándar" : outputPath.toAbsolutePath())
+                    + " (" + result.bytes() + " bytes de entrada)");
+        } finally {
+            if (outputPath != null) {
+                output.close();
+                if (!signed) {
+                    Files.deleteIfExists(outputPath);
+                }
+            }
+        }
+    }
+
     private static void processSpecialArgument(String arg) {
         String argLower = arg.toLowerCase();
         switch (argLower) {
@@ -169,11 +230,26 @@ public class PDFSignerPKCS11 {
         String pdfPath = null;
         String libraryPath = null;
         String password = null;
-        int slotNumber = -1;
+        List<Integer> slotNumbers = List.of();
         boolean lock = false;
         float xPos = 0;
         float yPos = 0;
         String customText = null;
+        boolean skipPreflight = false;
+        boolean ltv = false;
+        URI tsaUrl = null;
+        PdfInput.Mode inputMode = PdfInput.Mode.MEMORY;
+        int compressionLevel = CompressionConstants.DEFAULT_COMPRESSION;
+        String digestProvider = null;
+        String directory = null;
+        String glob = null;
+        String fileList = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        String reportPath = null;
+        String ledgerPath = null;
+        Path preflightCache = null;
+        Path timingsFile = null;
+        String outputPath = null;
 
         try {
             for (int i = 0; i < args.length; i++) {
@@ -181,6 +257,9 @@ public class PDFSignerPKCS11 {
                     case "-i", "--input" -> {
                         if (i + 1 < args.length) pdfPath = args[++i];
                     }
+                    case "-o", "--output" -> {
+                        if (i + 1 < args.length) outputPath = args[++i];
+                    }
                     case "-l", "--library" -> {
                         if (i + 1 < args.length) libraryPath = args[++i];
                     }
@@ -188,7 +267,7 @@ public class PDFSignerPKCS11 {
                         if (i + 1 < args.length) password = args[++i];
                     }
                     case "-s", "--slot" -> {
-                        if (i + 1 < args.length) slotNumber = Integer.parseInt(args[++i]);
+                        if (i + 1 < args.length) slotNumbers = parseSlots(args[++i]);
                     }
                     case "-k", "--lock" -> {
                         if (i + 1 < args.length) lock = Boolean.parseBoolean(args[++i]);
@@ -202,6 +281,44 @@ public class PDFSignerPKCS11 {
                     case "-t", "--text" -> {
                         if (i + 1 < args.length) customText = args[++i];
                     }
+                    case "-z", "--compression" -> {
+                        if (i + 1 < args.length) compressionLevel = Integer.parseInt(args[++i]);
+                    }
+                    case "--skip-preflight" -> skipPreflight = true;
+                    case "--ltv" -> ltv = true;
+                    case "--tsa" -> {
+                        if (i + 1 < args.length) tsaUrl = resolveTsaUrl(args[++i]);
+                    }
+                    case "--digest-provider" -> {
+                        if (i + 1 < args.length) digestProvider = resolveProvider(args[++i]);
+                    }
+                    case "-d", "--directory" -> {
+                        if (i + 1 < args.length) directory = args[++i];
+                    }
+                    case "-g", "--glob" -> {
+                        if (i + 1 < args.length) glob = args[++i];
+                    }
+                    case "-f", "--file-list" -> {
+                        if (i + 1 < args.length) fileList = args[++i];
+                    }
+                    case "-w", "--workers" -> {
+                        if (i + 1 < args.length) workers = Integer.parseInt(args[++i]);
+                    }
+                    case "-r", "--report" -> {
+                        if (i + 1 < args.length) reportPath = args[++i];
+                    }
+                    case "--ledger" -> {
+                        if (i + 1 < args.length) ledgerPath = args[++i];
+                    }
+                    case "--preflight-cache" -> {
+                        if (i + 1 < args.length) preflightCache = Paths.get(args[++i]);
+                    }
+                    case "--timings" -> {
+                        if (i + 1 < args.length) timingsFile = Paths.get(args[++i]);
+                    }
+                    case "--input-mode" -> {
+                        if (i + 1 < args.length) inputMode = PdfInput.Mode.fromArgument(args[++i]);
+                    }
                     case "-h", "--help" -> {
                         return null;
                     }
@@ -211,299 +328,121 @@ public class PDFSignerPKCS11 {
             logger.log(Level.SEVERE, "Error al parsear los argumentos numéricos");
             errorStream.println("Error: Los valores numéricos proporcionados no son válidos");
             return null;
+        } catch (IllegalArgumentException e) {
+            errorStream.println("Error: " + e.getMessage());
+            return null;
         }
 
-        if (pdfPath == null || libraryPath == null || password == null || slotNumber < 0) {
+        boolean batch = directory != null || fileList != null;
+        if ((pdfPath == null && !batch) || libraryPath == null || password == null || slotNumbers.isEmpty()) {
             logger.log(Level.SEVERE, "Faltan argumentos obligatorios");
             errorStream.println("Error: Faltan argumentos obligatorios");
             return null;
         }
 
-        return new SignatureParameters(pdfPath, libraryPath, password, slotNumber, lock, xPos, yPos, customText);
-    }
-
-    private static boolean validateInputs(SignatureParameters params) {
-        Path pdfPath = Paths.get(params.pdfPath());
-        Path libraryPath = Paths.get(params.libraryPath());
-
-        if (!Files.exists(pdfPath) || !Files.isRegularFile(pdfPath)) {
-            errorStream.println("Error: El archivo PDF no existe o no es accesible: " + params.pdfPath());
-            return false;
+        if (outputPath != null && batch) {
+            errorStream.println("Error: No se puede combinar --output con --directory o --file-list");
+            return null;
         }
 
-        if (!Files.exists(libraryPath) || !Files.isRegularFile(libraryPath)) {
-            errorStream.println("Error: La biblioteca PKCS#11 no existe o no es accesible: " + params.libraryPath());
-            return false;
+        if (pdfPath != null && batch) {
+            errorStream.println("Error: No se puede combinar --input con --directory o --file-list");
+            return null;
         }
 
-        try {
-            // Validar el PDF
-            try (InputStream inputStream = Files.newInputStream(pdfPath);
-                 PdfReader reader = new PdfReader(inputStream);
-                 PdfDocument pdfDoc = new PdfDocument(reader)) {
-
-                if (reader.isEncrypted()) {
-                    errorStream.println("Error: El PDF está encriptado y no puede ser firmado");
-                    return false;
-                }
-
-                // Verificar firmas existentes
-                SignatureUtil signUtil = new SignatureUtil(pdfDoc);
-                List<String> signatures = signUtil.getSignatureNames();
-
-                if (!signatures.isEmpty()) {
-                    System.out.println("Firmas existentes encontradas:");
-                    for (String sigName : signatures) {
-                        PdfPKCS7 pkcs7 = signUtil.readSignatureData(sigName);
-                        if (!pkcs7.verifySignatureIntegrityAndAuthenticity()) {
-                            errorStream.println("Error: La firma existente '" + sigName + "' no es válida");
-                            return false;
-                        }
-                        System.out.println("- " + sigName + ": válida");
-                    }
-                }
-            }
-
-            // Validar el token PKCS11
-            Provider provider = null;
-            try {
-                provider = configurePKCS11Provider(params.libraryPath(), params.slotNumber());
-                Security.addProvider(provider);
-
-                try {
-                    KeyStore keyStore = loadKeyStore(params.password());
-                    String alias = keyStore.aliases().nextElement();
-
-                    if (!keyStore.isKeyEntry(alias)) {
-                        errorStream.println("Error: El token no contiene una clave privada válida");
-                        return false;
-                    }
+        if (ledgerPath != null && !batch) {
+            errorStream.println("Error: --ledger sólo se aplica a la firma por lotes");
+            return null;
+        }
 
-                    Certificate[] chain = keyStore.getCertificateChain(alias);
-                    if (chain == null || chain.length == 0) {
-                        errorStream.println("Error: No se encontró una cadena de certificados válida en el token");
-                        return false;
-                    }
+        if (workers < 1) {
+            errorStream.println("Error: La cantidad de hilos de trabajo debe ser mayor que cero");
+            return null;
+        }
 
-                    try {
-                        PrivateKey privateKey = (PrivateKey) keyStore.getKey(alias, params.password().toCharArray());
-                        if (privateKey == null) {
-                            errorStream.println("Error: No se pudo obtener la clave privada del token");
-                            return false;
-                        }
-                    } catch (UnrecoverableKeyException | NoSuchAlgorithmException e) {
-                        errorStream.println("Error: Error al acceder a la clave privada del token");
-                        return false;
-                    }
-                } catch (GeneralSecurityException e) {
-                    errorStream.println("Error: Error al cargar el KeyStore");
-                    return false;
-                }
+        if (compressionLevel < CompressionConstants.DEFAULT_COMPRESSION
+                || compressionLevel > CompressionConstants.BEST_COMPRESSION) {
+            errorStream.println("Error: El nivel de compresión debe estar entre -1 y 9");
+            return null;
+        }
 
-                return true;
+        SigningOptions options = new SigningOptions(lock, xPos, yPos, customText, skipPreflight, inputMode,
+                compressionLevel, digestProvider, ltv, tsaUrl, preflightCache, timingsFile);
+        return new SignatureParameters(pdfPath, outputPath, libraryPath, password, slotNumbers, options, directory, glob,
+                fileList, workers, reportPath, ledgerPath);
+    }
 
-            } finally {
-                if (provider != null) {
-                    Security.removeProvider(provider.getName());
-                }
+    /**
+     * Interpreta una lista de slots separados por comas, por ejemplo {@code 0,1,2}.
+     */
+    private static List<Integer> parseSlots(String value) {
+        List<Integer> slots = new ArrayList<>();
+        for (String part : value.split(",")) {
+            int slot = Integer.parseInt(part.trim());
+            if (slot < 0) {
+                throw new IllegalArgumentException("El número de slot no puede ser negativo");
+            }
+            if (!slots.contains(slot)) {
+                slots.add(slot);
             }
-        } catch (IOException | GeneralSecurityException e) {
-            errorStream.println("Error: " + e.getMessage());
-            return false;
         }
+        return List.copyOf(slots);
     }
 
-    private static String createOutputPath(String inputPath) {
-        Path path = Paths.get(inputPath);
-        String fileName = path.getFileName().toString();
-        int dotIndex = fileName.lastIndexOf('.');
-
-        if (dotIndex < 0) {
-            return path.resolveSibling(fileName + OUTPUT_SUFFIX).toString();
+    /**
+     * Devuelve el proveedor JCA indicado, o {@code null} para "auto": en ese caso decide el
+     * orden de proveedores de la JVM, donde SUN calcula SHA-2 con instrucciones del procesador.
+     */
+    private static String resolveProvider(String name) {
+        if (AUTO_PROVIDER.equalsIgnoreCase(name)) {
+            return null;
         }
-
-        String baseName = fileName.substring(0, dotIndex);
-        String extension = fileName.substring(dotIndex);
-        return path.resolveSibling(baseName + OUTPUT_SUFFIX + extension).toString();
-    }
-
-    private static Provider configurePKCS11Provider(String libraryPath, int slotNumber) {
-        String config = String.format(
-                "--name=PDFSignerProvider\nlibrary=%s\nslot=%d",
-                libraryPath.replace("\\", "\\\\"),
-                slotNumber);
-
-        Provider provider = Security.getProvider("SunPKCS11");
-        if (provider == null) {
-            throw new IllegalArgumentException("Error: Proveedor SunPKCS11 no disponible");
+        if (Security.getProvider(name) == null) {
+            throw new IllegalArgumentException("Proveedor criptográfico no disponible: " + name);
         }
-        return provider.configure(config);
+        return name;
     }
 
-    private static KeyStore loadKeyStore(String password) throws GeneralSecurityException {
+    private static URI resolveTsaUrl(String value) {
+        URI url;
         try {
-            KeyStore keyStore = KeyStore.getInstance("PKCS11");
-            keyStore.load(null, password.toCharArray());
-            return keyStore;
-        } catch (IOException e) {
-            throw new GeneralSecurityException("Error: Contraseña incorrecta o error al acceder al token");
-        } catch (Exception e) {
-            throw new GeneralSecurityException("Error: Error al cargar el KeyStore");
+            url = new URI(value);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("URL de la TSA no válida: " + value);
+        }
+        String scheme = url.getScheme();
+        if (!("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)) || url.getHost() == null) {
+            throw new IllegalArgumentException("URL de la TSA no válida: " + value);
         }
+        return url;
     }
 
-    private static void signDocument(SignatureParameters params)
-            throws GeneralSecurityException, IOException {
-        Provider provider = null;
-        try {
-            provider = configurePKCS11Provider(params.libraryPath(), params.slotNumber());
-            Security.addProvider(provider);
-
-            Certificate[] chain;
-            PrivateKey privateKey;
-            String alias;
-            X500Principal subjectDN;
-
-            try {
-                KeyStore keyStore = loadKeyStore(params.password());
-                alias = keyStore.aliases().nextElement();
-                privateKey = (PrivateKey) keyStore.getKey(alias, params.password().toCharArray());
-                chain = keyStore.getCertificateChain(alias);
-                X509Certificate cert = (X509Certificate) chain[0];
-                subjectDN = cert.getSubjectX500Principal();
-            } catch (Exception e) {
-                throw new GeneralSecurityException("Error: Error al acceder al token");
-            }
-
-            Path tempPath = Files.createTempFile("sig", ".tmp");
-            Path finalOutputPath = Paths.get(createOutputPath(params.pdfPath()));
-
-            try (InputStream inputStream = Files.newInputStream(Paths.get(params.pdfPath()));
-                 OutputStream outputStream = Files.newOutputStream(tempPath)) {
-
-                PdfReader reader = new PdfReader(inputStream);
-                StampingProperties stampingProperties = new StampingProperties();
-                stampingProperties.useAppendMode();
-
-                PdfSigner signer = new PdfSigner(reader, outputStream, stampingProperties);
-
-                String fieldName = String.format("Signature_%s_%d",
-                        getNameFromDN(subjectDN.getName()).replaceAll("[^a-zA-Z0-9]", "_"),
-                        System.currentTimeMillis());
-                signer.setFieldName(fieldName);
-
-                if (params.xPos() != 0 || params.yPos() != 0) {
-                    PdfSignatureAppearance appearance = signer.getSignatureAppearance();
-                    Rectangle rect = new Rectangle(params.xPos(), params.yPos(), 160, 70);
-                    appearance.setPageRect(rect)
-                            .setPageNumber(1);
-                    appearance.setRenderingMode(PdfSignatureAppearance.RenderingMode.DESCRIPTION);
-                    String signatureText = buildSignatureText(
-                            params.customText(),
-                            subjectDN
-                    );
-                    appearance.setLayer2Text(signatureText)
-                            .setLayer2FontSize(8.0f);
-                }
-
-                if (params.lock()) {
-                    signer.setCertificationLevel(PdfSigner.CERTIFIED_NO_CHANGES_ALLOWED);
-                }
-
-                IExternalSignature signature = new PrivateKeySignature(
-                        privateKey,
-                        DigestAlgorithms.SHA256,
-                        provider.getName()
-                );
-
-                signer.signDetached(
-                        new BouncyCastleDigest(),
-                        signature,
-                        chain,
-                        null,
-                        null,
-                        null,
-                        0,
-                        PdfSigner.CryptoStandard.CMS
-                );
-            } catch (Exception e) {
-                Files.deleteIfExists(tempPath);
-                throw new IOException("Error: Error al firmar el documento");
-            }
-
-            if (params.lock()) {
-                Path finalTempPath = Files.createTempFile("sig_final", ".tmp");
-                try {
-                    applyDocumentRestrictions(tempPath, finalTempPath);
-                    Files.move(finalTempPath, finalOutputPath,
-                            java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-                } finally {
-                    Files.deleteIfExists(tempPath);
-                    Files.deleteIfExists(finalTempPath);
-                }
-            } else {
-                Files.move(tempPath, finalOutputPath,
-                        java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-            }
-
-            System.out.println("Documento firmado exitosamente: " + finalOutputPath.toAbsolutePath());
+    private static boolean validateInputs(SignatureParameters params) {
+        Path libraryPath = Paths.get(params.libraryPath());
 
-        } finally {
-            if (provider != null) {
-                Security.removeProvider(provider.getName());
+        if (params.pdfPath() != null && !STANDARD_STREAM.equals(params.pdfPath())) {
+            Path pdfPath = Paths.get(params.pdfPath());
+            if (!Files.exists(pdfPath) || !Files.isRegularFile(pdfPath)) {
+                errorStream.println("Error: El archivo PDF no existe o no es accesible: " + params.pdfPath());
+                return false;
             }
         }
-    }
 
-    private static void applyDocumentRestrictions(Path sourcePath, Path targetPath) throws IOException {
-        try (InputStream tempInputStream = Files.newInputStream(sourcePath);
-             OutputStream finalOutputStream = Files.newOutputStream(targetPath)) {
-
-            WriterProperties writerProps = new WriterProperties()
-                    .addXmpMetadata()
-                    .setCompressionLevel(CompressionConstants.BEST_COMPRESSION)
-                    .setStandardEncryption(
-                            null,
-                            null,
-                            EncryptionConstants.ALLOW_PRINTING |
-                                    EncryptionConstants.ALLOW_SCREENREADERS,
-                            EncryptionConstants.ENCRYPTION_AES_256 |
-                                    EncryptionConstants.DO_NOT_ENCRYPT_METADATA
-                    );
-
-            PdfReader reader = new PdfReader(tempInputStream);
-            PdfWriter writer = new PdfWriter(finalOutputStream, writerProps);
-            new PdfDocument(reader, writer).close();
+        if (params.directory() != null && !Files.isDirectory(Paths.get(params.directory()))) {
+            errorStream.println("Error: El directorio de entrada no existe o no es accesible: " + params.directory());
+            return false;
         }
-    }
-
-    private static String buildSignatureText(
-            String customText,
-            X500Principal subjectDN) {
 
-        String timestamp = LocalDateTime.now()
-                .format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"));
-
-        StringBuilder text = new StringBuilder();
-
-        if (customText != null && !customText.trim().isEmpty()) {
-            text.append(customText).append("\n\n");
+        if (params.fileList() != null && !Files.isRegularFile(Paths.get(params.fileList()))) {
+            errorStream.println("Error: El archivo de lista no existe o no es accesible: " + params.fileList());
+            return false;
         }
 
-        text.append("Firmado digitalmente por:\n")
-                .append(getNameFromDN(subjectDN.getName()))
-                .append("\nFecha: ")
-                .append(timestamp);
-
-        return text.toString();
-    }
+        if (!Files.exists(libraryPath) || !Files.isRegularFile(libraryPath)) {
+            errorStream.println("Error: La biblioteca PKCS#11 no existe o no es accesible: " + params.libraryPath());
+            return false;
+        }
 
-    private static String getNameFromDN(String dn) {
-        return java.util.Arrays.stream(dn.split(","))
-                .map(String::trim)
-                .filter(part -> part.startsWith("CN="))
-                .map(part -> part.substring(3))
-                .findFirst()
-                .orElse(dn);
+        return true;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,131 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs11;
+
+import com.itextpdf.io.source.IRandomAccessSource;
+import com.itextpdf.io.source.RandomAccessSourceFactory;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.ReaderProperties;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Origen de lectura del PDF a firmar. En los modos {@code mmap} y {@code raf} el documento
+ * se lee directamente del disco en lugar de copiarse completo al heap.
+ */
+public final class PdfInput implements Closeable {
+
+    public enum Mode {
+        MEMORY, MAPPED, RANDOM_ACCESS;
+
+        static Mode fromArgument(String value) {
+            return switch (value.toLowerCase()) {
+                case "memory" -> MEMORY;
+                case "mmap" -> MAPPED;
+                case "raf" -> RANDOM_ACCESS;
+                default -> throw new IllegalArgumentException("Modo de lectura no reconocido: " + value);
+            };
+        }
+
+        boolean isLowMemory() {
+            return this != MEMORY;
+        }
+    }
+
+    private final IRandomAccessSource source;
+    private final PdfReader reader;
+
+    private PdfInput(IRandomAccessSource source) throws IOException {
+        this.source = source;
+        try {
+            this.reader = new PdfReader(source, new ReaderProperties());
+        } catch (IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    static PdfInput open(Path path, Mode mode) throws IOException {
+        RandomAccessSourceFactory factory = new RandomAccessSourceFactory().setForceRead(false);
+        return switch (mode) {
+            case MEMORY -> {
+                try (InputStream inputStream = Files.newInputStream(path)) {
+                    yield new PdfInput(factory.createSource(inputStream));
+                }
+            }
+            case MAPPED -> new PdfInput(factory.createBestSource(path.toString()));
+            case RANDOM_ACCESS -> new PdfInput(factory.setUsePlainRandomAccess(true).createBestSource(path.toString()));
+        };
+    }
+
+    /**
+     * Documento ya leído en memoria, por ejemplo desde la entrada estándar.
+     */
+    static PdfInput of(byte[] document) throws IOException {
+        return new PdfInput(new RandomAccessSourceFactory().createSource(document));
+    }
+
+    PdfReader reader() {
+        return reader;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } finally {
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs11;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tiempos por fase de la firma de un documento: lectura, verificación previa, preparación
+ * del campo (apariencia, bloqueo, DSS), escritura, hash del /ByteRange y firma. Cuenta los
+ * bytes que recorre el hash, informa el avance periódicamente en documentos grandes y arma
+ * el registro final en JSON.
+ *
+ * <p>Las fases son secuenciales: entrar en una cierra la anterior. Si una fase se repite
+ * (por ejemplo al reintentar con un contenedor más grande) los tiempos se suman.
+ */
+final class PhaseClock {
+    static final String READ = "lectura";
+    static final String PREFLIGHT = "verificacion_previa";
+    static final String PREPARE = "preparacion";
+    static final String WRITE = "escritura";
+    static final String HASH = "hash";
+    static final String SIGN = "firma";
+
+    private static final Logger logger = Logger.getLogger(PhaseClock.class.getName());
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    private final String documentName;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> nanos = new LinkedHashMap<>();
+    private String current;
+    private long since;
+    private long hashedBytes;
+    private long hashNanos;
+
+    PhaseClock(String documentName) {
+        this.documentName = documentName;
+    }
+
+    void enter(String phase) {
+        long now = System.nanoTime();
+        if (current != null) {
+            long elapsed = now - since;
+            nanos.merge(current, elapsed, Long::sum);
+            if (elapsed >= PROGRESS_INTERVAL_NANOS) {
+                logger.log(Level.INFO, String.format(Locale.ROOT, "%s: fase %s en %.1f s", documentName, current,
+                        elapsed / 1e9));
+            }
+        }
+        current = phase;
+        since = now;
+    }
+
+    void stop() {
+        enter(null);
+    }
+
+    /**
+     * Envuelve el flujo del /ByteRange que consume el hash: entra en la fase de hash, cuenta
+     * los bytes y pasa a la fase de firma al llegar al final.
+     */
+    InputStream measureHash(InputStream rangeStream, long expectedBytes) {
+        enter(HASH);
+        return new HashProgressStream(rangeStream, expectedBytes);
+    }
+
+    long totalMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Registro en una línea con los tiempos en milisegundos y el rendimiento del hash.
+     */
+    String toJson(long documentBytes) {
+        StringBuilder phases = new StringBuilder();
+        for (Map.Entry<String, Long> phase : nanos.entrySet()) {
+            if (!phases.isEmpty()) {
+                phases.append(',');
+            }
+            phases.append('"').append(phase.getKey()).append("\":").append(phase.getValue() / 1_000_000);
+        }
+        return String.format(Locale.ROOT,
+                "{\"documento\":%s,\"bytes\":%d,\"bytes_hash\":%d,\"hash_mb_s\":%.1f,\"total_ms\":%d,\"fases_ms\":{%s}}",
+                TimingLog.quote(documentName), documentBytes, hashedBytes, hashThroughput(), totalMillis(), phases);
+    }
+
+    private double hashThroughput() {
+        return hashNanos == 0 ? 0 : hashedBytes / MEGABYTE / (hashNanos / 1e9);
+    }
+
+    private final class HashProgressStream extends FilterInputStream {
+        private final long expectedBytes;
+        private final long streamStart = System.nanoTime();
+        private long read;
+        private long nextReport = streamStart + PROGRESS_INTERVAL_NANOS;
+        private boolean finished;
+
+        HashProgressStream(InputStream in, long expectedBytes) {
+            super(in);
+            this.expectedBytes = expectedBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            advance(b < 0 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            advance(count);
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            super.close();
+        }
+
+        private void advance(int count) {
+            if (count < 0) {
+                finish();
+                return;
+            }
+            read += count;
+            long now = System.nanoTime();
+            if (now >= nextReport) {
+                nextReport = now + PROGRESS_INTERVAL_NANOS;
+                double seconds = (now - streamStart) / 1e9;
+                logger.log(Level.INFO, String.format(Locale.ROOT, "Hash de %s: %d %% (%.1f de %.1f MB, %.0f MB/s)",
+                        documentName, expectedBytes > 0 ? read * 100 / expectedBytes : 0, read / MEGABYTE,
+                        expectedBytes / MEGABYTE, read / MEGABYTE / seconds));
+            }
+        }
+
+        private void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            hashedBytes += read;
+            hashNanos += System.nanoTime() - streamStart;
+            enter(SIGN);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs11;
+
+import com.itextpdf.io.source.IRandomAccessSource;
+import com.itextpdf.kernel.pdf.PdfArray;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfString;
+import com.itextpdf.signatures.PdfSignature;
+import com.itextpdf.signatures.SignatureUtil;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Firmas existentes que ya se verificaron en ejecuciones anteriores, para que en un
+ * circuito de aprobación con varias etapas cada firma previa se verifique una sola vez.
+ *
+ * <p>La clave de una firma es el SHA-256 del digest de los bytes que cubre su /ByteRange
+ * combinado con el hash de su /Contents: si el contenedor CMS es el mismo y los bytes
+ * firmados también, el resultado de la verificación no puede cambiar. Los digest de todas
+ * las firmas del documento se calculan en una sola lectura del archivo, porque cada
+ * revisión firmada es un prefijo de la siguiente.
+ *
+ * <p>El archivo guarda las claves de 32 bytes una detrás de otra; sólo se agregan
+ * entradas y un registro incompleto al final se descarta al abrirlo.
+ */
+final class SignatureVerificationCache {
+    private static final int KEY_LENGTH = 32;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+
+    private record SignedRange(String name, long holeStart, long tailStart, long tailLength, byte[] contents) {}
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Set<SigningLedger.Key> verified = ConcurrentHashMap.newKeySet();
+
+    private SignatureVerificationCache(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+    }
+
+    static SignatureVerificationCache open(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            SignatureVerificationCache cache = new SignatureVerificationCache(file, channel);
+            cache.load();
+            return cache;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    boolean contains(SigningLedger.Key key) {
+        return verified.contains(key);
+    }
+
+    void add(SigningLedger.Key key) throws IOException {
+        if (!verified.add(key)) {
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(KEY_LENGTH)
+                .putLong(key.h0()).putLong(key.h1()).putLong(key.h2()).putLong(key.h3())
+                .flip();
+        synchronized (this) {
+            long position = channel.size();
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+        }
+    }
+
+    int size() {
+        return verified.size();
+    }
+
+    Path file() {
+        return file;
+    }
+
+    /**
+     * Calcula la clave de cada firma que cubre el documento desde el byte 0. Las firmas con
+     * un /ByteRange de otra forma no se incluyen y se verifican siempre.
+     */
+    static Map<String, SigningLedger.Key> keys(PdfReader reader, SignatureUtil signUtil, List<String> names)
+            throws IOException {
+        IRandomAccessSource source = reader.getSafeFile().createSourceView();
+        long length = source.length();
+
+        List<SignedRange> ranges = new ArrayList<>(names.size());
+        for (String name : names) {
+            PdfSignature signature = signUtil.getSignature(name);
+            PdfArray byteRange = signature != null ? signature.getByteRange() : null;
+            PdfString contents = signature != null ? signature.getContents() : null;
+            if (byteRange == null || byteRange.size() != 4 || contents == null
+                    || byteRange.getAsNumber(0).longValue() != 0) {
+                continue;
+            }
+            long holeStart = byteRange.getAsNumber(1).longValue();
+            long tailStart = byteRange.getAsNumber(2).longValue();
+            long tailLength = byteRange.getAsNumber(3).longValue();
+            if (holeStart < 0 || tailStart < holeStart || tailLength < 0 || tailStart + tailLength > length) {
+                continue;
+            }
+            ranges.add(new SignedRange(name, holeStart, tailStart, tailLength, contents.getValueBytes()));
+        }
+        ranges.sort(Comparator.comparingLong(SignedRange::holeStart));
+
+        // Un único digest recorre el archivo; al llegar al hueco de cada firma se clona y la
+        // copia recibe sólo el tramo posterior al /Contents de esa firma.
+        Map<String, SigningLedger.Key> keys = new HashMap<>();
+        MessageDigest running = sha256();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        long position = 0;
+        for (SignedRange range : ranges) {
+            update(running, source, position, range.holeStart() - position, buffer);
+            position = range.holeStart();
+
+            MessageDigest signed;
+            try {
+                signed = (MessageDigest) running.clone();
+            } catch (CloneNotSupportedException e) {
+                return Map.of();
+            }
+            update(signed, source, range.tailStart(), range.tailLength(), buffer);
+
+            MessageDigest key = sha256();
+            key.update(signed.digest());
+            key.update(sha256().digest(range.contents()));
+            keys.put(range.name(), SigningLedger.Key.of(key.digest()));
+        }
+        return keys;
+    }
+
+    private void load() throws IOException {
+        long size = channel.size();
+        long complete = size - size % KEY_LENGTH;
+        ByteBuffer buffer = ByteBuffer.allocate(KEY_LENGTH * 2048);
+        long position = 0;
+        while (position < complete) {
+            buffer.clear().limit((int) Math.min(buffer.capacity(), complete - position));
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            position += read;
+            buffer.flip();
+            while (buffer.remaining() >= KEY_LENGTH) {
+                verified.add(new SigningLedger.Key(buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                        buffer.getLong()));
+            }
+        }
+        if (complete < size) {
+            channel.truncate(complete);
+        }
+    }
+
+    private static void update(MessageDigest digest, IRandomAccessSource source, long offset, long length,
+                               byte[] buffer) throws IOException {
+        long remaining = length;
+        long position = offset;
+        while (remaining > 0) {
+            int read = source.get(position, buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read <= 0) {
+                throw new IOException("Fin de archivo inesperado al leer el rango firmado");
+            }
+            digest.update(buffer, 0, read);
+            position += read;
+            remaining -= read;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
@@ -0,0 +1,348 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs11;
+
+import com.sauken.s_fide.pdf_signer_pkcs11.PdfSigningEngine.SigningOptions;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Registro persistente de documentos ya firmados, para no volver a firmarlos cuando un
+ * lote se repite después de una interrupción.
+ *
+ * <p>El archivo es de sólo agregado: una línea por documento con la clave, el tamaño del
+ * PDF firmado, la fecha y la ruta de salida. La clave es el SHA-256 del PDF de entrada
+ * combinado con el de los parámetros de firma y la ruta de salida, así dos copias iguales
+ * de un documento en carpetas distintas se registran por separado. Al abrirlo se indexa cada clave con la
+ * posición de su línea, de modo que la consulta es O(1) y la memoria no depende de la
+ * longitud de las rutas. Una línea incompleta al final (corte durante la escritura) se
+ * descarta.
+ */
+final class SigningLedger implements Closeable {
+    private static final int KEY_HEX_LENGTH = 64;
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    private static final int LOAD_BUFFER_SIZE = 1 << 20;
+    private static final int MAX_LINE_LENGTH = 8192;
+    private static final int TYPICAL_LINE_LENGTH = 128;
+    private static final char SEPARATOR = '\t';
+    private static final HexFormat HEX = HexFormat.of();
+
+    /**
+     * Clave del registro: los 32 bytes del SHA-256, guardados como cuatro enteros para
+     * ocupar poco en memoria con millones de entradas.
+     */
+    record Key(long h0, long h1, long h2, long h3) {
+        static Key of(byte[] digest) {
+            ByteBuffer buffer = ByteBuffer.wrap(digest);
+            return new Key(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+        }
+
+        static Key parse(String hex) {
+            return of(HEX.parseHex(hex));
+        }
+
+        /**
+         * Lee la clave directamente de los dígitos hexadecimales ASCII, sin crear objetos
+         * intermedios: al abrir el registro se llama una vez por línea.
+         */
+        static Key parse(byte[] hex) {
+            long[] words = new long[4];
+            for (int i = 0; i < KEY_HEX_LENGTH; i++) {
+                words[i >> 4] = (words[i >> 4] << 4) | Character.digit(hex[i], 16);
+            }
+            return new Key(words[0], words[1], words[2], words[3]);
+        }
+
+        String toHex() {
+            return HEX.toHexDigits(h0) + HEX.toHexDigits(h1) + HEX.toHexDigits(h2) + HEX.toHexDigits(h3);
+        }
+    }
+
+    record Entry(Key key, Path output, long outputBytes, long signedAt) {}
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<Key, Long> offsets;
+    private long end;
+
+    private SigningLedger(Path file, FileChannel channel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        // dimensionado según el tamaño del archivo para no rehacer la tabla al cargarla
+        this.offsets = HashMap.newHashMap((int) Math.min(channel.size() / TYPICAL_LINE_LENGTH + 16, 1 << 28));
+    }
+
+    static SigningLedger open(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.tryLock() == null) {
+                throw new IOException("El registro de firmas está en uso por otro proceso: " + file);
+            }
+            SigningLedger ledger = new SigningLedger(file, channel);
+            ledger.load();
+            return ledger;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Hash de los parámetros que cambian el resultado de la firma: el certificado firmante
+     * y la apariencia, el bloqueo, la compresión, LTV y la TSA. Los proveedores y la forma
+     * de leer el PDF no cambian el documento firmado y no se incluyen.
+     */
+    static byte[] parametersDigest(List<? extends Certificate> signers, SigningOptions options)
+            throws GeneralSecurityException {
+        MessageDigest digest = sha256();
+        List<byte[]> encoded = new ArrayList<>();
+        for (Certificate signer : signers) {
+            encoded.add(sha256().digest(signer.getEncoded()));
+        }
+        encoded.sort(Comparator.comparing(HEX::formatHex));
+        encoded.forEach(digest::update);
+
+        String canonical = String.join("\n",
+                Boolean.toString(options.lock()),
+                Float.toString(options.xPos()),
+                Float.toString(options.yPos()),
+                Objects.toString(options.customText(), ""),
+                Integer.toString(options.compressionLevel()),
+                Boolean.toString(options.ltv()),
+                Objects.toString(options.tsaUrl(), ""));
+        digest.update(canonical.getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+
+    /**
+     * Calcula la clave de un documento leyendo el archivo completo.
+     */
+    static Key key(Path input, Path output, byte[] parametersDigest) throws IOException {
+        MessageDigest content = sha256();
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(input)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                content.update(buffer, 0, read);
+            }
+        }
+        MessageDigest combined = sha256();
+        combined.update(content.digest());
+        combined.update(parametersDigest);
+        combined.update(output.toAbsolutePath().normalize().toString().getBytes(StandardCharsets.UTF_8));
+        return Key.of(combined.digest());
+    }
+
+    /**
+     * Indica si el documento ya se firmó con los mismos parámetros y el PDF firmado sigue
+     * en la ruta esperada con el tamaño registrado.
+     */
+    boolean isSigned(Key key, Path expectedOutput) throws IOException {
+        Entry entry = find(key);
+        if (entry == null || !entry.output().equals(expectedOutput.toAbsolutePath().normalize())) {
+            return false;
+        }
+        return Files.isRegularFile(expectedOutput) && Files.size(expectedOutput) == entry.outputBytes();
+    }
+
+    Entry find(Key key) throws IOException {
+        Long offset;
+        synchronized (this) {
+            offset = offsets.get(key);
+        }
+        return offset == null ? null : readEntry(offset);
+    }
+
+    /**
+     * Agrega una entrada cuando el PDF firmado ya está en su ubicación final. La línea se
+     * fuerza a disco antes de volver, así que un corte posterior no la pierde.
+     */
+    void record(Key key, Path output) throws IOException {
+        Path normalized = output.toAbsolutePath().normalize();
+        String line = key.toHex() + SEPARATOR + Files.size(output) + SEPARATOR + System.currentTimeMillis()
+                + SEPARATOR + normalized + "\n";
+        ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+        synchronized (this) {
+            long offset = end;
+            while (bytes.hasRemaining()) {
+                end += channel.write(bytes, end);
+            }
+            channel.force(false);
+            offsets.put(key, offset);
+        }
+    }
+
+    synchronized int size() {
+        return offsets.size();
+    }
+
+    Path file() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    private void load() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(LOAD_BUFFER_SIZE);
+        byte[] data = buffer.array();
+        byte[] keyBytes = new byte[KEY_HEX_LENGTH];
+        int keyLength = 0;
+        boolean keyed = false;
+        boolean skipLine = false;
+        long lineStart = 0;
+        long position = 0;
+        long complete = 0;
+
+        int read;
+        while ((read = channel.read(buffer, position)) > 0) {
+            for (int i = 0; i < read; i++) {
+                byte b = data[i];
+                position++;
+                if (b == '\n') {
+                    if (keyed) {
+                        offsets.put(Key.parse(keyBytes), lineStart);
+                    }
+                    keyLength = 0;
+                    keyed = false;
+                    skipLine = false;
+                    lineStart = position;
+                    complete = position;
+                } else if (!skipLine) {
+                    if (keyLength < KEY_HEX_LENGTH && Character.digit(b, 16) >= 0) {
+                        keyBytes[keyLength++] = b;
+                    } else {
+                        // la clave termina en el primer separador; el resto de la línea se lee
+                        // sólo al consultarla
+                        keyed = keyLength == KEY_HEX_LENGTH && b == SEPARATOR;
+                        skipLine = true;
+                    }
+                }
+            }
+            buffer.clear();
+        }
+
+        if (complete < channel.size()) {
+            channel.truncate(complete);
+        }
+        end = complete;
+    }
+
+    private Entry readEntry(long offset) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_LINE_LENGTH);
+        long position = offset;
+        while (buffer.hasRemaining() && channel.read(buffer, position) > 0) {
+            position = offset + buffer.position();
+            if (indexOf(buffer, (byte) '\n') >= 0) {
+                break;
+            }
+        }
+        int length = indexOf(buffer, (byte) '\n');
+        if (length < 0) {
+            return null;
+        }
+        String line = new String(buffer.array(), 0, length, StandardCharsets.UTF_8);
+        String[] fields = line.split(String.valueOf(SEPARATOR), 4);
+        if (fields.length != 4) {
+            return null;
+        }
+        try {
+            return new Entry(Key.parse(fields[0]), Paths.get(fields[3]), Long.parseLong(fields[1]),
+                    Long.parseLong(fields[2]));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value) {
+        byte[] array = buffer.array();
+        for (int i = 0; i < buffer.position(); i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs11;
+
+import com.sauken.s_fide.pdf_signer_pkcs11.BatchSigner.BatchEntry;
+import com.sauken.s_fide.pdf_signer_pkcs11.PdfSigningEngine.SigningResult;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Reparte los documentos de un lote entre varios tokens con la misma identidad de firma.
+ * Cada slot tiene su propia cola; los hilos de trabajo toman primero de la cola de su
+ * slot y, cuando se vacía, roban documentos del final de las colas de los demás. Un slot
+ * que acumula fallos consecutivos del token sale de la rotación y sus documentos
+ * pendientes los terminan los slots restantes.
+ */
+final class SlotScheduler {
+    private static final int MAX_CONSECUTIVE_FAILURES = 3;
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+
+    @FunctionalInterface
+    interface SlotTask {
+        SigningResult sign(TokenSession session, Path input) throws GeneralSecurityException, IOException;
+    }
+
+    record SlotStats(int slotNumber, int signed, int stolen, int tokenFailures, long bytes, boolean active) {}
+
+    private record Job(int index, Path input, int attempts) {}
+
+    private static final class Slot {
+        final TokenSession session;
+        final BlockingDeque<Job> queue = new LinkedBlockingDeque<>();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        final AtomicInteger signed = new AtomicInteger();
+        final AtomicInteger stolen = new AtomicInteger();
+        final AtomicInteger tokenFailures = new AtomicInteger();
+        final AtomicLong bytes = new AtomicLong();
+        volatile boolean active = true;
+
+        Slot(TokenSession session) {
+            this.session = session;
+        }
+    }
+
+    private final List<Slot> slots;
+    private final AtomicInteger pending = new AtomicInteger();
+
+    SlotScheduler(List<TokenSession> sessions) {
+        this.slots = sessions.stream().map(Slot::new).toList();
+    }
+
+    /**
+     * Firma todos los documentos y devuelve los resultados en el mismo orden que la entrada.
+     */
+    List<BatchEntry> run(List<Path> inputs, int workers, SlotTask task) {
+        BatchEntry[] results = new BatchEntry[inputs.size()];
+        for (int i = 0; i < inputs.size(); i++) {
+            slots.get(i % slots.size()).queue.offerLast(new Job(i, inputs.get(i), 0));
+        }
+        pending.set(inputs.size());
+
+        int threads = Math.max(workers, slots.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                Slot home = slots.get(i % slots.size());
+                futures.add(executor.submit(() -> work(home, task, results)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) {
+                results[i] = new BatchEntry(inputs.get(i), null, false, false, 0, 0, -1,
+                        "No quedan tokens disponibles para firmar");
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    List<SlotStats> stats() {
+        return slots.stream()
+                .map(slot -> new SlotStats(slot.session.slotNumber(), slot.signed.get(), slot.stolen.get(),
+                        slot.tokenFailures.get(), slot.bytes.get(), slot.active))
+                .toList();
+    }
+
+    private void work(Slot home, SlotTask task, BatchEntry[] results) {
+        while (pending.get() > 0 && !Thread.currentThread().isInterrupted()) {
+            Slot slot = home.active ? home : firstActive();
+            if (slot == null) {
+                return;
+            }
+
+            Job job = home.queue.pollFirst();
+            if (job == null) {
+                job = steal(home);
+                if (job == null) {
+                    LockSupport.parkNanos(IDLE_WAIT_NANOS);
+                    continue;
+                }
+                slot.stolen.incrementAndGet();
+            }
+
+            BatchEntry entry = execute(slot, job, task);
+            if (entry != null) {
+                results[job.index()] = entry;
+                pending.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Devuelve el resultado del documento o {@code null} si se volvió a encolar porque el
+     * token perdió la sesión.
+     */
+    private BatchEntry execute(Slot slot, Job job, SlotTask task) {
+        long start = System.nanoTime();
+        long bytes = 0;
+        try {
+            if (!Files.isRegularFile(job.input())) {
+                return failed(job, 0, start, "El archivo PDF no existe o no es accesible");
+            }
+            bytes = Files.size(job.input());
+
+            SigningResult result = task.sign(slot.session, job.input());
+            slot.consecutiveFailures.set(0);
+            slot.signed.incrementAndGet();
+            slot.bytes.addAndGet(bytes);
+            return new BatchEntry(job.input(), result.output(), true, false, bytes, elapsedSince(start),
+                    result.timestampMillis(), null);
+        } catch (Exception e) {
+            if (!TokenSession.isSessionLost(e)) {
+                return failed(job, bytes, start, BatchSigner.describe(e));
+            }
+
+            slot.tokenFailures.incrementAndGet();
+            if (slot.consecutiveFailures.incrementAndGet() >= MAX_CONSECUTIVE_FAILURES && slot.active) {
+                slot.active = false;
+                System.err.println("Advertencia: El slot " + slot.session.slotNumber()
+                        + " se retira de la rotación por fallos repetidos del token");
+            }
+
+            Slot target = retryTarget(slot);
+            if (target == null || job.attempts() + 1 >= MAX_ATTEMPTS) {
+                return failed(job, bytes, start, BatchSigner.describe(e));
+            }
+            target.queue.offerFirst(new Job(job.index(), job.input(), job.attempts() + 1));
+            return null;
+        }
+    }
+
+    private Job steal(Slot thief) {
+        for (Slot victim : slots) {
+            if (victim != thief) {
+                Job job = victim.queue.pollLast();
+                if (job != null) {
+                    return job;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * El reintento va a otro slot activo si lo hay, para que un token que perdió la sesión
+     * no consuma todos los intentos del documento; si no, vuelve al mismo slot.
+     */
+    private Slot retryTarget(Slot failed) {
+        for (Slot slot : slots) {
+            if (slot != failed && slot.active) {
+                return slot;
+            }
+        }
+        return failed.active ? failed : null;
+    }
+
+    private Slot firstActive() {
+        for (Slot slot : slots) {
+            if (slot.active) {
+                return slot;
+            }
+        }
+        return null;
+    }
+
+    private static BatchEntry failed(Job job, long bytes, long start, String error) {
+        return new BatchEntry(job.input(), null, false, false, bytes, elapsedSince(start), -1, error);
+    }
+
+    private static long elapsedSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
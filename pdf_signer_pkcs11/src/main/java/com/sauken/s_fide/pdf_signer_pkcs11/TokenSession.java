@@ -0,0 +1,296 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs11;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.security.AuthProvider;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.security.auth.login.LoginException;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Sesión abierta contra un slot del token: el proveedor SunPKCS11 se configura una vez,
+ * se inicia sesión una vez y se conserva el manejador de la clave privada para firmar
+ * todos los documentos. Si el token pierde la sesión se vuelve a iniciar.
+ *
+ * <p>El token sólo puede ejecutar una operación RSA a la vez, por lo que todas las firmas
+ * pasan por un único hilo propietario del token. La lectura, el cálculo del hash del
+ * ByteRange y la escritura del PDF quedan en los hilos de trabajo que llaman a
+ * {@link #signOnToken(Callable)}.</p>
+ */
+final class TokenSession implements Closeable {
+    private static final Logger logger = Logger.getLogger(TokenSession.class.getName());
+
+    private static final String[] SESSION_LOST_CODES = {
+            "CKR_SESSION_HANDLE_INVALID",
+            "CKR_SESSION_CLOSED",
+            "CKR_USER_NOT_LOGGED_IN",
+            "CKR_DEVICE_REMOVED",
+            "CKR_TOKEN_NOT_PRESENT",
+            "CKR_DEVICE_ERROR",
+            "CKR_OBJECT_HANDLE_INVALID",
+            "CKR_KEY_HANDLE_INVALID"
+    };
+
+    private final String libraryPath;
+    private final int slotNumber;
+    private final String password;
+    private final ExecutorService tokenOwner;
+
+    private Provider provider;
+    private PrivateKey privateKey;
+    private Certificate[] chain;
+    private long generation;
+
+    private TokenSession(String libraryPath, int slotNumber, String password) {
+        this.libraryPath = libraryPath;
+        this.slotNumber = slotNumber;
+        this.password = password;
+        this.tokenOwner = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "token-slot-" + slotNumber);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static TokenSession open(String libraryPath, int slotNumber, String password)
+            throws GeneralSecurityException {
+        TokenSession session = new TokenSession(libraryPath, slotNumber, password);
+        try {
+            session.login();
+        } catch (GeneralSecurityException | RuntimeException e) {
+            session.close();
+            throw e;
+        }
+        return session;
+    }
+
+    synchronized PrivateKey privateKey() {
+        return privateKey;
+    }
+
+    synchronized Certificate[] chain() {
+        return chain;
+    }
+
+    synchronized Provider provider() {
+        return provider;
+    }
+
+    int slotNumber() {
+        return slotNumber;
+    }
+
+    X500Principal subjectDN() {
+        return ((X509Certificate) chain()[0]).getSubjectX500Principal();
+    }
+
+    /**
+     * Número de inicios de sesión realizados; permite que varios hilos que observan la
+     * misma pérdida de sesión provoquen un único reinicio.
+     */
+    synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Ejecuta la operación en el hilo propietario del token y espera su resultado.
+     */
+    byte[] signOnToken(Callable<byte[]> operation) throws GeneralSecurityException {
+        Future<byte[]> result = tokenOwner.submit(operation);
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new GeneralSecurityException("Firma interrumpida");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GeneralSecurityException securityException) {
+                throw securityException;
+            }
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new GeneralSecurityException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Descarta la sesión actual y vuelve a configurar el proveedor e iniciar sesión, salvo
+     * que otro hilo ya lo haya hecho desde la generación observada.
+     */
+    synchronized void relogin(long observedGeneration) throws GeneralSecurityException {
+        if (observedGeneration != generation) {
+            return;
+        }
+        logger.log(Level.WARNING, "Sesión perdida con el token del slot {0}, reintentando el inicio de sesión",
+                slotNumber);
+        release();
+        login();
+    }
+
+    /**
+     * Indica si el error corresponde a una sesión PKCS#11 perdida (token extraído,
+     * sesión cerrada o cierre de sesión del usuario) y no a un error del documento.
+     */
+    static boolean isSessionLost(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            String message = cause.getMessage();
+            if (message != null) {
+                for (String code : SESSION_LOST_CODES) {
+                    if (message.contains(code)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void close() {
+        tokenOwner.shutdownNow();
+        release();
+    }
+
+    private void login() throws GeneralSecurityException {
+        // El proveedor se usa por referencia y no se registra en Security, de modo que
+        // varias sesiones o motores del mismo proceso no comparten estado global.
+        provider = configurePKCS11Provider(libraryPath, slotNumber);
+
+        try {
+            KeyStore keyStore = loadKeyStore(provider, password);
+            String alias = keyStore.aliases().nextElement();
+
+            if (!keyStore.isKeyEntry(alias)) {
+                throw new GeneralSecurityException("El token no contiene una clave privada válida");
+            }
+
+            Certificate[] certificateChain = keyStore.getCertificateChain(alias);
+            if (certificateChain == null || certificateChain.length == 0) {
+                throw new GeneralSecurityException("No se encontró una cadena de certificados válida en el token");
+            }
+
+            PrivateKey key;
+            try {
+                key = (PrivateKey) keyStore.getKey(alias, password.toCharArray());
+            } catch (GeneralSecurityException e) {
+                throw new GeneralSecurityException("Error al acceder a la clave privada del token");
+            }
+            if (key == null) {
+                throw new GeneralSecurityException("No se pudo obtener la clave privada del token");
+            }
+
+            privateKey = key;
+            chain = certificateChain;
+            generation++;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            release();
+            throw e;
+        }
+    }
+
+    private void release() {
+        if (provider == null) {
+            return;
+        }
+        if (provider instanceof AuthProvider authProvider) {
+            try {
+                authProvider.logout();
+            } catch (LoginException e) {
+                logger.log(Level.FINE, "No se pudo cerrar la sesión del token: {0}", e.getMessage());
+            }
+        }
+        provider = null;
+        privateKey = null;
+    }
+
+    private static Provider configurePKCS11Provider(String libraryPath, int slotNumber) {
+        String config = String.format(
+                "--name=PDFSignerProvider-%d\nlibrary=%s\nslot=%d",
+                slotNumber,
+                libraryPath.replace("\\", "\\\\"),
+                slotNumber);
+
+        Provider provider = Security.getProvider("SunPKCS11");
+        if (provider == null) {
+            throw new IllegalArgumentException("Proveedor SunPKCS11 no disponible");
+        }
+        return provider.configure(config);
+    }
+
+    private static KeyStore loadKeyStore(Provider provider, String password) throws GeneralSecurityException {
+        try {
+            KeyStore keyStore = KeyStore.getInstance("PKCS11", provider);
+            keyStore.load(null, password.toCharArray());
+            return keyStore;
+        } catch (IOException e) {
+            throw new GeneralSecurityException("Contraseña incorrecta o error al acceder al token");
+        } catch (Exception e) {
+            throw new GeneralSecurityException("Error al cargar el KeyStore");
+        }
+    }
+}
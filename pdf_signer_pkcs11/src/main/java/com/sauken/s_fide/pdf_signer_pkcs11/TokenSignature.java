@@ -0,0 +1,105 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs11;
+
+import com.itextpdf.signatures.IExternalSignature;
+import com.itextpdf.signatures.ISignatureMechanismParams;
+import com.itextpdf.signatures.PrivateKeySignature;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Signature;
+
+/**
+ * Firma externa que delega la operación RSA en el hilo propietario del token. El
+ * {@link com.itextpdf.signatures.PdfSigner} que la usa prepara el campo de firma y calcula
+ * el hash del ByteRange en el hilo de trabajo; sólo los atributos firmados viajan al token.
+ */
+final class TokenSignature implements IExternalSignature {
+    private final TokenSession session;
+    private final PrivateKey privateKey;
+    private final Provider provider;
+    private final PrivateKeySignature delegate;
+
+    TokenSignature(TokenSession session, String digestAlgorithm) {
+        this.session = session;
+        this.privateKey = session.privateKey();
+        this.provider = session.provider();
+        // Sólo aporta los nombres de algoritmo; la firma se hace con el proveedor del token.
+        this.delegate = new PrivateKeySignature(privateKey, digestAlgorithm, null);
+    }
+
+    @Override
+    public String getDigestAlgorithmName() {
+        return delegate.getDigestAlgorithmName();
+    }
+
+    @Override
+    public String getSignatureAlgorithmName() {
+        return delegate.getSignatureAlgorithmName();
+    }
+
+    @Override
+    public ISignatureMechanismParams getSignatureMechanismParameters() {
+        return delegate.getSignatureMechanismParameters();
+    }
+
+    @Override
+    public byte[] sign(byte[] message) throws GeneralSecurityException {
+        String algorithm = getDigestAlgorithmName() + "with" + getSignatureAlgorithmName();
+        return session.signOnToken(() -> {
+            Signature signature = Signature.getInstance(algorithm, provider);
+            signature.initSign(privateKey);
+            signature.update(message);
+            return signature.sign();
+        });
+    }
+}
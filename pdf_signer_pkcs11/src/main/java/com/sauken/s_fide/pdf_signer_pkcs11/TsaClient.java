@@ -0,0 +1,221 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs11;
+
+import com.itextpdf.signatures.ITSAClient;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cms.SignerInformationVerifier;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoVerifierBuilder;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TSPException;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.bouncycastle.tsp.TimeStampResponse;
+import org.bouncycastle.tsp.TimeStampToken;
+
+/**
+ * Cliente RFC 3161 compartido por todos los documentos que firma un mismo motor. Usa un
+ * único {@link HttpClient}, que mantiene abiertas las conexiones con la TSA entre
+ * consultas, y guarda el certificado de la TSA con su verificador para no reconstruirlos
+ * en cada sello. Las consultas de varios hilos de trabajo viajan en paralelo.
+ */
+final class TsaClient {
+    private static final Logger logger = Logger.getLogger(TsaClient.class.getName());
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int DEFAULT_TOKEN_SIZE = 4096;
+    private static final int TOKEN_SIZE_MARGIN = 64;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final String REQUEST_CONTENT_TYPE = "application/timestamp-query";
+
+    private final URI url;
+    private final HttpClient httpClient;
+    private final SecureRandom random = new SecureRandom();
+    private final AtomicInteger largestToken = new AtomicInteger();
+    private volatile TsaCertificate tsaCertificate;
+
+    private record TsaCertificate(X509CertificateHolder certificate, SignerInformationVerifier verifier) {}
+
+    TsaClient(URI url) {
+        this.url = url;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(CONNECT_TIMEOUT)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    URI url() {
+        return url;
+    }
+
+    /**
+     * Tamaño esperado del sello: el mayor recibido hasta ahora, o el valor por defecto de
+     * iText antes de la primera respuesta.
+     */
+    int tokenSizeEstimate() {
+        int largest = largestToken.get();
+        return largest > 0 ? largest + TOKEN_SIZE_MARGIN : DEFAULT_TOKEN_SIZE;
+    }
+
+    /**
+     * Cliente para un único documento, que registra la demora de su consulta a la TSA.
+     */
+    DocumentTimestamp forDocument() {
+        return new DocumentTimestamp();
+    }
+
+    final class DocumentTimestamp implements ITSAClient {
+        private long latencyMillis = -1;
+
+        long latencyMillis() {
+            return latencyMillis;
+        }
+
+        @Override
+        public int getTokenSizeEstimate() {
+            return tokenSizeEstimate();
+        }
+
+        @Override
+        public MessageDigest getMessageDigest() throws GeneralSecurityException {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+
+        @Override
+        public byte[] getTimeStampToken(byte[] imprint) throws IOException, GeneralSecurityException {
+            long start = System.nanoTime();
+            try {
+                return requestToken(imprint);
+            } finally {
+                latencyMillis = (System.nanoTime() - start) / 1_000_000;
+            }
+        }
+    }
+
+    private byte[] requestToken(byte[] imprint) throws IOException, GeneralSecurityException {
+        TimeStampRequestGenerator generator = new TimeStampRequestGenerator();
+        generator.setCertReq(true);
+        BigInteger nonce = BigInteger.valueOf(random.nextLong());
+        TimeStampRequest request = generator.generate(TSPAlgorithms.SHA256, imprint, nonce);
+
+        HttpResponse<byte[]> response;
+        try {
+            response = httpClient.send(HttpRequest.newBuilder(url)
+                            .timeout(REQUEST_TIMEOUT)
+                            .header("Content-Type", REQUEST_CONTENT_TYPE)
+                            .POST(HttpRequest.BodyPublishers.ofByteArray(request.getEncoded()))
+                            .build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Consulta a la TSA interrumpida");
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException("La TSA respondió con el código HTTP " + response.statusCode());
+        }
+
+        try {
+            TimeStampResponse timeStampResponse = new TimeStampResponse(response.body());
+            timeStampResponse.validate(request);
+            TimeStampToken token = timeStampResponse.getTimeStampToken();
+            if (token == null) {
+                throw new GeneralSecurityException("La TSA rechazó la solicitud: "
+                        + timeStampResponse.getStatusString());
+            }
+            token.validate(verifierFor(token));
+            byte[] encoded = token.getEncoded();
+            largestToken.accumulateAndGet(encoded.length, Math::max);
+            return encoded;
+        } catch (TSPException e) {
+            throw new GeneralSecurityException("Respuesta de la TSA no válida: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Devuelve el verificador del certificado de la TSA, que se arma con la primera
+     * respuesta y se reutiliza mientras la TSA siga firmando con el mismo certificado.
+     */
+    private SignerInformationVerifier verifierFor(TimeStampToken token) throws GeneralSecurityException {
+        TsaCertificate cached = tsaCertificate;
+        if (cached != null && token.getSID().match(cached.certificate())) {
+            return cached.verifier();
+        }
+
+        @SuppressWarnings("unchecked")
+        Collection<X509CertificateHolder> matches = token.getCertificates().getMatches(token.getSID());
+        if (matches.isEmpty()) {
+            throw new GeneralSecurityException("La respuesta de la TSA no incluye su certificado");
+        }
+        X509CertificateHolder certificate = matches.iterator().next();
+        try {
+            SignerInformationVerifier verifier = new JcaSimpleSignerInfoVerifierBuilder().build(certificate);
+            tsaCertificate = new TsaCertificate(certificate, verifier);
+            logger.log(Level.INFO, "Certificado de la TSA: " + certificate.getSubject());
+            return verifier;
+        } catch (Exception e) {
+            throw new GeneralSecurityException("No se pudo leer el certificado de la TSA", e);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs11;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.sauken.s_fide.pdf_signer_pkcs11.BatchSigner.BatchEntry;
+import com.sauken.s_fide.pdf_signer_pkcs11.PdfSigningEngine.SigningResult;
+import com.sauken.s_fide.pdf_signer_pkcs11.SlotScheduler.SlotStats;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Escalado del reparto entre tokens: el mismo lote se firma con 1, 2, 3 y 4 slots sobre
+ * sesiones simuladas. Cada token atiende una operación a la vez y tarda un tiempo fijo en
+ * firmar, de modo que el caudal sólo puede crecer si el planificador mantiene ocupados
+ * todos los tokens. Informa documentos por segundo y la aceleración respecto de un slot, y
+ * exige que ésta sea cercana a la cantidad de slots.
+ *
+ * <p>No forma parte de la compilación normal; se ejecuta con
+ * {@code mvn -P benchmark test -pl pdf_signer_pkcs11}. El tamaño del lote se ajusta con
+ * {@code -Dbenchmark.documents} (por defecto 200) y el tiempo de firma del token con
+ * {@code -Dbenchmark.tokenMillis} (por defecto 20).</p>
+ */
+class SlotSchedulerBenchmark {
+    private static final int DOCUMENTS = Integer.getInteger("benchmark.documents", 200);
+    private static final long TOKEN_MILLIS = Long.getLong("benchmark.tokenMillis", 20);
+    private static final int MAX_SLOTS = 4;
+    /** Fracción mínima del escalado lineal que se acepta. */
+    private static final double MIN_EFFICIENCY = 0.8;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void throughputScalesWithSlots() throws Exception {
+        List<Path> inputs = new ArrayList<>(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            inputs.add(Files.writeString(directory.resolve("doc" + i + ".pdf"), "%PDF-1.7\n"));
+        }
+
+        // Ronda de calentamiento con pocos documentos.
+        sign(inputs.subList(0, Math.min(20, DOCUMENTS)), MAX_SLOTS);
+
+        System.out.printf("documentos por ronda: %d, firma en el token: %d ms%n", DOCUMENTS, TOKEN_MILLIS);
+        System.out.printf("%6s %10s %10s%n", "slots", "docs/s", "acelera");
+        double single = 0;
+        for (int slots = 1; slots <= MAX_SLOTS; slots++) {
+            double perSecond = sign(inputs, slots);
+            if (slots == 1) {
+                single = perSecond;
+            }
+            double speedup = perSecond / single;
+            System.out.printf("%6d %10.1f %9.2fx%n", slots, perSecond, speedup);
+            assertTrue(speedup >= MIN_EFFICIENCY * slots,
+                    String.format("Con %d slots la aceleración es %.2fx", slots, speedup));
+        }
+    }
+
+    private static double sign(List<Path> inputs, int slotCount) {
+        List<TokenSession> sessions = new ArrayList<>(slotCount);
+        Map<TokenSession, ReentrantLock> tokens = new ConcurrentHashMap<>();
+        for (int slot = 1; slot <= slotCount; slot++) {
+            TokenSession session = mock(TokenSession.class);
+            when(session.slotNumber()).thenReturn(slot);
+            sessions.add(session);
+            tokens.put(session, new ReentrantLock());
+        }
+
+        SlotScheduler scheduler = new SlotScheduler(sessions);
+        long start = System.nanoTime();
+        List<BatchEntry> entries = scheduler.run(inputs, slotCount, (session, input) -> {
+            ReentrantLock token = tokens.get(session);
+            token.lock();
+            try {
+                Thread.sleep(TOKEN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Firma interrumpida", e);
+            } finally {
+                token.unlock();
+            }
+            return new SigningResult(input, input.resolveSibling(input.getFileName() + ".signed"), 9,
+                    TOKEN_MILLIS, session.slotNumber(), -1);
+        });
+        double perSecond = inputs.size() / ((System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1));
+
+        assertTrue(entries.stream().allMatch(BatchEntry::signed));
+        assertEquals(inputs.size(), scheduler.stats().stream().mapToInt(SlotStats::signed).sum());
+        return perSecond;
+    }
+}
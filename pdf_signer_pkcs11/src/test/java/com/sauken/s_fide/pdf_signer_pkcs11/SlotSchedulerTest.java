@@ -0,0 +1,204 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs11;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.sauken.s_fide.pdf_signer_pkcs11.BatchSigner.BatchEntry;
+import com.sauken.s_fide.pdf_signer_pkcs11.PdfSigningEngine.SigningResult;
+import com.sauken.s_fide.pdf_signer_pkcs11.SlotScheduler.SlotStats;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.ProviderException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SlotSchedulerTest {
+
+    @TempDir
+    Path directory;
+
+    private TokenSession first;
+    private TokenSession second;
+
+    @BeforeEach
+    void openSessions() {
+        first = session(1);
+        second = session(2);
+    }
+
+    @Test
+    void requeuesDocumentWhenTokenLosesSession() throws IOException {
+        List<Path> inputs = documents(4);
+        Path unlucky = inputs.get(0);
+        AtomicInteger unluckyCalls = new AtomicInteger();
+
+        SlotScheduler scheduler = new SlotScheduler(List.of(first, second));
+        List<BatchEntry> entries = scheduler.run(inputs, 2, (session, input) -> {
+            if (input.equals(unlucky) && unluckyCalls.incrementAndGet() == 1) {
+                throw sessionLost();
+            }
+            return signed(session, input);
+        });
+
+        assertEquals(2, unluckyCalls.get());
+        assertTrue(entries.stream().allMatch(BatchEntry::signed));
+        assertEquals(inputs, entries.stream().map(BatchEntry::input).toList());
+        assertEquals(1, scheduler.stats().stream().mapToInt(SlotStats::tokenFailures).sum());
+        assertTrue(scheduler.stats().stream().allMatch(SlotStats::active));
+    }
+
+    @Test
+    void givesUpAfterThreeAttempts() throws IOException {
+        List<Path> inputs = documents(1);
+        Map<Integer, AtomicInteger> callsBySlot = new ConcurrentHashMap<>();
+
+        SlotScheduler scheduler = new SlotScheduler(List.of(first, second));
+        List<BatchEntry> entries = scheduler.run(inputs, 2, (session, input) -> {
+            callsBySlot.computeIfAbsent(session.slotNumber(), slot -> new AtomicInteger()).incrementAndGet();
+            throw sessionLost();
+        });
+
+        BatchEntry entry = entries.get(0);
+        assertFalse(entry.signed());
+        assertTrue(entry.error().contains("CKR_SESSION_HANDLE_INVALID"), entry.error());
+        assertEquals(3, callsBySlot.values().stream().mapToInt(AtomicInteger::get).sum());
+    }
+
+    @Test
+    void doesNotRetryDocumentErrors() throws IOException {
+        List<Path> inputs = documents(1);
+        AtomicInteger calls = new AtomicInteger();
+
+        SlotScheduler scheduler = new SlotScheduler(List.of(first, second));
+        List<BatchEntry> entries = scheduler.run(inputs, 2, (session, input) -> {
+            calls.incrementAndGet();
+            throw new IOException("El documento PDF está dañado");
+        });
+
+        assertEquals(1, calls.get());
+        assertEquals("El documento PDF está dañado", entries.get(0).error());
+        assertEquals(0, scheduler.stats().stream().mapToInt(SlotStats::tokenFailures).sum());
+    }
+
+    @Test
+    void removesFailingSlotFromRotation() throws IOException {
+        List<Path> inputs = documents(12);
+
+        SlotScheduler scheduler = new SlotScheduler(List.of(first, second));
+        List<BatchEntry> entries = scheduler.run(inputs, 2, (session, input) -> {
+            if (session == second) {
+                throw sessionLost();
+            }
+            return signed(session, input);
+        });
+
+        assertTrue(entries.stream().allMatch(BatchEntry::signed));
+        SlotStats healthy = scheduler.stats().get(0);
+        SlotStats removed = scheduler.stats().get(1);
+        assertTrue(healthy.active());
+        assertEquals(inputs.size(), healthy.signed());
+        assertFalse(removed.active());
+        assertEquals(0, removed.signed());
+        assertEquals(3, removed.tokenFailures());
+    }
+
+    @Test
+    void failsRemainingDocumentsWhenNoSlotIsLeft() throws IOException {
+        List<Path> inputs = documents(5);
+
+        SlotScheduler scheduler = new SlotScheduler(List.of(first));
+        List<BatchEntry> entries = scheduler.run(inputs, 1, (session, input) -> {
+            throw sessionLost();
+        });
+
+        assertTrue(entries.stream().noneMatch(BatchEntry::signed));
+        assertFalse(scheduler.stats().get(0).active());
+        assertEquals(3, scheduler.stats().get(0).tokenFailures());
+        assertEquals("No quedan tokens disponibles para firmar", entries.get(inputs.size() - 1).error());
+    }
+
+    private List<Path> documents(int count) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            inputs.add(Files.writeString(directory.resolve("doc" + i + ".pdf"), "%PDF-1.7\n"));
+        }
+        return inputs;
+    }
+
+    private static TokenSession session(int slotNumber) {
+        TokenSession session = mock(TokenSession.class);
+        when(session.slotNumber()).thenReturn(slotNumber);
+        return session;
+    }
+
+    private static SigningResult signed(TokenSession session, Path input) throws GeneralSecurityException {
+        return new SigningResult(input, input.resolveSibling(input.getFileName() + ".signed"), 9, 0,
+                session.slotNumber(), -1);
+    }
+
+    private static GeneralSecurityException sessionLost() {
+        return new GeneralSecurityException("Error al firmar",
+                new ProviderException("CKR_SESSION_HANDLE_INVALID"));
+    }
+}
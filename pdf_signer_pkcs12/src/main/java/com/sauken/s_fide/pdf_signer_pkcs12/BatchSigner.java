@@ -0,0 +1,292 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import com.sauken.s_fide.pdf_signer_pkcs12.PDFSignerPKCS12.SignatureParameters;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningRequest;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningResult;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.LongSummaryStatistics;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Firma por lotes: todos los documentos de un directorio (opcionalmente filtrados por
+ * un patrón glob) o de un archivo de lista, con una única carga del PKCS#12 y un
+ * conjunto acotado de hilos de trabajo.
+ */
+final class BatchSigner {
+    private static final Logger logger = Logger.getLogger(BatchSigner.class.getName());
+    private static final String DEFAULT_GLOB = "*.pdf";
+
+    record BatchEntry(
+            Path input,
+            Path output,
+            boolean signed,
+            boolean skipped,
+            long bytes,
+            long elapsedMillis,
+            long timestampMillis,
+            String error
+    ) {}
+
+    private BatchSigner() {
+    }
+
+    static boolean run(SignatureParameters params, PdfSigningEngine engine) throws IOException {
+        List<Path> inputs = collectInputs(params);
+        if (inputs.isEmpty()) {
+            logger.log(Level.SEVERE, "No se encontraron documentos PDF para firmar");
+            return false;
+        }
+
+        int workers = Math.min(params.workers(), inputs.size());
+        logger.log(Level.INFO, "Firmando " + inputs.size() + " documentos con " + workers + " hilos de trabajo");
+
+        SigningLedger ledger = params.ledgerPath() != null ? SigningLedger.open(Paths.get(params.ledgerPath())) : null;
+        long start = System.nanoTime();
+        List<BatchEntry> entries = new ArrayList<>(inputs.size());
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            byte[] parametersDigest = ledger != null
+                    ? SigningLedger.parametersDigest(engine.signerCertificates(), params.options())
+                    : null;
+            if (ledger != null) {
+                logger.log(Level.INFO, "Registro de firmas: " + ledger.size() + " documentos en " + ledger.file());
+            }
+            List<Future<BatchEntry>> futures = new ArrayList<>(inputs.size());
+            for (Path input : inputs) {
+                futures.add(executor.submit(() -> signOne(params, engine, ledger, parametersDigest, input)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                entries.add(awaitEntry(futures.get(i), inputs.get(i)));
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IOException("No se pudo calcular la clave del registro de firmas: " + e.getMessage(), e);
+        } finally {
+            executor.shutdownNow();
+            if (ledger != null) {
+                ledger.close();
+            }
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        writeSummary(params, entries, elapsedMillis);
+        writeContainerSummary(engine.containerStats());
+        return entries.stream().allMatch(BatchEntry::signed);
+    }
+
+    static List<Path> collectInputs(SignatureParameters params) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+
+        if (params.directory() != null) {
+            String glob = params.glob() != null ? params.glob() : DEFAULT_GLOB;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get(params.directory()), glob)) {
+                for (Path path : stream) {
+                    if (Files.isRegularFile(path) && !isSignedOutput(path)) {
+                        inputs.add(path);
+                    }
+                }
+            }
+            inputs.sort(null);
+        }
+
+        if (params.fileList() != null) {
+            try (Stream<String> lines = Files.lines(Paths.get(params.fileList()), StandardCharsets.UTF_8)) {
+                lines.map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .map(Paths::get)
+                        .forEach(inputs::add);
+            }
+        }
+
+        return inputs;
+    }
+
+    private static boolean isSignedOutput(Path path) {
+        String fileName = path.getFileName().toString();
+        int dotIndex = fileName.lastIndexOf('.');
+        String baseName = dotIndex < 0 ? fileName : fileName.substring(0, dotIndex);
+        return baseName.endsWith(PdfSigningEngine.OUTPUT_SUFFIX);
+    }
+
+    private static BatchEntry signOne(SignatureParameters params, PdfSigningEngine engine, SigningLedger ledger,
+                                      byte[] parametersDigest, Path input) {
+        long start = System.nanoTime();
+        long bytes = 0;
+        try {
+            if (!Files.isRegularFile(input)) {
+                return failed(input, 0, start, "El archivo PDF no existe o no es accesible");
+            }
+            bytes = Files.size(input);
+
+            SigningLedger.Key key = null;
+            if (ledger != null) {
+                Path output = PdfSigningEngine.defaultOutputPath(input);
+                key = SigningLedger.key(input, output, parametersDigest);
+                if (ledger.isSigned(key, output)) {
+                    return new BatchEntry(input, output, true, true, bytes, elapsedSince(start), -1, null);
+                }
+            }
+
+            SigningResult result = engine.sign(new SigningRequest(input, params.options()));
+            if (ledger != null) {
+                ledger.record(key, result.output());
+            }
+            return new BatchEntry(input, result.output(), true, false, result.bytes(), elapsedSince(start),
+                    result.timestampMillis(), null);
+        } catch (Exception e) {
+            return failed(input, bytes, start, e.getMessage() != null ? e.getMessage() : e.toString());
+        }
+    }
+
+    private static BatchEntry awaitEntry(Future<BatchEntry> future, Path input) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new BatchEntry(input, null, false, false, 0, 0, -1, "Proceso interrumpido");
+        } catch (ExecutionException e) {
+            return new BatchEntry(input, null, false, false, 0, 0, -1, e.getCause().getMessage());
+        }
+    }
+
+    private static BatchEntry failed(Path input, long bytes, long start, String error) {
+        return new BatchEntry(input, null, false, false, bytes, elapsedSince(start), -1, error);
+    }
+
+    private static long elapsedSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static void writeContainerSummary(ContainerSizeEstimator.Stats stats) {
+        if (stats.signatures() == 0) {
+            return;
+        }
+        logger.log(Level.INFO, String.format(Locale.ROOT,
+                "Contenedor de firma: %d bytes reservados, %d bytes usados (%.1f %%), %d reintentos por espacio",
+                stats.reservedBytes(), stats.usedBytes(), stats.usedPercentage(), stats.retries()));
+    }
+
+    private static void writeSummary(SignatureParameters params, List<BatchEntry> entries, long elapsedMillis)
+            throws IOException {
+
+        long signedCount = entries.stream().filter(entry -> entry.signed() && !entry.skipped()).count();
+        long skippedCount = entries.stream().filter(BatchEntry::skipped).count();
+        long failedCount = entries.stream().filter(entry -> !entry.signed()).count();
+        long totalBytes = entries.stream()
+                .filter(entry -> entry.signed() && !entry.skipped())
+                .mapToLong(BatchEntry::bytes)
+                .sum();
+        double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+
+        if (params.reportPath() != null) {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(params.reportPath()), StandardCharsets.UTF_8);
+                 PrintWriter out = new PrintWriter(writer)) {
+                out.println("archivo;estado;salida;bytes;milisegundos;tsa_milisegundos;error");
+                for (BatchEntry entry : entries) {
+                    out.println(String.join(";",
+                            entry.input().toString(),
+                            entry.skipped() ? "OMITIDO" : entry.signed() ? "FIRMADO" : "ERROR",
+                            entry.output() != null ? entry.output().toString() : "",
+                            Long.toString(entry.bytes()),
+                            Long.toString(entry.elapsedMillis()),
+                            entry.timestampMillis() >= 0 ? Long.toString(entry.timestampMillis()) : "",
+                            entry.error() != null ? entry.error().replace(';', ',') : ""));
+                }
+            }
+            logger.log(Level.INFO, "Resumen por archivo guardado en: " + Paths.get(params.reportPath()).toAbsolutePath());
+        }
+
+        for (BatchEntry entry : entries) {
+            if (!entry.signed()) {
+                logger.log(Level.SEVERE, entry.input() + ": " + entry.error());
+            }
+        }
+
+        logger.log(Level.INFO, "\n=== RESUMEN DEL LOTE ===");
+        logger.log(Level.INFO, "Documentos procesados: " + entries.size());
+        logger.log(Level.INFO, "Documentos firmados: " + signedCount);
+        if (skippedCount > 0) {
+            logger.log(Level.INFO, "Documentos omitidos (ya firmados según el registro): " + skippedCount);
+        }
+        logger.log(Level.INFO, "Documentos con error: " + failedCount);
+        logger.log(Level.INFO, String.format(Locale.ROOT, "Tiempo total: %.2f s", seconds));
+        logger.log(Level.INFO, String.format(Locale.ROOT, "Rendimiento: %.2f documentos/s, %.2f MB/s",
+                signedCount / seconds, totalBytes / seconds / (1024.0 * 1024.0)));
+
+        LongSummaryStatistics timestamps = entries.stream()
+                .mapToLong(BatchEntry::timestampMillis)
+                .filter(millis -> millis >= 0)
+                .summaryStatistics();
+        if (timestamps.getCount() > 0) {
+            logger.log(Level.INFO, String.format(Locale.ROOT,
+                    "Sello de tiempo: %d consultas, promedio %.0f ms, mínimo %d ms, máximo %d ms",
+                    timestamps.getCount(), timestamps.getAverage(), timestamps.getMin(), timestamps.getMax()));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import java.io.IOException;
+import java.security.PublicKey;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Calcula el tamaño que se reserva en /Contents para el contenedor CMS a partir de la
+ * cadena de certificados, la longitud de la firma y el sello de tiempo, en lugar del valor
+ * fijo de iText. Lleva además la cuenta de los bytes reservados y usados por el motor.
+ */
+final class ContainerSizeEstimator {
+    /** Atributos firmados, identificadores de algoritmo y estructura del SignedData. */
+    private static final int CMS_OVERHEAD = 512;
+    /** Atributo no firmado que envuelve el sello de tiempo, como en iText. */
+    private static final int TIMESTAMP_ATTRIBUTE_OVERHEAD = 96;
+    private static final int SAFETY_MARGIN = 256;
+    private static final int DEFAULT_SIGNATURE_SIZE = 512;
+    /** Tamaño que reserva iText cuando no se le indica ninguno. */
+    private static final int ITEXT_DEFAULT_SIZE = 8192;
+
+    /**
+     * Bytes reservados y usados por las firmas realizadas hasta el momento.
+     */
+    record Stats(long signatures, long reservedBytes, long usedBytes, long retries) {
+        double usedPercentage() {
+            return reservedBytes == 0 ? 0 : usedBytes * 100.0 / reservedBytes;
+        }
+    }
+
+    private final LongAdder signatures = new LongAdder();
+    private final LongAdder reservedBytes = new LongAdder();
+    private final LongAdder usedBytes = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+
+    /**
+     * Tamaño del contenedor para la cadena indicada. {@code timestampSize} es el tamaño
+     * esperado del sello de tiempo, o 0 si no se pide.
+     */
+    int estimate(Certificate[] chain, int timestampSize) throws CertificateEncodingException {
+        int size = CMS_OVERHEAD + SAFETY_MARGIN + signatureSize(chain[0].getPublicKey());
+        for (Certificate certificate : chain) {
+            size += certificate.getEncoded().length;
+        }
+        if (timestampSize > 0) {
+            size += timestampSize + TIMESTAMP_ATTRIBUTE_OVERHEAD;
+        }
+        return size;
+    }
+
+    /**
+     * Tamaño para el único reintento cuando el contenedor no entró en el espacio reservado.
+     */
+    int retryEstimate(int previousEstimate) {
+        retries.increment();
+        return Math.max(previousEstimate * 2, previousEstimate + ITEXT_DEFAULT_SIZE);
+    }
+
+    void record(int reserved, int used) {
+        signatures.increment();
+        reservedBytes.add(reserved);
+        usedBytes.add(used);
+    }
+
+    Stats stats() {
+        return new Stats(signatures.sum(), reservedBytes.sum(), usedBytes.sum(), retries.sum());
+    }
+
+    /**
+     * Indica si la excepción es la que lanza iText cuando el contenedor CMS supera el
+     * espacio reservado en /Contents.
+     */
+    static boolean isNotEnoughSpace(IOException e) {
+        return e.getMessage() != null && e.getMessage().startsWith("Not enough space");
+    }
+
+    /**
+     * Longitud del contenedor DER dentro del /Contents, sin el relleno de ceros.
+     */
+    static int encodedLength(byte[] contents) {
+        if (contents.length < 2) {
+            return contents.length;
+        }
+        int first = contents[1] & 0xFF;
+        if (first < 0x80) {
+            return 2 + first;
+        }
+        int lengthBytes = first & 0x7F;
+        int length = 0;
+        for (int i = 0; i < lengthBytes && 2 + i < contents.length; i++) {
+            length = (length << 8) | (contents[2 + i] & 0xFF);
+        }
+        return Math.min(2 + lengthBytes + length, contents.length);
+    }
+
+    private static int signatureSize(PublicKey publicKey) {
+        if (publicKey instanceof RSAPublicKey rsa) {
+            return (rsa.getModulus().bitLength() + 7) / 8;
+        }
+        if (publicKey instanceof ECPublicKey ec) {
+            // Secuencia DER con los dos enteros r y s.
+            return 2 * ((ec.getParams().getCurve().getField().getFieldSize() + 7) / 8) + 9;
+        }
+        return DEFAULT_SIGNATURE_SIZE;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import com.itextpdf.kernel.pdf.PdfArray;
+import com.itextpdf.kernel.pdf.PdfCatalog;
+import com.itextpdf.kernel.pdf.PdfDeveloperExtension;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfObject;
+import com.itextpdf.kernel.pdf.PdfStream;
+import com.sauken.s_fide.pdf_signer_pkcs12.RevocationCache.RevocationData;
+import java.nio.ByteBuffer;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Incorpora al catálogo del documento el diccionario DSS (Document Security Store) con la
+ * cadena de certificados y las respuestas OCSP y CRL. Se escribe en la misma revisión
+ * incremental que la firma, antes de calcular el hash, por lo que no hace falta una
+ * segunda pasada sobre el documento.
+ */
+final class DssWriter {
+
+    private DssWriter() {
+    }
+
+    static void addDss(PdfDocument document, Certificate[] chain, RevocationData revocation)
+            throws CertificateEncodingException {
+
+        List<byte[]> certificates = new ArrayList<>(chain.length);
+        for (Certificate certificate : chain) {
+            certificates.add(certificate.getEncoded());
+        }
+
+        PdfCatalog catalog = document.getCatalog();
+        PdfDictionary dss = catalog.getPdfObject().getAsDictionary(PdfName.DSS);
+        if (dss == null) {
+            dss = new PdfDictionary();
+            dss.makeIndirect(document);
+            catalog.put(PdfName.DSS, dss);
+        }
+
+        appendStreams(document, dss, PdfName.Certs, certificates);
+        appendStreams(document, dss, PdfName.OCSPs, revocation.ocspResponses());
+        appendStreams(document, dss, PdfName.CRLs, revocation.crls());
+
+        dss.setModified();
+        catalog.addDeveloperExtension(PdfDeveloperExtension.ESIC_1_7_EXTENSIONLEVEL5);
+        catalog.setModified();
+    }
+
+    /**
+     * Agrega los objetos que todavía no estén en el arreglo, comparando por contenido para
+     * que las firmas sucesivas no dupliquen certificados ni respuestas.
+     */
+    private static void appendStreams(PdfDocument document, PdfDictionary dss, PdfName key, List<byte[]> values) {
+        if (values.isEmpty()) {
+            return;
+        }
+
+        PdfArray array = dss.getAsArray(key);
+        if (array == null) {
+            array = new PdfArray();
+            dss.put(key, array);
+        }
+
+        Set<ByteBuffer> present = new HashSet<>();
+        for (PdfObject object : array) {
+            if (object instanceof PdfStream stream) {
+                present.add(ByteBuffer.wrap(stream.getBytes()));
+            }
+        }
+
+        for (byte[] value : values) {
+            if (present.add(ByteBuffer.wrap(value))) {
+                PdfStream stream = new PdfStream(value);
+                stream.makeIndirect(document);
+                array.add(stream);
+            }
+        }
+        array.setModified();
+    }
+}
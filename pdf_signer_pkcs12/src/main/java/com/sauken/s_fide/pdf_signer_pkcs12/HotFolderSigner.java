@@ -0,0 +1,383 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import com.sauken.s_fide.pdf_signer_pkcs12.PDFSignerPKCS12.SignatureParameters;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningRequest;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.security.GeneralSecurityException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Carpetas vigiladas: firma los PDF que aparecen en las carpetas de entrada con la clave ya
+ * cargada en el motor, mueve el resultado a la carpeta de salida y los documentos que no
+ * se pudieron firmar a la carpeta de errores. Un archivo se encola recién cuando su tamaño
+ * y fecha de modificación no cambian durante el intervalo de espera, para no tomar
+ * documentos que todavía se están copiando.
+ */
+final class HotFolderSigner {
+    private static final Logger logger = Logger.getLogger(HotFolderSigner.class.getName());
+    private static final String DEFAULT_GLOB = "*.pdf";
+    private static final String PARTIAL_SUFFIX = ".part";
+    private static final String ERROR_SUFFIX = ".error.txt";
+    private static final long POLL_MILLIS = 250;
+    private static final long STATS_INTERVAL_MILLIS = 60_000;
+    private static final int QUEUE_CAPACITY_PER_WORKER = 16;
+
+    /**
+     * Estado de un archivo detectado que todavía no se encoló.
+     */
+    private record Candidate(long size, FileTime modified, long stableSince, long detectedAt) {}
+
+    /**
+     * Contadores del servicio, para dimensionar la cantidad de hilos y la cola.
+     */
+    record Stats(int pending, int queued, int inProgress, long signed, long skipped, long failed,
+                 double averageLatencyMillis, long maxLatencyMillis, double averageSigningMillis) {}
+
+    private final SignatureParameters params;
+    private final PdfSigningEngine engine;
+    private final List<Path> inboxes;
+    private final Path outbox;
+    private final Path failedDirectory;
+    private final long debounceMillis;
+    private final PathMatcher matcher;
+
+    private final Map<Path, Candidate> pending = new ConcurrentHashMap<>();
+    private final Set<Path> submitted = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger inProgress = new AtomicInteger();
+    private final LongAdder signed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalLatencyMillis = new LongAdder();
+    private final LongAdder totalSigningMillis = new LongAdder();
+    private final AtomicLong maxLatencyMillis = new AtomicLong();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean running = true;
+    private SigningLedger ledger;
+    private byte[] parametersDigest;
+
+    HotFolderSigner(SignatureParameters params, PdfSigningEngine engine) {
+        this.params = params;
+        this.engine = engine;
+        this.inboxes = params.watchDirectories().stream().map(Paths::get).toList();
+        this.outbox = Paths.get(params.outboxDirectory());
+        this.failedDirectory = Paths.get(params.failedDirectory());
+        this.debounceMillis = params.debounceMillis();
+        this.matcher = FileSystems.getDefault().getPathMatcher(
+                "glob:" + (params.glob() != null ? params.glob() : DEFAULT_GLOB));
+
+        // Cola acotada: si se llena, el hilo que vigila las carpetas espera en lugar de
+        // acumular documentos sin límite.
+        int workers = params.workers();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * QUEUE_CAPACITY_PER_WORKER),
+                (task, pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("El servicio se está deteniendo");
+                    }
+                    try {
+                        pool.getQueue().put(task);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException(e);
+                    }
+                });
+    }
+
+    /**
+     * Vigila las carpetas hasta que el proceso recibe la señal de terminar.
+     */
+    void run() throws IOException {
+        Files.createDirectories(outbox);
+        Files.createDirectories(failedDirectory);
+        if (params.ledgerPath() != null) {
+            ledger = SigningLedger.open(Paths.get(params.ledgerPath()));
+            try {
+                parametersDigest = SigningLedger.parametersDigest(engine.signerCertificates(), params.options());
+            } catch (GeneralSecurityException e) {
+                throw new IOException("No se pudo calcular la clave del registro de firmas: " + e.getMessage(), e);
+            }
+            logger.log(Level.INFO, "Registro de firmas: " + ledger.size() + " documentos en " + ledger.file());
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "hot-folder-shutdown"));
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            for (Path inbox : inboxes) {
+                inbox.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                scanExisting(inbox);
+            }
+            logger.log(Level.INFO, "Vigilando " + inboxes + " con " + params.workers()
+                    + " hilos de trabajo. Salida: " + outbox + ", errores: " + failedDirectory);
+
+            long nextStats = System.currentTimeMillis() + STATS_INTERVAL_MILLIS;
+            while (running) {
+                WatchKey key;
+                try {
+                    key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException | ClosedWatchServiceException e) {
+                    break;
+                }
+                if (key != null) {
+                    Path directory = (Path) key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            scanExisting(directory);
+                        } else {
+                            consider(directory.resolve((Path) event.context()));
+                        }
+                    }
+                    key.reset();
+                }
+
+                submitStableFiles();
+
+                if (System.currentTimeMillis() >= nextStats) {
+                    logStats();
+                    nextStats = System.currentTimeMillis() + STATS_INTERVAL_MILLIS;
+                }
+            }
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    Stats stats() {
+        long done = signed.sum() + skipped.sum() + failed.sum();
+        return new Stats(
+                pending.size(),
+                executor.getQueue().size(),
+                inProgress.get(),
+                signed.sum(),
+                skipped.sum(),
+                failed.sum(),
+                done == 0 ? 0 : (double) totalLatencyMillis.sum() / done,
+                maxLatencyMillis.get(),
+                done == 0 ? 0 : (double) totalSigningMillis.sum() / done);
+    }
+
+    private void scanExisting(Path inbox) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(inbox)) {
+            for (Path path : stream) {
+                consider(path);
+            }
+        }
+    }
+
+    private void consider(Path path) {
+        Path fileName = path.getFileName();
+        if (fileName.toString().startsWith(".") || !matcher.matches(fileName) || submitted.contains(path)) {
+            return;
+        }
+        pending.putIfAbsent(path, new Candidate(-1, null, 0, System.currentTimeMillis()));
+    }
+
+    /**
+     * Encola los archivos cuyo tamaño y fecha de modificación no cambiaron durante el
+     * intervalo de espera.
+     */
+    private void submitStableFiles() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, Candidate>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Candidate> entry = iterator.next();
+            Path path = entry.getKey();
+            Candidate candidate = entry.getValue();
+            try {
+                if (!Files.isRegularFile(path)) {
+                    iterator.remove();
+                    continue;
+                }
+                long size = Files.size(path);
+                FileTime modified = Files.getLastModifiedTime(path);
+                if (size != candidate.size() || !modified.equals(candidate.modified())) {
+                    entry.setValue(new Candidate(size, modified, now, candidate.detectedAt()));
+                } else if (now - candidate.stableSince() >= debounceMillis) {
+                    iterator.remove();
+                    submitted.add(path);
+                    executor.execute(() -> process(path, candidate.detectedAt()));
+                }
+            } catch (IOException e) {
+                iterator.remove();
+            } catch (RejectedExecutionException e) {
+                submitted.remove(path);
+                return;
+            }
+        }
+    }
+
+    private void process(Path input, long detectedAt) {
+        inProgress.incrementAndGet();
+        long start = System.nanoTime();
+        String fileName = input.getFileName().toString();
+        Path output = outbox.resolve(fileName);
+        Path partial = outbox.resolve("." + fileName + PARTIAL_SUFFIX);
+        try {
+            SigningLedger.Key key = null;
+            if (ledger != null) {
+                key = SigningLedger.key(input, output, parametersDigest);
+                if (ledger.isSigned(key, output)) {
+                    Files.deleteIfExists(input);
+                    skipped.increment();
+                    return;
+                }
+            }
+
+            // Se escribe con un nombre oculto y se renombra al final, para que quien vigile
+            // la carpeta de salida nunca vea un PDF a medio escribir.
+            engine.sign(new SigningRequest(input, partial, params.options()));
+            Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (ledger != null) {
+                ledger.record(key, output);
+            }
+            Files.deleteIfExists(input);
+            signed.increment();
+        } catch (Exception e) {
+            failed.increment();
+            String message = e.getMessage() != null ? e.getMessage() : e.toString();
+            logger.log(Level.SEVERE, fileName + ": " + message);
+            moveToFailed(input, fileName, message);
+            try {
+                Files.deleteIfExists(partial);
+            } catch (IOException ignored) {
+                // el archivo parcial se vuelve a escribir en el próximo intento
+            }
+        } finally {
+            long signingMillis = (System.nanoTime() - start) / 1_000_000;
+            long latencyMillis = System.currentTimeMillis() - detectedAt;
+            totalSigningMillis.add(signingMillis);
+            totalLatencyMillis.add(latencyMillis);
+            maxLatencyMillis.accumulateAndGet(latencyMillis, Math::max);
+            inProgress.decrementAndGet();
+            submitted.remove(input);
+        }
+    }
+
+    private void moveToFailed(Path input, String fileName, String message) {
+        try {
+            if (Files.exists(input)) {
+                Files.move(input, failedDirectory.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+            }
+            Files.writeString(failedDirectory.resolve(fileName + ERROR_SUFFIX), message + System.lineSeparator(),
+                    StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "No se pudo mover a la carpeta de errores: " + fileName + ": " + e.getMessage());
+        }
+    }
+
+    private void shutdown() {
+        running = false;
+        try {
+            stopped.await(POLL_MILLIS * 4, TimeUnit.MILLISECONDS);
+            executor.shutdown();
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.log(Level.WARNING, "Se detuvo el servicio con documentos todavía en proceso");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (ledger != null) {
+            try {
+                ledger.close();
+            } catch (IOException ignored) {
+                // cada entrada ya se forzó a disco al registrarla
+            }
+        }
+        // java.util.logging cierra sus handlers en su propio hook de apagado, así que el
+        // resumen final se escribe directamente en la salida de errores.
+        System.err.println(formatStats());
+    }
+
+    private void logStats() {
+        logger.log(Level.INFO, formatStats());
+    }
+
+    private String formatStats() {
+        Stats stats = stats();
+        return String.format(Locale.ROOT,
+                "Estado: %d en espera, %d en cola, %d en proceso, %d firmados, %d omitidos, %d con error, "
+                        + "latencia media %.0f ms (máx. %d ms), firma media %.0f ms",
+                stats.pending(), stats.queued(), stats.inProgress(), stats.signed(), stats.skipped(), stats.failed(),
+                stats.averageLatencyMillis(), stats.maxLatencyMillis(), stats.averageSigningMillis());
+    }
+}
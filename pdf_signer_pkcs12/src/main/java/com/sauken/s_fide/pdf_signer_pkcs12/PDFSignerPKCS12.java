@@ -50,25 +50,24 @@
 
 package com.sauken.s_fide.pdf_signer_pkcs12;
 
-import com.itextpdf.kernel.geom.Rectangle;
-import com.itextpdf.kernel.pdf.*;
-import com.itextpdf.signatures.*;
+import com.itextpdf.kernel.pdf.CompressionConstants;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningOptions;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningRequest;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningResult;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import java.io.*;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.security.GeneralSecurityException;
-import java.security.KeyStore;
-import java.security.PrivateKey;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.security.Security;
-import java.security.cert.Certificate;
-import java.security.cert.X509Certificate;
-import javax.security.auth.x500.X500Principal;
 import java.io.UnsupportedEncodingException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.logging.Handler;
@@ -77,7 +76,9 @@ import java.util.logging.SimpleFormatter;
 
 public class PDFSignerPKCS12 {
     private static final Logger logger = Logger.getLogger(PDFSignerPKCS12.class.getName());
-    private static final String OUTPUT_SUFFIX = "-signed";
+    private static final String AUTO_PROVIDER = "auto";
+    private static final String STANDARD_STREAM = "-";
+    private static final long DEFAULT_DEBOUNCE_MILLIS = 2000;
     private static final String VERSION = "S-FIDE PDFSignerPKCS12 v1.0.0 - Grupo Sauken S.A.";
     private static final String LICENSE_TEXT = readResourceFile("/LICENSE.txt");
     private static final String HELP_TEXT = readResourceFile("/HELP.txt");
@@ -107,15 +108,39 @@ public class PDFSignerPKCS12 {
         }
     }
 
-    private record SignatureParameters(
+    record SignatureParameters(
             String pdfPath,
-            String certPath,
-            String password,
-            boolean lock,
-            float xPos,
-            float yPos,
-            String customText
-    ) {}
+            String outputPath,
+            List<String> certPaths,
+            List<String> passwords,
+            SigningOptions options,
+            String directory,
+            String glob,
+            String fileList,
+            int workers,
+            String reportPath,
+            List<String> watchDirectories,
+            String outboxDirectory,
+            String failedDirectory,
+            long debounceMillis,
+            String ledgerPath
+    ) {
+        boolean isBatch() {
+            return directory != null || fileList != null;
+        }
+
+        boolean isStreaming() {
+            return STANDARD_STREAM.equals(pdfPath) || STANDARD_STREAM.equals(outputPath);
+        }
+
+        boolean isSequence() {
+            return certPaths.size() > 1;
+        }
+
+        boolean isWatch() {
+            return !watchDirectories.isEmpty();
+        }
+    }
 
     public static void main(String[] args) {
         try {
@@ -137,7 +162,37 @@ public class PDFSignerPKCS12 {
                 return;
             }
 
-            signDocument(params);
+            List<PdfSigningEngine> engines = new ArrayList<>(params.certPaths().size());
+            for (int i = 0; i < params.certPaths().size(); i++) {
+                engines.add(PdfSigningEngine.fromPkcs12(
+                        Paths.get(params.certPaths().get(i)), params.passwords().get(i).toCharArray()));
+            }
+
+            if (params.isWatch()) {
+                new HotFolderSigner(params, engines.get(0)).run();
+                System.exit(0);
+                return;
+            }
+
+            if (params.isBatch()) {
+                boolean allSigned = BatchSigner.run(params, engines.get(0));
+                System.exit(allSigned ? 0 : 1);
+                return;
+            }
+
+            if (params.isStreaming()) {
+                signStreaming(params, engines);
+                System.exit(0);
+                return;
+            }
+
+            Path output = params.outputPath() != null ? Paths.get(params.outputPath()) : null;
+            SigningRequest request = new SigningRequest(Paths.get(params.pdfPath()), output, params.options());
+            if (params.isSequence()) {
+                PdfSigningEngine.signInSequence(engines, request);
+            } else {
+                engines.get(0).sign(request);
+            }
             System.exit(0);
 
         } catch (Exception e) {
@@ -146,6 +201,46 @@ public class PDFSignerPKCS12 {
         }
     }
 
+    /**
+     * Firma leyendo de la entrada estándar o escribiendo en la salida estándar ("-"), sin
+     * archivos temporales. Los mensajes van a la salida de errores para no mezclarse con
+     * el PDF.
+     */
+    private static void signStreaming(SignatureParameters params, List<PdfSigningEngine> engines) throws Exception {
+        boolean toStdout = params.outputPath() == null || STANDARD_STREAM.equals(params.outputPath());
+        Path outputPath = toStdout ? null : Paths.get(params.outputPath());
+        WritableByteChannel output = toStdout
+                ? new FileOutputStream(FileDescriptor.out).getChannel()
+                : FileChannel.open(outputPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.WRITE);
+        boolean signed = false;
+        try {
+            SigningResult result;
+            if (params.isSequence()) {
+                try (InputStream input = STANDARD_STREAM.equals(params.pdfPath())
+                        ? System.in
+                        : Files.newInputStream(Paths.get(params.pdfPath()))) {
+                    result = PdfSigningEngine.signInSequence(engines, input, output, params.options());
+                }
+            } else {
+                result = STANDARD_STREAM.equals(params.pdfPath())
+                        ? engines.get(0).sign(System.in, output, params.options())
+                        : engines.get(0).sign(Paths.get(params.pdfPath()), output, params.options());
+            }
+            signed = true;
+            logger.log(Level.INFO, "Documento firmado exitosamente: "
+                    + (toStdout ? "salida estándar" : outputPath.toAbsolutePath())
+                    + " (" + result.bytes() + " bytes de entrada)");
+        } finally {
+            if (outputPath != null) {
+                output.close();
+                if (!signed) {
+                    Files.deleteIfExists(outputPath);
+                }
+            }
+        }
+    }
+
     private static void processSpecialArgument(String arg) {
         String argLower = arg.toLowerCase();
         switch (argLower) {
@@ -188,12 +283,32 @@ public class PDFSignerPKCS12 {
         }
 
         String pdfPath = null;
-        String certPath = null;
-        String password = null;
+        List<String> certPaths = new ArrayList<>();
+        List<String> passwords = new ArrayList<>();
         boolean lock = false;
         float xPos = 0;
         float yPos = 0;
         String customText = null;
+        boolean skipPreflight = false;
+        boolean ltv = false;
+        URI tsaUrl = null;
+        PdfInput.Mode inputMode = PdfInput.Mode.MEMORY;
+        int compressionLevel = CompressionConstants.DEFAULT_COMPRESSION;
+        String digestProvider = null;
+        String signatureProvider = null;
+        String directory = null;
+        String glob = null;
+        String fileList = null;
+        int workers = Runtime.getRuntime().availableProcessors();
+        String reportPath = null;
+        String outputPath = null;
+        List<String> watchDirectories = new ArrayList<>();
+        String outboxDirectory = null;
+        String failedDirectory = null;
+        long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+        String ledgerPath = null;
+        Path preflightCache = null;
+        Path timingsFile = null;
 
         try {
             for (int i = 0; i < args.length; i++) {
@@ -201,11 +316,14 @@ public class PDFSignerPKCS12 {
                     case "-i", "--input" -> {
                         if (i + 1 < args.length) pdfPath = args[++i];
                     }
+                    case "-o", "--output" -> {
+                        if (i + 1 < args.length) outputPath = args[++i];
+                    }
                     case "-c", "--certificate" -> {
-                        if (i + 1 < args.length) certPath = args[++i];
+                        if (i + 1 < args.length) certPaths.add(args[++i]);
                     }
                     case "-p", "--password" -> {
-                        if (i + 1 < args.length) password = args[++i];
+                        if (i + 1 < args.length) passwords.add(args[++i]);
                     }
                     case "-l", "--lock" -> {
                         if (i + 1 < args.length) lock = Boolean.parseBoolean(args[++i]);
@@ -219,6 +337,59 @@ public class PDFSignerPKCS12 {
                     case "-t", "--text" -> {
                         if (i + 1 < args.length) customText = args[++i];
                     }
+                    case "--skip-preflight" -> skipPreflight = true;
+                    case "--ltv" -> ltv = true;
+                    case "--tsa" -> {
+                        if (i + 1 < args.length) tsaUrl = resolveTsaUrl(args[++i]);
+                    }
+                    case "--input-mode" -> {
+                        if (i + 1 < args.length) inputMode = PdfInput.Mode.fromArgument(args[++i]);
+                    }
+                    case "-z", "--compression" -> {
+                        if (i + 1 < args.length) compressionLevel = Integer.parseInt(args[++i]);
+                    }
+                    case "--digest-provider" -> {
+                        if (i + 1 < args.length) digestProvider = resolveProvider(args[++i]);
+                    }
+                    case "--signature-provider" -> {
+                        if (i + 1 < args.length) signatureProvider = resolveProvider(args[++i]);
+                    }
+                    case "-d", "--directory" -> {
+                        if (i + 1 < args.length) directory = args[++i];
+                    }
+                    case "-g", "--glob" -> {
+                        if (i + 1 < args.length) glob = args[++i];
+                    }
+                    case "-f", "--file-list" -> {
+                        if (i + 1 < args.length) fileList = args[++i];
+                    }
+                    case "-w", "--workers" -> {
+                        if (i + 1 < args.length) workers = Integer.parseInt(args[++i]);
+                    }
+                    case "-r", "--report" -> {
+                        if (i + 1 < args.length) reportPath = args[++i];
+                    }
+                    case "--watch" -> {
+                        if (i + 1 < args.length) watchDirectories.add(args[++i]);
+                    }
+                    case "--outbox" -> {
+                        if (i + 1 < args.length) outboxDirectory = args[++i];
+                    }
+                    case "--failed" -> {
+                        if (i + 1 < args.length) failedDirectory = args[++i];
+                    }
+                    case "--debounce" -> {
+                        if (i + 1 < args.length) debounceMillis = Long.parseLong(args[++i]);
+                    }
+                    case "--ledger" -> {
+                        if (i + 1 < args.length) ledgerPath = args[++i];
+                    }
+                    case "--preflight-cache" -> {
+                        if (i + 1 < args.length) preflightCache = Paths.get(args[++i]);
+                    }
+                    case "--timings" -> {
+                        if (i + 1 < args.length) timingsFile = Paths.get(args[++i]);
+                    }
                     case "-h", "--help" -> {
                         return null;
                     }
@@ -227,257 +398,140 @@ public class PDFSignerPKCS12 {
         } catch (NumberFormatException e) {
             logger.log(Level.SEVERE, "Error al parsear los argumentos numéricos");
             return null;
+        } catch (IllegalArgumentException e) {
+            logger.log(Level.SEVERE, e.getMessage());
+            return null;
         }
 
-        if (pdfPath == null || certPath == null || password == null) {
+        boolean batch = directory != null || fileList != null;
+        boolean watch = !watchDirectories.isEmpty();
+        if ((pdfPath == null && !batch && !watch) || certPaths.isEmpty() || passwords.isEmpty()) {
             logger.log(Level.SEVERE, "Faltan argumentos obligatorios");
             return null;
         }
 
-        return new SignatureParameters(pdfPath, certPath, password, lock, xPos, yPos, customText);
-    }
-
-    private static boolean validateInputs(SignatureParameters params) {
-        Path pdfPath = Paths.get(params.pdfPath());
-        Path certPath = Paths.get(params.certPath());
-
-        if (!Files.exists(pdfPath) || !Files.isRegularFile(pdfPath)) {
-            logger.log(Level.SEVERE, "El archivo PDF no existe o no es accesible: " + params.pdfPath());
-            return false;
+        if (certPaths.size() != passwords.size()) {
+            logger.log(Level.SEVERE, "Cada certificado (-c) debe tener su contraseña (-p)");
+            return null;
         }
 
-        if (!Files.exists(certPath) || !Files.isRegularFile(certPath)) {
-            logger.log(Level.SEVERE, "El archivo de certificado no existe o no es accesible: " + params.certPath());
-            return false;
+        if (certPaths.size() > 1 && batch) {
+            logger.log(Level.SEVERE, "La firma con varios certificados no se puede combinar con --directory o --file-list");
+            return null;
         }
 
-        try {
-            try (InputStream inputStream = Files.newInputStream(pdfPath);
-                 PdfReader reader = new PdfReader(inputStream);
-                 PdfDocument pdfDoc = new PdfDocument(reader)) {
+        if (watch && (batch || pdfPath != null || outputPath != null || certPaths.size() > 1)) {
+            logger.log(Level.SEVERE, "--watch no se puede combinar con --input, --output, --directory, --file-list "
+                    + "ni con varios certificados");
+            return null;
+        }
 
-                if (reader.isEncrypted()) {
-                    logger.log(Level.SEVERE, "El PDF está encriptado y no puede ser firmado");
-                    return false;
-                }
+        if (watch && (outboxDirectory == null || failedDirectory == null)) {
+            logger.log(Level.SEVERE, "--watch requiere --outbox y --failed");
+            return null;
+        }
 
-                SignatureUtil signUtil = new SignatureUtil(pdfDoc);
-                List<String> signatures = signUtil.getSignatureNames();
+        if (ledgerPath != null && !batch && !watch) {
+            logger.log(Level.SEVERE, "--ledger sólo se aplica a la firma por lotes o a --watch");
+            return null;
+        }
 
-                if (!signatures.isEmpty()) {
-                    logger.log(Level.INFO, "Firmas existentes encontradas:");
-                    for (String sigName : signatures) {
-                        PdfPKCS7 pkcs7 = signUtil.readSignatureData(sigName);
-                        if (!pkcs7.verifySignatureIntegrityAndAuthenticity()) {
-                            logger.log(Level.SEVERE, "La firma existente '" + sigName + "' no es válida");
-                            return false;
-                        }
-                        logger.log(Level.INFO, "- " + sigName + ": válida");
-                    }
-                }
-            }
+        if (debounceMillis < 0) {
+            logger.log(Level.SEVERE, "El tiempo de espera (--debounce) no puede ser negativo");
+            return null;
+        }
 
-            try (InputStream certStream = Files.newInputStream(certPath)) {
-                KeyStore ks = KeyStore.getInstance("PKCS12");
-                ks.load(certStream, params.password().toCharArray());
+        if (outputPath != null && batch) {
+            logger.log(Level.SEVERE, "No se puede combinar --output con --directory o --file-list");
+            return null;
+        }
 
-                if (!ks.aliases().hasMoreElements()) {
-                    logger.log(Level.SEVERE, "El archivo de certificado no contiene certificados");
-                    return false;
-                }
+        if (pdfPath != null && batch) {
+            logger.log(Level.SEVERE, "No se puede combinar --input con --directory o --file-list");
+            return null;
+        }
 
-                String alias = ks.aliases().nextElement();
-                if (!ks.isKeyEntry(alias)) {
-                    logger.log(Level.SEVERE, "El certificado no contiene una clave privada");
-                    return false;
-                }
+        if (compressionLevel < CompressionConstants.DEFAULT_COMPRESSION
+                || compressionLevel > CompressionConstants.BEST_COMPRESSION) {
+            logger.log(Level.SEVERE, "El nivel de compresión debe estar entre -1 y 9");
+            return null;
+        }
 
-                Certificate[] chain = ks.getCertificateChain(alias);
-                if (chain == null || chain.length == 0) {
-                    logger.log(Level.SEVERE, "No se encontró una cadena de certificados válida");
-                    return false;
-                }
+        if (workers < 1) {
+            logger.log(Level.SEVERE, "La cantidad de hilos de trabajo debe ser mayor que cero");
+            return null;
+        }
 
-                try {
-                    PrivateKey privateKey = (PrivateKey) ks.getKey(alias, params.password().toCharArray());
-                    if (privateKey == null) {
-                        logger.log(Level.SEVERE, "No se pudo obtener la clave privada del certificado");
-                        return false;
-                    }
-                } catch (GeneralSecurityException e) {
-                    logger.log(Level.SEVERE, "Error al acceder a la clave privada");
-                    return false;
-                }
-            }
+        SigningOptions options = new SigningOptions(lock, xPos, yPos, customText, skipPreflight, inputMode,
+                compressionLevel, digestProvider, signatureProvider, ltv, tsaUrl, preflightCache,
+                timingsFile);
+        return new SignatureParameters(pdfPath, outputPath, certPaths, passwords, options, directory, glob, fileList, workers,
+                reportPath, watchDirectories, outboxDirectory, failedDirectory, debounceMillis,
+                ledgerPath);
+    }
 
-            return true;
-        } catch (IOException | GeneralSecurityException e) {
-            logger.log(Level.SEVERE, "Error al validar los archivos");
-            return false;
+    /**
+     * Devuelve el proveedor JCA indicado, o {@code null} para "auto": en ese caso decide el
+     * orden de proveedores de la JVM, donde SUN calcula SHA-2 con instrucciones del procesador.
+     */
+    private static String resolveProvider(String name) {
+        if (AUTO_PROVIDER.equalsIgnoreCase(name)) {
+            return null;
+        }
+        if (Security.getProvider(name) == null) {
+            throw new IllegalArgumentException("Proveedor criptográfico no disponible: " + name);
         }
+        return name;
     }
 
-    private static String createOutputPath(String inputPath) {
-        Path path = Paths.get(inputPath);
-        String fileName = path.getFileName().toString();
-        int dotIndex = fileName.lastIndexOf('.');
-
-        if (dotIndex < 0) {
-            return path.resolveSibling(fileName + OUTPUT_SUFFIX).toString();
+    private static URI resolveTsaUrl(String value) {
+        URI url;
+        try {
+            url = new URI(value);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("URL de la TSA no válida: " + value);
         }
-
-        String baseName = fileName.substring(0, dotIndex);
-        String extension = fileName.substring(dotIndex);
-        return path.resolveSibling(baseName + OUTPUT_SUFFIX + extension).toString();
+        String scheme = url.getScheme();
+        if (!("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)) || url.getHost() == null) {
+            throw new IllegalArgumentException("URL de la TSA no válida: " + value);
+        }
+        return url;
     }
 
-    private static void signDocument(SignatureParameters params)
-            throws GeneralSecurityException, IOException {
-
-        Certificate[] chain;
-        PrivateKey privateKey;
-        String alias;
-        X500Principal subjectDN;
-
-        try (InputStream certStream = Files.newInputStream(Paths.get(params.certPath()))) {
-            KeyStore ks = KeyStore.getInstance("PKCS12");
-            ks.load(certStream, params.password().toCharArray());
-
-            alias = ks.aliases().nextElement();
-            privateKey = (PrivateKey) ks.getKey(alias, params.password().toCharArray());
-            chain = ks.getCertificateChain(alias);
+    private static boolean validateInputs(SignatureParameters params) {
 
-            X509Certificate cert = (X509Certificate) chain[0];
-            subjectDN = cert.getSubjectX500Principal();
+        if (params.pdfPath() != null && !STANDARD_STREAM.equals(params.pdfPath())) {
+            Path pdfPath = Paths.get(params.pdfPath());
+            if (!Files.exists(pdfPath) || !Files.isRegularFile(pdfPath)) {
+                logger.log(Level.SEVERE, "El archivo PDF no existe o no es accesible: " + params.pdfPath());
+                return false;
+            }
         }
 
-        Path tempPath = Files.createTempFile("sig", ".tmp");
-        Path finalOutputPath = Paths.get(createOutputPath(params.pdfPath()));
-
-        PdfSignatureAppearance appearance = null;
-        String signatureText = null;
-
-        if (params.xPos() != 0 || params.yPos() != 0) {
-            signatureText = buildSignatureText(
-                    params.customText(),
-                    subjectDN
-            );
+        if (params.directory() != null && !Files.isDirectory(Paths.get(params.directory()))) {
+            logger.log(Level.SEVERE, "El directorio de entrada no existe o no es accesible: " + params.directory());
+            return false;
         }
 
-        try (InputStream inputStream = Files.newInputStream(Paths.get(params.pdfPath()));
-             OutputStream outputStream = Files.newOutputStream(tempPath)) {
-
-            PdfReader reader = new PdfReader(inputStream);
-            StampingProperties stampingProperties = new StampingProperties();
-            stampingProperties.useAppendMode();
-
-            PdfSigner signer = new PdfSigner(reader, outputStream, stampingProperties);
-
-            String fieldName = String.format("Signature_%s_%d",
-                    getNameFromDN(subjectDN.getName()).replaceAll("[^a-zA-Z0-9]", "_"),
-                    System.currentTimeMillis());
-            signer.setFieldName(fieldName);
-
-            if (params.xPos() != 0 || params.yPos() != 0) {
-                Rectangle rect = new Rectangle(params.xPos(), params.yPos(), 160, 70);
-
-                appearance = signer.getSignatureAppearance();
-                appearance.setPageRect(rect)
-                        .setPageNumber(1)
-                        .setLayer2FontSize(8.0f)
-                        .setLayer2Text(signatureText);
-
-                if (params.lock()) {
-                    signer.setCertificationLevel(PdfSigner.CERTIFIED_NO_CHANGES_ALLOWED);
-                }
-            }
-
-            IExternalSignature signature = new PrivateKeySignature(
-                    privateKey,
-                    DigestAlgorithms.SHA256,
-                    BouncyCastleProvider.PROVIDER_NAME
-            );
-
-            signer.signDetached(
-                    new BouncyCastleDigest(),
-                    signature,
-                    chain,
-                    null,
-                    null,
-                    null,
-                    0,
-                    PdfSigner.CryptoStandard.CMS
-            );
-        } catch (Exception e) {
-            logger.log(Level.SEVERE, "Error al firmar el documento");
-            throw e;
-        }
-
-        if (params.lock()) {
-            Path finalTempPath = Files.createTempFile("sig_final", ".tmp");
-
-            try (InputStream tempInputStream = Files.newInputStream(tempPath);
-                 OutputStream finalOutputStream = Files.newOutputStream(finalTempPath)) {
-
-                WriterProperties writerProps = new WriterProperties()
-                        .addXmpMetadata()
-                        .setCompressionLevel(CompressionConstants.BEST_COMPRESSION)
-                        .setStandardEncryption(
-                                null,
-                                null,
-                                EncryptionConstants.ALLOW_PRINTING |
-                                        EncryptionConstants.ALLOW_SCREENREADERS,
-                                EncryptionConstants.ENCRYPTION_AES_256 |
-                                        EncryptionConstants.DO_NOT_ENCRYPT_METADATA
-                        );
-
-                PdfReader reader = new PdfReader(tempInputStream);
-                PdfWriter writer = new PdfWriter(finalOutputStream, writerProps);
-                new PdfDocument(reader, writer).close();
-                reader.close();
-                writer.close();
-
-                Files.move(finalTempPath, finalOutputPath,
-                        java.nio.file.StandardCopyOption.REPLACE_EXISTING);
-            } finally {
-                Files.deleteIfExists(tempPath);
-                Files.deleteIfExists(finalTempPath);
+        for (String watchDirectory : params.watchDirectories()) {
+            if (!Files.isDirectory(Paths.get(watchDirectory))) {
+                logger.log(Level.SEVERE, "La carpeta vigilada no existe o no es accesible: " + watchDirectory);
+                return false;
             }
-        } else {
-            Files.move(tempPath, finalOutputPath,
-                    java.nio.file.StandardCopyOption.REPLACE_EXISTING);
         }
 
-        logger.log(Level.INFO, "Documento firmado exitosamente: " + finalOutputPath.toAbsolutePath());
-    }
-
-    private static String buildSignatureText(
-            String customText,
-            X500Principal subjectDN) {
-
-        String timestamp = LocalDateTime.now()
-                .format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss"));
-
-        StringBuilder text = new StringBuilder();
-
-        if (customText != null && !customText.trim().isEmpty()) {
-            text.append(customText).append("\n\n");
+        if (params.fileList() != null && !Files.isRegularFile(Paths.get(params.fileList()))) {
+            logger.log(Level.SEVERE, "El archivo de lista no existe o no es accesible: " + params.fileList());
+            return false;
         }
 
-        text.append("Firmado digitalmente por:\n")
-                .append(getNameFromDN(subjectDN.getName()))
-                .append("\nFecha: ")
-                .append(timestamp);
-
-        return text.toString();
-    }
+        for (String certPath : params.certPaths()) {
+            if (!Files.isRegularFile(Paths.get(certPath))) {
+                logger.log(Level.SEVERE, "El archivo de certificado no existe o no es accesible: " + certPath);
+                return false;
+            }
+        }
 
-    private static String getNameFromDN(String dn) {
-        return java.util.Arrays.stream(dn.split(","))
-                .map(String::trim)
-                .filter(part -> part.startsWith("CN="))
-                .map(part -> part.substring(3))
-                .findFirst()
-                .orElse(dn);
+        return true;
     }
-}
\ No newline at end of file
+}
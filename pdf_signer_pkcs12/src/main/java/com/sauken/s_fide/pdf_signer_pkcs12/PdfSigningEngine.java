@@ -0,0 +1,663 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import com.itextpdf.forms.PdfSigFieldLock;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.CompressionConstants;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.StampingProperties;
+import com.itextpdf.signatures.DigestAlgorithms;
+import com.itextpdf.signatures.IExternalSignature;
+import com.itextpdf.signatures.PdfPKCS7;
+import com.itextpdf.signatures.PdfSignatureAppearance;
+import com.itextpdf.signatures.PdfSigner;
+import com.itextpdf.signatures.PrivateKeySignature;
+import com.itextpdf.signatures.ProviderDigest;
+import com.itextpdf.signatures.SignatureUtil;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Motor de firma de documentos PDF con una clave en memoria, pensado para integrarse en
+ * otras aplicaciones Java. Las credenciales se cargan una sola vez y la instancia es
+ * inmutable, por lo que varios hilos pueden llamar a {@link #sign(SigningRequest)} a la vez.
+ * No termina el proceso ni modifica la configuración de seguridad en cada firma.
+ */
+public final class PdfSigningEngine {
+    private static final Logger logger = Logger.getLogger(PdfSigningEngine.class.getName());
+    static final String OUTPUT_SUFFIX = "-signed";
+    private static final float SEQUENCE_FIELD_STEP = 165;
+
+    static {
+        // Registro único, necesario sólo si se pide el proveedor "BC" por nombre.
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+    }
+
+    /**
+     * Opciones de firma. Los proveedores {@code null} dejan la elección a la JVM. Con
+     * {@code preflightCache} las firmas existentes ya verificadas en ejecuciones anteriores
+     * no se vuelven a verificar. Con {@code timingsFile} se agrega una línea JSON con los
+     * tiempos por fase de cada documento ("-" para la salida de errores).
+     */
+    public record SigningOptions(
+            boolean lock,
+            float xPos,
+            float yPos,
+            String customText,
+            boolean skipPreflight,
+            PdfInput.Mode inputMode,
+            int compressionLevel,
+            String digestProvider,
+            String signatureProvider,
+            boolean ltv,
+            URI tsaUrl,
+            Path preflightCache,
+            Path timingsFile
+    ) {
+        public static SigningOptions defaults() {
+            return new SigningOptions(false, 0, 0, null, false, PdfInput.Mode.MEMORY,
+                    CompressionConstants.DEFAULT_COMPRESSION, null, null, false, null, null, null);
+        }
+
+        boolean isVisible() {
+            return xPos != 0 || yPos != 0;
+        }
+
+        /**
+         * Opciones del paso {@code index} de una firma en secuencia: sólo el primer paso
+         * verifica las firmas previas, sólo el último bloquea el documento y las firmas
+         * visibles se ubican una al lado de la otra.
+         */
+        SigningOptions forSequenceStep(int index, boolean last) {
+            return new SigningOptions(lock && last, isVisible() ? xPos + index * SEQUENCE_FIELD_STEP : xPos, yPos,
+                    customText, skipPreflight || index > 0, inputMode, compressionLevel, digestProvider,
+                    signatureProvider, ltv, tsaUrl, preflightCache, timingsFile);
+        }
+    }
+
+    /**
+     * Documento a firmar. Si {@code output} es {@code null} el resultado se guarda junto al
+     * original con el sufijo "-signed".
+     */
+    public record SigningRequest(Path input, Path output, SigningOptions options) {
+        public SigningRequest(Path input, SigningOptions options) {
+            this(input, null, options);
+        }
+    }
+
+    /**
+     * Resultado de una firma. {@code timestampMillis} es la demora de la consulta a la TSA,
+     * o -1 si no se pidió sello de tiempo.
+     */
+    public record SigningResult(Path input, Path output, long bytes, long elapsedMillis, long timestampMillis) {}
+
+    @FunctionalInterface
+    private interface IOSupplier<T> {
+        T get() throws IOException;
+    }
+
+    /**
+     * Flujo de salida sobre un canal que no lo cierra al terminar, para que el llamador
+     * pueda seguir usándolo.
+     */
+    private static final class ChannelOutputStream extends OutputStream {
+        private final WritableByteChannel channel;
+
+        ChannelOutputStream(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    private final PrivateKey privateKey;
+    private final Certificate[] chain;
+    private final X500Principal subjectDN;
+    private final RevocationCache revocationCache = new RevocationCache();
+    private final Map<URI, TsaClient> tsaClients = new ConcurrentHashMap<>();
+    private final ContainerSizeEstimator containerSizes = new ContainerSizeEstimator();
+    private final Map<Path, SignatureVerificationCache> verificationCaches = new HashMap<>();
+    private final Map<Path, TimingLog> timingLogs = new HashMap<>();
+
+    private PdfSigningEngine(PrivateKey privateKey, Certificate[] chain) {
+        this.privateKey = privateKey;
+        this.chain = chain.clone();
+        this.subjectDN = ((X509Certificate) chain[0]).getSubjectX500Principal();
+    }
+
+    /**
+     * Crea el motor con una clave y una cadena de certificados ya cargadas.
+     */
+    public static PdfSigningEngine of(PrivateKey privateKey, Certificate[] chain) {
+        if (privateKey == null || chain == null || chain.length == 0) {
+            throw new IllegalArgumentException("Se requieren la clave privada y la cadena de certificados");
+        }
+        return new PdfSigningEngine(privateKey, chain);
+    }
+
+    /**
+     * Carga la clave privada y la cadena de certificados una única vez, para no repetir la
+     * derivación PBKDF del PKCS#12 en cada documento.
+     */
+    public static PdfSigningEngine fromPkcs12(Path certPath, char[] password)
+            throws GeneralSecurityException, IOException {
+
+        try (InputStream certStream = Files.newInputStream(certPath)) {
+            KeyStore ks = KeyStore.getInstance("PKCS12");
+            ks.load(certStream, password);
+
+            if (!ks.aliases().hasMoreElements()) {
+                throw new GeneralSecurityException("El archivo de certificado no contiene certificados");
+            }
+
+            String alias = ks.aliases().nextElement();
+            if (!ks.isKeyEntry(alias)) {
+                throw new GeneralSecurityException("El certificado no contiene una clave privada");
+            }
+
+            Certificate[] chain = ks.getCertificateChain(alias);
+            if (chain == null || chain.length == 0) {
+                throw new GeneralSecurityException("No se encontró una cadena de certificados válida");
+            }
+
+            PrivateKey privateKey;
+            try {
+                privateKey = (PrivateKey) ks.getKey(alias, password);
+            } catch (GeneralSecurityException e) {
+                throw new GeneralSecurityException("Error al acceder a la clave privada");
+            }
+            if (privateKey == null) {
+                throw new GeneralSecurityException("No se pudo obtener la clave privada del certificado");
+            }
+
+            return new PdfSigningEngine(privateKey, chain);
+        } catch (IOException e) {
+            throw new IOException("Contraseña incorrecta o error al leer el archivo de certificado");
+        }
+    }
+
+    public X500Principal subjectDN() {
+        return subjectDN;
+    }
+
+    ContainerSizeEstimator.Stats containerStats() {
+        return containerSizes.stats();
+    }
+
+    List<Certificate> signerCertificates() {
+        return List.of(chain[0]);
+    }
+
+    /**
+     * Firma el documento de la solicitud. El resultado se escribe primero en un archivo
+     * temporal y sólo se mueve a su destino cuando la firma terminó bien.
+     */
+    public SigningResult sign(SigningRequest request) throws GeneralSecurityException, IOException {
+        long start = System.nanoTime();
+        Path pdfPath = request.input();
+        SigningOptions options = request.options() != null ? request.options() : SigningOptions.defaults();
+        Path finalOutputPath = request.output() != null ? request.output() : defaultOutputPath(pdfPath);
+        long bytes = Files.size(pdfPath);
+
+        TsaClient.DocumentTimestamp timestamp = documentTimestamp(options);
+        PhaseClock clock = new PhaseClock(pdfPath.toString());
+
+        Path tempPath = Files.createTempFile("sig", ".tmp");
+        try {
+            signWithRetry(() -> PdfInput.open(pdfPath, options.inputMode()),
+                    () -> Files.newOutputStream(tempPath),
+                    options.inputMode().isLowMemory() ? tempPath.getParent() : null,
+                    pdfPath.toString(), options, timestamp, clock);
+        } catch (Exception e) {
+            Files.deleteIfExists(tempPath);
+            logger.log(Level.SEVERE, "Error al firmar el documento: " + pdfPath);
+            throw e;
+        }
+
+        clock.enter(PhaseClock.WRITE);
+        Files.move(tempPath, finalOutputPath, StandardCopyOption.REPLACE_EXISTING);
+        recordTimings(options, clock, bytes);
+
+        logger.log(Level.INFO, "Documento firmado exitosamente: " + finalOutputPath.toAbsolutePath());
+        return new SigningResult(pdfPath, finalOutputPath, bytes, (System.nanoTime() - start) / 1_000_000,
+                timestamp != null ? timestamp.latencyMillis() : -1);
+    }
+
+    /**
+     * Aplica las firmas de {@code signers}, en orden, como revisiones incrementales del
+     * mismo documento. Las revisiones intermedias quedan en memoria y sólo se verifican
+     * las firmas que el documento ya tenía, no las que se acaban de agregar.
+     */
+    public static SigningResult signInSequence(List<PdfSigningEngine> signers, SigningRequest request)
+            throws GeneralSecurityException, IOException {
+        long start = System.nanoTime();
+        Path pdfPath = request.input();
+        SigningOptions options = request.options() != null ? request.options() : SigningOptions.defaults();
+        Path finalOutputPath = request.output() != null ? request.output() : defaultOutputPath(pdfPath);
+
+        PhaseClock clock = new PhaseClock(pdfPath.toString());
+        clock.enter(PhaseClock.READ);
+        byte[] document = Files.readAllBytes(pdfPath);
+        SequenceResult sequence = signRevisions(signers, document, pdfPath.toString(), options, clock);
+
+        clock.enter(PhaseClock.WRITE);
+        Path tempPath = Files.createTempFile("sig", ".tmp");
+        try {
+            Files.write(tempPath, sequence.document());
+            Files.move(tempPath, finalOutputPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempPath);
+            throw e;
+        }
+        signers.get(0).recordTimings(options, clock, document.length);
+
+        logger.log(Level.INFO, "Documento firmado exitosamente por " + signers.size() + " firmantes: "
+                + finalOutputPath.toAbsolutePath());
+        return new SigningResult(pdfPath, finalOutputPath, document.length, (System.nanoTime() - start) / 1_000_000,
+                sequence.timestampMillis());
+    }
+
+    /**
+     * Igual que {@link #signInSequence(List, SigningRequest)}, leyendo de {@code input} y
+     * escribiendo el resultado en {@code output}. El canal no se cierra.
+     */
+    public static SigningResult signInSequence(List<PdfSigningEngine> signers, InputStream input,
+                                               WritableByteChannel output, SigningOptions options)
+            throws GeneralSecurityException, IOException {
+        long start = System.nanoTime();
+        SigningOptions effective = options != null ? options : SigningOptions.defaults();
+        PhaseClock clock = new PhaseClock("entrada estándar");
+        clock.enter(PhaseClock.READ);
+        byte[] document = input.readAllBytes();
+        SequenceResult sequence = signRevisions(signers, document, "entrada estándar", effective, clock);
+        clock.enter(PhaseClock.WRITE);
+        try (OutputStream outputStream = new ChannelOutputStream(output)) {
+            outputStream.write(sequence.document());
+        }
+        signers.get(0).recordTimings(effective, clock, document.length);
+        return new SigningResult(null, null, document.length, (System.nanoTime() - start) / 1_000_000,
+                sequence.timestampMillis());
+    }
+
+    private record SequenceResult(byte[] document, long timestampMillis) {}
+
+    private static SequenceResult signRevisions(List<PdfSigningEngine> signers, byte[] document, String documentName,
+                                                SigningOptions options, PhaseClock clock)
+            throws GeneralSecurityException, IOException {
+        if (signers.isEmpty()) {
+            throw new IllegalArgumentException("Se requiere al menos un firmante");
+        }
+
+        byte[] current = document;
+        long timestampMillis = -1;
+        for (int i = 0; i < signers.size(); i++) {
+            PdfSigningEngine signer = signers.get(i);
+            SigningOptions stepOptions = options.forSequenceStep(i, i == signers.size() - 1);
+            TsaClient.DocumentTimestamp timestamp = signer.documentTimestamp(stepOptions);
+            byte[] revision = current;
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(revision.length + 32 * 1024);
+            try {
+                signer.signWithRetry(() -> PdfInput.of(revision), () -> {
+                    buffer.reset();
+                    return buffer;
+                }, null, documentName, stepOptions, timestamp, clock);
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, "Error en la firma " + (i + 1) + " de " + signers.size() + " ("
+                        + getNameFromDN(signer.subjectDN().getName()) + ") del documento: " + documentName);
+                throw e;
+            }
+            current = buffer.toByteArray();
+            if (timestamp != null) {
+                timestampMillis = Math.max(timestampMillis, 0) + timestamp.latencyMillis();
+            }
+            logger.log(Level.FINE, "Firma {0} de {1} aplicada", new Object[]{i + 1, signers.size()});
+        }
+        return new SequenceResult(current, timestampMillis);
+    }
+
+    /**
+     * Firma el PDF leído de {@code input} y escribe el documento firmado directamente en
+     * {@code output}, sin archivos temporales. El canal no se cierra.
+     */
+    public SigningResult sign(InputStream input, WritableByteChannel output, SigningOptions options)
+            throws GeneralSecurityException, IOException {
+        PhaseClock clock = new PhaseClock("entrada estándar");
+        clock.enter(PhaseClock.READ);
+        byte[] document = input.readAllBytes();
+        return signToChannel(() -> PdfInput.of(document), document.length, "entrada estándar", output, options, clock);
+    }
+
+    /**
+     * Firma el PDF indicado y escribe el documento firmado directamente en {@code output},
+     * sin archivos temporales. El canal no se cierra.
+     */
+    public SigningResult sign(Path input, WritableByteChannel output, SigningOptions options)
+            throws GeneralSecurityException, IOException {
+        SigningOptions effective = options != null ? options : SigningOptions.defaults();
+        return signToChannel(() -> PdfInput.open(input, effective.inputMode()), Files.size(input),
+                input.toString(), output, effective, new PhaseClock(input.toString()));
+    }
+
+    private SigningResult signToChannel(IOSupplier<PdfInput> source, long bytes, String documentName,
+                                        WritableByteChannel output, SigningOptions options, PhaseClock clock)
+            throws GeneralSecurityException, IOException {
+        long start = System.nanoTime();
+        SigningOptions effective = options != null ? options : SigningOptions.defaults();
+        TsaClient.DocumentTimestamp timestamp = documentTimestamp(effective);
+        try {
+            signWithRetry(source, () -> new ChannelOutputStream(output), null, documentName, effective, timestamp,
+                    clock);
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, "Error al firmar el documento: " + documentName);
+            throw e;
+        }
+        recordTimings(effective, clock, bytes);
+        return new SigningResult(null, null, bytes, (System.nanoTime() - start) / 1_000_000,
+                timestamp != null ? timestamp.latencyMillis() : -1);
+    }
+
+    private TsaClient.DocumentTimestamp documentTimestamp(SigningOptions options) {
+        return options.tsaUrl() != null
+                ? tsaClients.computeIfAbsent(options.tsaUrl(), TsaClient::new).forDocument()
+                : null;
+    }
+
+    /**
+     * Firma con el tamaño de contenedor estimado y, si no alcanza, vuelve a firmar una vez
+     * con más espacio. iText escribe la salida recién al cerrar la firma, por lo que el
+     * intento fallido no deja nada escrito en el destino.
+     */
+    private void signWithRetry(IOSupplier<PdfInput> source, IOSupplier<OutputStream> target, Path workDirectory,
+                               String documentName, SigningOptions options, TsaClient.DocumentTimestamp timestamp,
+                               PhaseClock clock) throws GeneralSecurityException, IOException {
+
+        int estimatedSize = containerSizes.estimate(chain,
+                timestamp != null ? timestamp.getTokenSizeEstimate() : 0);
+        int containerBytes;
+        try {
+            containerBytes = signTo(source, target, workDirectory, documentName, options, timestamp,
+                    estimatedSize, clock);
+        } catch (IOException e) {
+            if (!ContainerSizeEstimator.isNotEnoughSpace(e)) {
+                throw e;
+            }
+            estimatedSize = containerSizes.retryEstimate(estimatedSize);
+            logger.log(Level.FINE, "Espacio de firma insuficiente, se reintenta con " + estimatedSize + " bytes");
+            containerBytes = signTo(source, target, workDirectory, documentName, options, timestamp,
+                    estimatedSize, clock);
+        }
+        containerSizes.record(estimatedSize, containerBytes);
+    }
+
+    /**
+     * Escribe el documento firmado en {@code target} reservando {@code estimatedSize} bytes
+     * para el contenedor CMS. Con {@code workDirectory} el resultado intermedio se guarda en
+     * disco en lugar de en memoria. Devuelve los bytes que ocupó el contenedor.
+     */
+    private int signTo(IOSupplier<PdfInput> source, IOSupplier<OutputStream> target, Path workDirectory,
+                       String documentName, SigningOptions options, TsaClient.DocumentTimestamp timestamp,
+                       int estimatedSize, PhaseClock clock)
+            throws GeneralSecurityException, IOException {
+
+        clock.enter(PhaseClock.READ);
+        try (PdfInput input = source.get();
+             OutputStream outputStream = target.get()) {
+
+            PdfReader reader = input.reader();
+            StampingProperties stampingProperties = new StampingProperties();
+            stampingProperties.useAppendMode();
+
+            // En modo de baja memoria el PdfSigner escribe el resultado intermedio en disco
+            // en lugar de acumularlo en un ByteArrayOutputStream.
+            MeasuredPdfSigner signer = workDirectory != null
+                    ? new MeasuredPdfSigner(reader, outputStream, workDirectory.toString(), stampingProperties, clock)
+                    : new MeasuredPdfSigner(reader, outputStream, stampingProperties, clock);
+            clock.enter(PhaseClock.PREFLIGHT);
+            preflight(reader, signer.getDocument(), documentName, !options.skipPreflight(),
+                    options.skipPreflight() ? null : verificationCache(options.preflightCache()));
+            clock.enter(PhaseClock.PREPARE);
+
+            String fieldName = String.format("Signature_%s_%d",
+                    getNameFromDN(subjectDN.getName()).replaceAll("[^a-zA-Z0-9]", "_"),
+                    System.currentTimeMillis());
+            signer.setFieldName(fieldName);
+
+            if (options.isVisible()) {
+                Rectangle rect = new Rectangle(options.xPos(), options.yPos(), 160, 70);
+
+                PdfSignatureAppearance appearance = signer.getSignatureAppearance();
+                appearance.setPageRect(rect)
+                        .setPageNumber(1);
+                SignatureAppearanceCache.apply(appearance, signer.getDocument(), subjectDN, options.customText(), 8.0f);
+            }
+
+            if (options.lock()) {
+                applyDocumentLock(signer);
+            }
+            if (options.ltv()) {
+                DssWriter.addDss(signer.getDocument(), chain, revocationCache.collect(chain));
+            }
+            signer.getDocument().getWriter().setCompressionLevel(options.compressionLevel());
+
+            IExternalSignature signature = new PrivateKeySignature(
+                    privateKey,
+                    DigestAlgorithms.SHA256,
+                    options.signatureProvider()
+            );
+
+            signer.signDetached(
+                    new ProviderDigest(options.digestProvider()),
+                    signature,
+                    chain,
+                    null,
+                    null,
+                    timestamp,
+                    estimatedSize,
+                    PdfSigner.CryptoStandard.CMS
+            );
+            return signer.containerBytes();
+        }
+    }
+
+    /**
+     * Controles previos sobre el mismo documento que abre el {@link PdfSigner}, de modo que
+     * el PDF se lee y se analiza una sola vez por firma.
+     */
+    private static void preflight(PdfReader reader, PdfDocument pdfDoc, String documentName, boolean verifySignatures,
+                                  SignatureVerificationCache cache) throws GeneralSecurityException, IOException {
+
+        if (reader.isEncrypted()) {
+            throw new GeneralSecurityException("El PDF está encriptado y no puede ser firmado: " + documentName);
+        }
+
+        if (!verifySignatures) {
+            return;
+        }
+
+        SignatureUtil signUtil = new SignatureUtil(pdfDoc);
+        List<String> signatures = signUtil.getSignatureNames();
+
+        if (!signatures.isEmpty()) {
+            logger.log(Level.INFO, "Firmas existentes encontradas en " + documentName + ":");
+            Map<String, SigningLedger.Key> keys = cache != null
+                    ? SignatureVerificationCache.keys(reader, signUtil, signatures)
+                    : Map.of();
+            for (String sigName : signatures) {
+                SigningLedger.Key key = keys.get(sigName);
+                if (key != null && cache.contains(key)) {
+                    logger.log(Level.INFO, "- " + sigName + ": válida (verificada anteriormente)");
+                    continue;
+                }
+                PdfPKCS7 pkcs7 = signUtil.readSignatureData(sigName);
+                if (!pkcs7.verifySignatureIntegrityAndAuthenticity()) {
+                    throw new GeneralSecurityException("La firma existente '" + sigName + "' no es válida");
+                }
+                if (key != null) {
+                    cache.add(key);
+                }
+                logger.log(Level.INFO, "- " + sigName + ": válida");
+            }
+        }
+    }
+
+    /**
+     * Cierra el reloj del documento y, si se pidió, agrega su registro de tiempos.
+     */
+    private void recordTimings(SigningOptions options, PhaseClock clock, long documentBytes) throws IOException {
+        clock.stop();
+        if (options.timingsFile() == null) {
+            return;
+        }
+        TimingLog log;
+        synchronized (timingLogs) {
+            log = timingLogs.get(options.timingsFile());
+            if (log == null) {
+                log = TimingLog.open(options.timingsFile());
+                timingLogs.put(options.timingsFile(), log);
+            }
+        }
+        log.write(clock.toJson(documentBytes));
+    }
+
+    /**
+     * Devuelve el caché de verificaciones del archivo indicado, abierto una sola vez por
+     * proceso, o {@code null} si no se pidió.
+     */
+    private SignatureVerificationCache verificationCache(Path file) throws IOException {
+        if (file == null) {
+            return null;
+        }
+        synchronized (verificationCaches) {
+            SignatureVerificationCache cache = verificationCaches.get(file);
+            if (cache == null) {
+                cache = SignatureVerificationCache.open(file);
+                verificationCaches.put(file, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Bloquea el documento en la misma pasada incremental que produce la firma. Una firma
+     * de certificación (DocMDP) sólo puede ser la primera del documento; si ya existen
+     * firmas se usa un bloqueo de campo (FieldMDP) sobre todos los campos que tampoco
+     * admite cambios (/Action es obligatorio en el diccionario de bloqueo).
+     */
+    private static void applyDocumentLock(PdfSigner signer) {
+        if (new SignatureUtil(signer.getDocument()).getSignatureNames().isEmpty()) {
+            signer.setCertificationLevel(PdfSigner.CERTIFIED_NO_CHANGES_ALLOWED);
+        } else {
+            signer.setFieldLockDict(new PdfSigFieldLock()
+                    .setFieldLock(PdfSigFieldLock.LockAction.ALL)
+                    .setDocumentPermissions(PdfSigFieldLock.LockPermissions.NO_CHANGES_ALLOWED));
+        }
+    }
+
+    static Path defaultOutputPath(Path path) {
+        String fileName = path.getFileName().toString();
+        int dotIndex = fileName.lastIndexOf('.');
+
+        if (dotIndex < 0) {
+            return path.resolveSibling(fileName + OUTPUT_SUFFIX);
+        }
+
+        String baseName = fileName.substring(0, dotIndex);
+        String extension = fileName.substring(dotIndex);
+        return path.resolveSibling(baseName + OUTPUT_SUFFIX + extension);
+    }
+
+    static String getNameFromDN(String dn) {
+        return Arrays.stream(dn.split(","))
+                .map(String::trim)
+                .filter(part -> part.startsWith("CN="))
+                .map(part -> part.substring(3))
+                .findFirst()
+                .orElse(dn);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import com.itextpdf.signatures.CrlClientOnline;
+import com.itextpdf.signatures.OcspClientBouncyCastle;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.OCSPResponse;
+import org.bouncycastle.asn1.ocsp.OCSPResponseStatus;
+import org.bouncycastle.asn1.ocsp.ResponseBytes;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+
+/**
+ * Respuestas OCSP y CRL de la cadena del firmante, compartidas por todos los documentos
+ * que firma un mismo motor. Cada certificado se consulta una sola vez (OCSP y CRL en
+ * paralelo) y la respuesta se reutiliza hasta su próxima actualización, de modo que un
+ * lote de miles de documentos genera una única consulta por certificado.
+ */
+final class RevocationCache {
+    private static final Logger logger = Logger.getLogger(RevocationCache.class.getName());
+    private static final Duration DEFAULT_VALIDITY = Duration.ofMinutes(30);
+    private static final Duration FAILURE_RETRY = Duration.ofMinutes(1);
+
+    /**
+     * Información de revocación lista para incorporar al DSS. Las respuestas OCSP se
+     * guardan como OCSPResponse completas, que es lo que espera el diccionario DSS.
+     */
+    record RevocationData(List<byte[]> ocspResponses, List<byte[]> crls) {}
+
+    private record CertificateRevocation(byte[] ocspResponse, List<byte[]> crls, Instant expiresAt) {
+        boolean isEmpty() {
+            return ocspResponse == null && crls.isEmpty();
+        }
+    }
+
+    private final Map<String, CompletableFuture<CertificateRevocation>> entries = new ConcurrentHashMap<>();
+    private final ExecutorService fetchers = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "revocation-fetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Devuelve la información de revocación de todos los certificados de la cadena que
+     * tienen emisor en ella. Falla si no se obtuvo ninguna para el certificado firmante.
+     */
+    RevocationData collect(Certificate[] chain) throws GeneralSecurityException {
+        List<X509Certificate> certificates = new ArrayList<>();
+        List<CompletableFuture<CertificateRevocation>> futures = new ArrayList<>();
+        for (int i = 0; i < chain.length; i++) {
+            X509Certificate certificate = (X509Certificate) chain[i];
+            X509Certificate issuer = findIssuer(certificate, chain, i);
+            if (issuer == null) {
+                continue;
+            }
+            certificates.add(certificate);
+            futures.add(lookup(certificate, issuer));
+        }
+
+        List<byte[]> ocspResponses = new ArrayList<>();
+        List<byte[]> crls = new ArrayList<>();
+        for (int i = 0; i < futures.size(); i++) {
+            CertificateRevocation revocation = futures.get(i).join();
+            if (revocation.isEmpty()) {
+                if (certificates.get(i) == chain[0]) {
+                    throw new GeneralSecurityException(
+                            "No se pudo obtener información de revocación (OCSP ni CRL) del certificado firmante");
+                }
+                logger.log(Level.WARNING, "Sin información de revocación para {0}",
+                        certificates.get(i).getSubjectX500Principal().getName());
+                continue;
+            }
+            if (revocation.ocspResponse() != null) {
+                ocspResponses.add(revocation.ocspResponse());
+            }
+            crls.addAll(revocation.crls());
+        }
+        return new RevocationData(ocspResponses, crls);
+    }
+
+    private CompletableFuture<CertificateRevocation> lookup(X509Certificate certificate, X509Certificate issuer) {
+        String key = certificate.getIssuerX500Principal().getName() + "#" + certificate.getSerialNumber();
+        return entries.compute(key, (ignored, current) -> {
+            if (current != null && (!current.isDone() || !isExpired(current.join()))) {
+                return current;
+            }
+            CompletableFuture<byte[]> ocsp = CompletableFuture.supplyAsync(
+                    () -> fetchOcsp(certificate, issuer), fetchers);
+            CompletableFuture<List<byte[]>> crl = CompletableFuture.supplyAsync(
+                    () -> fetchCrls(certificate), fetchers);
+            return ocsp.thenCombine(crl, RevocationCache::toEntry);
+        });
+    }
+
+    private static boolean isExpired(CertificateRevocation revocation) {
+        return Instant.now().isAfter(revocation.expiresAt());
+    }
+
+    private static CertificateRevocation toEntry(byte[] ocspResponse, List<byte[]> crls) {
+        Instant now = Instant.now();
+        if (ocspResponse == null && crls.isEmpty()) {
+            return new CertificateRevocation(null, crls, now.plus(FAILURE_RETRY));
+        }
+
+        Instant expiresAt = now.plus(DEFAULT_VALIDITY);
+        if (ocspResponse != null) {
+            expiresAt = earliest(expiresAt, ocspNextUpdate(ocspResponse));
+        }
+        for (byte[] crl : crls) {
+            expiresAt = earliest(expiresAt, crlNextUpdate(crl));
+        }
+        return new CertificateRevocation(ocspResponse, crls, expiresAt);
+    }
+
+    private static byte[] fetchOcsp(X509Certificate certificate, X509Certificate issuer) {
+        try {
+            byte[] basicResponse = new OcspClientBouncyCastle(null).getEncoded(certificate, issuer, null);
+            if (basicResponse == null) {
+                return null;
+            }
+            return new OCSPResponse(
+                    new OCSPResponseStatus(OCSPResponseStatus.SUCCESSFUL),
+                    new ResponseBytes(OCSPObjectIdentifiers.id_pkix_ocsp_basic, new DEROctetString(basicResponse))
+            ).getEncoded();
+        } catch (IOException | RuntimeException e) {
+            logger.log(Level.WARNING, "Error en la consulta OCSP: {0}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static List<byte[]> fetchCrls(X509Certificate certificate) {
+        try {
+            Collection<byte[]> encoded = new CrlClientOnline(new Certificate[]{certificate})
+                    .getEncoded(certificate, null);
+            return encoded != null ? List.copyOf(encoded) : List.of();
+        } catch (GeneralSecurityException | RuntimeException e) {
+            logger.log(Level.WARNING, "Error en la descarga de la CRL: {0}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    private static Instant ocspNextUpdate(byte[] ocspResponse) {
+        try {
+            OCSPResponse response = OCSPResponse.getInstance(ocspResponse);
+            BasicOCSPResp basic = new BasicOCSPResp(BasicOCSPResponse.getInstance(
+                    response.getResponseBytes().getResponse().getOctets()));
+            Instant earliest = null;
+            for (SingleResp single : basic.getResponses()) {
+                Date nextUpdate = single.getNextUpdate();
+                if (nextUpdate != null) {
+                    earliest = earliest(earliest, nextUpdate.toInstant());
+                }
+            }
+            return earliest;
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Instant crlNextUpdate(byte[] crl) {
+        try {
+            X509CRL parsed = (X509CRL) CertificateFactory.getInstance("X.509")
+                    .generateCRL(new ByteArrayInputStream(crl));
+            return parsed.getNextUpdate() != null ? parsed.getNextUpdate().toInstant() : null;
+        } catch (GeneralSecurityException e) {
+            return null;
+        }
+    }
+
+    private static Instant earliest(Instant current, Instant candidate) {
+        if (candidate == null) {
+            return current;
+        }
+        return current == null || candidate.isBefore(current) ? candidate : current;
+    }
+
+    private static X509Certificate findIssuer(X509Certificate certificate, Certificate[] chain,
+                                              int index) {
+        if (certificate.getSubjectX500Principal().equals(certificate.getIssuerX500Principal())) {
+            return null;
+        }
+        for (int j = index + 1; j < chain.length; j++) {
+            X509Certificate candidate = (X509Certificate) chain[j];
+            if (candidate.getSubjectX500Principal().equals(certificate.getIssuerX500Principal())) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+}
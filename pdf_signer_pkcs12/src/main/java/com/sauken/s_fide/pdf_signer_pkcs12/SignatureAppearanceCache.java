@@ -0,0 +1,190 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import com.itextpdf.io.font.constants.StandardFonts;
+import com.itextpdf.kernel.font.PdfFont;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.xobject.PdfFormXObject;
+import com.itextpdf.signatures.PdfSignatureAppearance;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Apariencia de la firma visible (capa n2) prearmada por firmante, texto adicional,
+ * tamaño del recuadro y tamaño de letra. El texto fijo se diagrama una sola vez con las
+ * métricas de Helvetica y se guarda ya codificado; en cada documento sólo se agrega la
+ * línea de la fecha, sin pasar por el diagramado de iText.
+ */
+final class SignatureAppearanceCache {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss");
+    private static final float PADDING = 2;
+    private static final Map<Key, Template> TEMPLATES = new ConcurrentHashMap<>();
+
+    private record Key(String subjectDN, String customText, float width, float height, float fontSize) {}
+
+    /**
+     * Capa n2 diagramada: el contenido del texto fijo, sin la selección de fuente, y la
+     * posición de la línea de la fecha.
+     */
+    private record Template(byte[] content, float dateX, float dateY) {}
+
+    private SignatureAppearanceCache() {
+    }
+
+    /**
+     * Dibuja la capa n2 de la firma en el recuadro de {@code appearance}, que ya debe tener
+     * asignado su rectángulo en la página.
+     */
+    static void apply(PdfSignatureAppearance appearance, PdfDocument document, X500Principal subjectDN,
+                      String customText, float fontSize) throws IOException {
+        Rectangle rect = appearance.getPageRect();
+        Template template = TEMPLATES.computeIfAbsent(
+                new Key(subjectDN.getName(), customText, rect.getWidth(), rect.getHeight(), fontSize),
+                SignatureAppearanceCache::layout);
+
+        // La fuente pertenece a cada documento; las métricas y la codificación son las mismas.
+        PdfFont font = PdfFontFactory.createFont(StandardFonts.HELVETICA);
+        PdfFormXObject layer2 = appearance.getLayer2();
+        PdfName fontName = layer2.getResources().addFont(document, font);
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream(template.content().length + 128);
+        write(content, "q\n0 0 " + number(rect.getWidth()) + " " + number(rect.getHeight()) + " re\nW\nn\nBT\n/"
+                + fontName.getValue() + " " + number(fontSize) + " Tf\n");
+        content.write(template.content());
+        write(content, "1 0 0 1 " + number(template.dateX()) + " " + number(template.dateY()) + " Tm\n"
+                + hex(font.convertToBytes("Fecha: " + LocalDateTime.now().format(TIMESTAMP_FORMAT))) + " Tj\nET\nQ\n");
+        layer2.getPdfObject().setData(content.toByteArray());
+    }
+
+    /**
+     * Líneas del texto fijo: el texto adicional (cortado por palabras al ancho del recuadro),
+     * una línea en blanco y el firmante. El bloque, con la fecha, va centrado en el alto del
+     * recuadro, o desde arriba si no entra.
+     */
+    private static Template layout(Key key) {
+        PdfFont font;
+        try {
+            font = PdfFontFactory.createFont(StandardFonts.HELVETICA);
+        } catch (IOException e) {
+            throw new IllegalStateException("No se pudo cargar la fuente Helvetica", e);
+        }
+        float maxWidth = key.width() - 2 * PADDING;
+        List<String> lines = new ArrayList<>();
+        if (key.customText() != null && !key.customText().trim().isEmpty()) {
+            for (String paragraph : key.customText().split("\n", -1)) {
+                wrap(paragraph, font, key.fontSize(), maxWidth, lines);
+            }
+            lines.add("");
+        }
+        lines.add("Firmado digitalmente por:");
+        wrap(PdfSigningEngine.getNameFromDN(key.subjectDN()), font, key.fontSize(), maxWidth, lines);
+
+        float leading = key.fontSize();
+        float ascent = font.getAscent("A", key.fontSize());
+        float block = (lines.size() + 1) * leading;
+        float top = block <= key.height() - 2 * PADDING
+                ? (key.height() + block) / 2
+                : key.height() - PADDING;
+        float y = top - ascent;
+
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (String line : lines) {
+            if (!line.isEmpty()) {
+                write(content, "1 0 0 1 " + number(PADDING) + " " + number(y) + " Tm\n"
+                        + hex(font.convertToBytes(line)) + " Tj\n");
+            }
+            y -= leading;
+        }
+        return new Template(content.toByteArray(), PADDING, y);
+    }
+
+    private static void wrap(String paragraph, PdfFont font, float fontSize, float maxWidth, List<String> lines) {
+        StringBuilder line = new StringBuilder();
+        for (String word : paragraph.trim().split(" +")) {
+            String candidate = line.isEmpty() ? word : line + " " + word;
+            if (line.isEmpty() || font.getWidth(candidate, fontSize) <= maxWidth) {
+                line.setLength(0);
+                line.append(candidate);
+                continue;
+            }
+            lines.add(line.toString());
+            line.setLength(0);
+            line.append(word);
+        }
+        lines.add(line.toString());
+    }
+
+    private static String hex(byte[] text) {
+        return "<" + HexFormat.of().formatHex(text) + ">";
+    }
+
+    private static String number(float value) {
+        return String.format(Locale.ROOT, "%.2f", value);
+    }
+
+    private static void write(ByteArrayOutputStream out, String text) {
+        out.writeBytes(text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+}
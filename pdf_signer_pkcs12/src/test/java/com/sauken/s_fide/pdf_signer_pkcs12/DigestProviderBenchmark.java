@@ -0,0 +1,135 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import com.itextpdf.signatures.ProviderDigest;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.Security;
+import java.util.Random;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Compara el caudal del hash del ByteRange con los proveedores SUN y BC, y con "auto"
+ * (sin nombre de proveedor, que es el valor por defecto de --digest-provider). El
+ * documento se recorre en bloques de 8 KB, igual que iText lee el rango firmado.
+ *
+ * <p>No forma parte de la compilación normal; se ejecuta con
+ * {@code mvn -P benchmark test -pl pdf_signer_pkcs12}. El volumen procesado por medición
+ * se ajusta con {@code -Dbenchmark.megabytes} (por defecto 200).</p>
+ */
+class DigestProviderBenchmark {
+    private static final int CHUNK = 8 * 1024;
+    private static final int[] SIZES = {256 * 1024, 5 * 1024 * 1024, 50 * 1024 * 1024};
+    private static final String[] ALGORITHMS = {"SHA-256", "SHA-384", "SHA-512"};
+    private static final String[] PROVIDERS = {null, "SUN", "BC"};
+    private static final long VOLUME = Long.getLong("benchmark.megabytes", 200) * 1024 * 1024;
+
+    private static byte[] document;
+
+    @BeforeAll
+    static void prepare() {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        document = new byte[SIZES[SIZES.length - 1]];
+        new Random(42).nextBytes(document);
+    }
+
+    @Test
+    void digestThroughput() throws GeneralSecurityException {
+        System.out.printf("%-8s %-5s %10s %12s%n", "hash", "prov", "KB", "MB/s");
+        for (String algorithm : ALGORITHMS) {
+            for (int size : SIZES) {
+                byte[] expected = null;
+                for (String provider : PROVIDERS) {
+                    MessageDigest digest = new ProviderDigest(provider).getMessageDigest(algorithm);
+
+                    // Primera pasada para que el JIT compile el camino del proveedor.
+                    measure(digest, size);
+                    double megabytesPerSecond = measure(digest, size);
+
+                    byte[] hash = hash(digest, size);
+                    if (expected == null) {
+                        expected = hash;
+                    } else {
+                        assertArrayEquals(expected, hash, algorithm + " difiere con " + provider);
+                    }
+                    System.out.printf("%-8s %-5s %10d %12.0f%n", algorithm,
+                            provider == null ? "auto" : provider, size / 1024, megabytesPerSecond);
+                }
+            }
+        }
+        System.out.println("auto resuelve SHA-256 con "
+                + new ProviderDigest(null).getMessageDigest("SHA-256").getProvider().getName());
+    }
+
+    private static double measure(MessageDigest digest, int size) {
+        long repetitions = Math.max(1, VOLUME / size);
+        long start = System.nanoTime();
+        for (long i = 0; i < repetitions; i++) {
+            hash(digest, size);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return repetitions * (double) size / (1024 * 1024) / seconds;
+    }
+
+    private static byte[] hash(MessageDigest digest, int size) {
+        for (int offset = 0; offset < size; offset += CHUNK) {
+            digest.update(document, offset, Math.min(CHUNK, size - offset));
+        }
+        return digest.digest();
+    }
+}
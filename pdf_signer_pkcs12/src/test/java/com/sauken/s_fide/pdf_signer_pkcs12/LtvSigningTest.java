@@ -0,0 +1,265 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.itextpdf.kernel.pdf.PdfArray;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.signatures.SignatureUtil;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningOptions;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningRequest;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509v2CRLBuilder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.jcajce.JcaBasicOCSPRespBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Firma con --ltv contra un respondedor OCSP y CRL local que cuenta las consultas.
+ */
+class LtvSigningTest {
+    private static final long HOUR_MILLIS = 3_600_000L;
+
+    @TempDir
+    Path directory;
+
+    private TestPki pki;
+    private HttpServer responder;
+    private final AtomicInteger ocspRequests = new AtomicInteger();
+    private final AtomicInteger crlRequests = new AtomicInteger();
+
+    @BeforeEach
+    void startResponder() throws Exception {
+        pki = TestPki.create();
+        responder = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        responder.setExecutor(Executors.newCachedThreadPool());
+        responder.createContext("/ocsp", exchange -> {
+            ocspRequests.incrementAndGet();
+            respond(exchange, "application/ocsp-response", this::ocspResponse);
+        });
+        responder.createContext("/ca.crl", exchange -> {
+            crlRequests.incrementAndGet();
+            respond(exchange, "application/pkix-crl", ignored -> crl());
+        });
+        responder.start();
+    }
+
+    @AfterEach
+    void stopResponder() {
+        responder.stop(0);
+    }
+
+    @Test
+    void fetchesRevocationOncePerCertificateForTheWholeBatch() throws Exception {
+        PdfSigningEngine engine = engine();
+        SigningOptions options = ltvOptions();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Path> outputs = new ArrayList<>();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                Path input = TestPki.writePdf(directory.resolve("doc" + i + ".pdf"), 1);
+                Path output = directory.resolve("doc" + i + "-signed.pdf");
+                outputs.add(output);
+                futures.add(executor.submit(() -> engine.sign(new SigningRequest(input, output, options))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // La CA es raíz de la cadena y no se consulta: sólo el certificado firmante.
+        assertEquals(1, ocspRequests.get());
+        assertEquals(1, crlRequests.get());
+
+        for (Path output : outputs) {
+            assertEquals(List.of(2, 1, 1), dssEntries(output), output.toString());
+        }
+    }
+
+    @Test
+    void doesNotDuplicateDssEntriesAcrossSignatures() throws Exception {
+        PdfSigningEngine engine = engine();
+        SigningOptions options = ltvOptions();
+
+        Path input = TestPki.writePdf(directory.resolve("contrato.pdf"), 1);
+        Path first = directory.resolve("contrato-1.pdf");
+        Path second = directory.resolve("contrato-2.pdf");
+        engine.sign(new SigningRequest(input, first, options));
+        engine.sign(new SigningRequest(first, second, options));
+
+        assertEquals(1, ocspRequests.get());
+        assertEquals(1, crlRequests.get());
+
+        // Certificados, OCSP y CRL: la segunda firma no agrega copias de lo que ya estaba.
+        assertEquals(List.of(2, 1, 1), dssEntries(second));
+
+        try (PdfDocument document = new PdfDocument(new PdfReader(second.toString()))) {
+            SignatureUtil util = new SignatureUtil(document);
+            assertEquals(2, util.getSignatureNames().size());
+            for (String name : util.getSignatureNames()) {
+                assertTrue(util.readSignatureData(name).verifySignatureIntegrityAndAuthenticity(), name);
+            }
+        }
+    }
+
+    private PdfSigningEngine engine() throws Exception {
+        String url = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                + responder.getAddress().getPort();
+        TestPki.Identity identity = pki.issue("Firmante LTV", url);
+        return PdfSigningEngine.of(identity.privateKey(), identity.chain());
+    }
+
+    private static SigningOptions ltvOptions() {
+        SigningOptions defaults = SigningOptions.defaults();
+        return new SigningOptions(false, 0, 0, null, false, defaults.inputMode(), defaults.compressionLevel(),
+                null, null, true, null, null, null);
+    }
+
+    /**
+     * Cantidad de certificados, respuestas OCSP y CRL del DSS del documento.
+     */
+    private static List<Integer> dssEntries(Path path) throws IOException {
+        try (PdfDocument document = new PdfDocument(new PdfReader(path.toString()))) {
+            PdfDictionary dss = document.getCatalog().getPdfObject().getAsDictionary(PdfName.DSS);
+            assertNotNull(dss, "El documento no tiene DSS: " + path);
+            List<Integer> sizes = new ArrayList<>();
+            for (PdfName key : List.of(PdfName.Certs, PdfName.OCSPs, PdfName.CRLs)) {
+                PdfArray array = dss.getAsArray(key);
+                sizes.add(array != null ? array.size() : 0);
+            }
+            return sizes;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Body {
+        byte[] build(byte[] request) throws Exception;
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, Body body) throws IOException {
+        try (exchange) {
+            byte[] response;
+            try {
+                response = body.build(exchange.getRequestBody().readAllBytes());
+            } catch (Exception e) {
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            exchange.getResponseHeaders().add("Content-Type", contentType);
+            exchange.sendResponseHeaders(200, response.length);
+            exchange.getResponseBody().write(response);
+        }
+    }
+
+    private byte[] ocspResponse(byte[] request) throws Exception {
+        X509Certificate caCertificate = pki.caCertificate();
+        PrivateKey caKey = pki.caKeys().getPrivate();
+        BasicOCSPRespBuilder builder = new JcaBasicOCSPRespBuilder(caCertificate.getPublicKey(),
+                new JcaDigestCalculatorProviderBuilder().build().get(RespID.HASH_SHA1));
+        Date now = new Date();
+        for (Req req : new OCSPReq(request).getRequestList()) {
+            builder.addResponse(req.getCertID(), CertificateStatus.GOOD, now,
+                    new Date(now.getTime() + HOUR_MILLIS), null);
+        }
+        BasicOCSPResp basic = builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(caKey),
+                new X509CertificateHolder[]{new JcaX509CertificateHolder(caCertificate)}, now);
+        return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL, basic).getEncoded();
+    }
+
+    private byte[] crl() throws Exception {
+        Date now = new Date();
+        X509v2CRLBuilder builder = new JcaX509v2CRLBuilder(pki.caCertificate(), now);
+        builder.setNextUpdate(new Date(now.getTime() + HOUR_MILLIS));
+        builder.addCRLEntry(BigInteger.valueOf(9999), now, CRLReason.keyCompromise);
+        return builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(pki.caKeys().getPrivate()))
+                .getEncoded();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.signatures.SignatureUtil;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningOptions;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Prueba de carga del motor PKCS#12: una única instancia compartida firma el mismo lote
+ * con 1, 2, 4... hilos hasta el doble de los procesadores disponibles, e informa el
+ * caudal y la aceleración respecto de un hilo. Cada firma es visible, como en el uso
+ * habitual, y al final se verifican todas las firmas de la última ronda.
+ *
+ * <p>No forma parte de la compilación normal; se ejecuta con
+ * {@code mvn -P benchmark test -pl pdf_signer_pkcs12}. El tamaño del lote se ajusta con
+ * {@code -Dbenchmark.documents} (por defecto 400) y la cantidad máxima de hilos con
+ * {@code -Dbenchmark.threads}.</p>
+ */
+class PdfSigningEngineBenchmark {
+    private static final int DOCUMENTS = Integer.getInteger("benchmark.documents", 400);
+    // Referencia fuerte: sin ella el nivel se pierde cuando el recolector libera el logger.
+    private static final Logger ENGINE_LOGGER = Logger.getLogger(PdfSigningEngine.class.getName());
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void throughputScalesWithThreads() throws Exception {
+        ENGINE_LOGGER.setLevel(Level.WARNING);
+        TestPki.Identity identity = TestPki.create().issue("Firmante Carga", null);
+        PdfSigningEngine engine = PdfSigningEngine.of(identity.privateKey(), identity.chain());
+        SigningOptions options = new SigningOptions(false, 40, 40, "Prueba de carga", false,
+                PdfInput.Mode.MEMORY, -1, null, null, false, null, null, null);
+
+        Path input = TestPki.writePdf(directory.resolve("entrada.pdf"), 3);
+        Path output = Files.createDirectory(directory.resolve("firmados"));
+
+        // Ronda de calentamiento para que el JIT compile iText y el proveedor de firma.
+        sign(engine, options, input, output, Runtime.getRuntime().availableProcessors());
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        System.out.printf("procesadores: %d, documentos por ronda: %d%n", cores, DOCUMENTS);
+        System.out.printf("%6s %10s %10s%n", "hilos", "docs/s", "acelera");
+        double single = 0;
+        int maxThreads = Integer.getInteger("benchmark.threads", 2 * cores);
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double perSecond = sign(engine, options, input, output, threads);
+            if (threads == 1) {
+                single = perSecond;
+            }
+            System.out.printf("%6d %10.0f %9.2fx%n", threads, perSecond, perSecond / single);
+        }
+
+        try (var outputs = Files.list(output)) {
+            List<Path> signed = outputs.toList();
+            assertEquals(DOCUMENTS, signed.size());
+            for (Path path : signed) {
+                try (PdfDocument document = new PdfDocument(new PdfReader(path.toString()))) {
+                    SignatureUtil util = new SignatureUtil(document);
+                    List<String> names = util.getSignatureNames();
+                    assertEquals(1, names.size(), path.toString());
+                    assertTrue(util.readSignatureData(names.get(0)).verifySignatureIntegrityAndAuthenticity(),
+                            path.toString());
+                }
+            }
+        }
+    }
+
+    private static double sign(PdfSigningEngine engine, SigningOptions options, Path input, Path output,
+                               int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            long start = System.nanoTime();
+            List<Future<?>> futures = new ArrayList<>(DOCUMENTS);
+            for (int i = 0; i < DOCUMENTS; i++) {
+                Path target = output.resolve("doc" + i + ".pdf");
+                futures.add(executor.submit(() -> engine.sign(new SigningRequest(input, target, options))));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            return DOCUMENTS / ((System.nanoTime() - start) / 1e9);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.itextpdf.forms.PdfAcroForm;
+import com.itextpdf.forms.fields.PdfFormField;
+import com.itextpdf.kernel.pdf.PdfDictionary;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfResources;
+import com.itextpdf.kernel.pdf.PdfStream;
+import com.itextpdf.kernel.pdf.canvas.parser.EventType;
+import com.itextpdf.kernel.pdf.canvas.parser.PdfCanvasProcessor;
+import com.itextpdf.kernel.pdf.canvas.parser.data.IEventData;
+import com.itextpdf.kernel.pdf.canvas.parser.data.TextRenderInfo;
+import com.itextpdf.kernel.pdf.canvas.parser.listener.IEventListener;
+import com.itextpdf.signatures.SignatureUtil;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningOptions;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningRequest;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SignatureAppearanceCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private record Line(String text, float x, float y) {}
+
+    @Test
+    void drawsCachedTextAndDateInsideTheBox() throws Exception {
+        TestPki.Identity identity = TestPki.create().issue("Firmante Ñandú", null);
+        PdfSigningEngine engine = PdfSigningEngine.of(identity.privateKey(), identity.chain());
+        SigningOptions options = new SigningOptions(false, 40, 40,
+                "Texto adicional bastante largo para que se corte en dos líneas", false, PdfInput.Mode.MEMORY,
+                -1, null, null, false, null, null, null);
+        Path input = TestPki.writePdf(directory.resolve("entrada.pdf"), 1);
+
+        // Dos documentos del mismo firmante: el segundo usa la apariencia ya diagramada.
+        for (String name : List.of("primero.pdf", "segundo.pdf")) {
+            Path output = directory.resolve(name);
+            engine.sign(new SigningRequest(input, output, options));
+
+            List<Line> lines = layer2Lines(output);
+            assertEquals(List.of("Texto adicional bastante largo para que se", "corte en dos líneas",
+                    "Firmado digitalmente por:", "Firmante Ñandú"),
+                    lines.subList(0, 4).stream().map(Line::text).toList());
+            Line date = lines.get(4);
+            assertTrue(date.text().matches("Fecha: \\d{2}/\\d{2}/\\d{4} \\d{2}:\\d{2}:\\d{2}"), date.text());
+            for (Line line : lines) {
+                assertTrue(line.x() >= 0 && line.y() > 0 && line.y() < 70, line.toString());
+            }
+        }
+    }
+
+    /** Líneas de la capa n2 de la única firma, de arriba hacia abajo. */
+    private static List<Line> layer2Lines(Path path) throws Exception {
+        try (PdfDocument document = new PdfDocument(new PdfReader(path.toString()))) {
+            SignatureUtil util = new SignatureUtil(document);
+            String name = util.getSignatureNames().get(0);
+            assertTrue(util.readSignatureData(name).verifySignatureIntegrityAndAuthenticity());
+
+            PdfFormField field = PdfAcroForm.getAcroForm(document, false).getField(name);
+            PdfStream normal = field.getWidgets().get(0).getAppearanceDictionary().getAsStream(PdfName.N);
+            PdfStream frm = xObject(normal, "FRM");
+            PdfStream layer2 = xObject(frm, "n2");
+
+            List<Line> lines = new ArrayList<>();
+            new PdfCanvasProcessor(new IEventListener() {
+                @Override
+                public void eventOccurred(IEventData data, EventType type) {
+                    TextRenderInfo info = (TextRenderInfo) data;
+                    lines.add(new Line(info.getText(), info.getBaseline().getStartPoint().get(0),
+                            info.getBaseline().getStartPoint().get(1)));
+                }
+
+                @Override
+                public Set<EventType> getSupportedEvents() {
+                    return Set.of(EventType.RENDER_TEXT);
+                }
+            }).processContent(layer2.getBytes(), new PdfResources(layer2.getAsDictionary(PdfName.Resources)));
+            return lines;
+        }
+    }
+
+    private static PdfStream xObject(PdfStream stream, String name) {
+        PdfDictionary xObjects = stream.getAsDictionary(PdfName.Resources).getAsDictionary(PdfName.XObject);
+        return xObjects.getAsStream(new PdfName(name));
+    }
+}
@@ -0,0 +1,224 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfPage;
+import com.itextpdf.kernel.pdf.PdfWriter;
+import com.itextpdf.kernel.pdf.canvas.PdfCanvas;
+import com.itextpdf.kernel.font.PdfFontFactory;
+import com.itextpdf.io.font.constants.StandardFonts;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.asn1.x509.KeyUsage;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.OperatorCreationException;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+
+/**
+ * Autoridad certificante de prueba: emite certificados de firma, opcionalmente con las
+ * direcciones OCSP y CRL de un respondedor local, y genera documentos PDF simples.
+ */
+final class TestPki {
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    record Identity(PrivateKey privateKey, Certificate[] chain) {
+        X509Certificate certificate() {
+            return (X509Certificate) chain[0];
+        }
+    }
+
+    private final KeyPair caKeys;
+    private final X509Certificate caCertificate;
+    private final AtomicLong serials = new AtomicLong(1);
+
+    private TestPki(KeyPair caKeys, X509Certificate caCertificate) {
+        this.caKeys = caKeys;
+        this.caCertificate = caCertificate;
+    }
+
+    static TestPki create() throws GeneralSecurityException {
+        KeyPair keys = generateKeys();
+        X500Name name = new X500Name("CN=CA Prueba,O=Sauken Test,C=AR");
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(name, BigInteger.ONE,
+                notBefore(), notAfter(), name, keys.getPublic());
+        try {
+            builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+            builder.addExtension(Extension.keyUsage, true,
+                    new KeyUsage(KeyUsage.keyCertSign | KeyUsage.cRLSign | KeyUsage.digitalSignature));
+        } catch (IOException e) {
+            throw new GeneralSecurityException(e);
+        }
+        return new TestPki(keys, sign(builder, keys.getPrivate()));
+    }
+
+    KeyPair caKeys() {
+        return caKeys;
+    }
+
+    X509Certificate caCertificate() {
+        return caCertificate;
+    }
+
+    /**
+     * Emite un certificado de firma. Con {@code responderUrl} el certificado apunta al OCSP
+     * {@code <url>/ocsp} y a la CRL {@code <url>/ca.crl}.
+     */
+    Identity issue(String commonName, String responderUrl) throws GeneralSecurityException {
+        KeyPair keys = generateKeys();
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(caCertificate,
+                BigInteger.valueOf(serials.incrementAndGet()), notBefore(), notAfter(),
+                new X500Name("CN=" + commonName + ",O=Sauken Test,C=AR"), keys.getPublic());
+        try {
+            builder.addExtension(Extension.keyUsage, true,
+                    new KeyUsage(KeyUsage.digitalSignature | KeyUsage.nonRepudiation));
+            if (responderUrl != null) {
+                builder.addExtension(Extension.authorityInfoAccess, false, new AuthorityInformationAccess(
+                        AccessDescription.id_ad_ocsp, uri(responderUrl + "/ocsp")));
+                builder.addExtension(Extension.cRLDistributionPoints, false, new CRLDistPoint(
+                        new DistributionPoint[]{new DistributionPoint(new DistributionPointName(
+                                new GeneralNames(uri(responderUrl + "/ca.crl"))), null, null)}));
+            }
+        } catch (IOException e) {
+            throw new GeneralSecurityException(e);
+        }
+        X509Certificate certificate = sign(builder, caKeys.getPrivate());
+        return new Identity(keys.getPrivate(), new Certificate[]{certificate, caCertificate});
+    }
+
+    /**
+     * Emite el certificado de una TSA, con el uso extendido de sellado de tiempo que exige
+     * RFC 3161.
+     */
+    Identity issueTsa(String commonName) throws GeneralSecurityException {
+        KeyPair keys = generateKeys();
+        JcaX509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(caCertificate,
+                BigInteger.valueOf(serials.incrementAndGet()), notBefore(), notAfter(),
+                new X500Name("CN=" + commonName + ",O=Sauken Test,C=AR"), keys.getPublic());
+        try {
+            builder.addExtension(Extension.keyUsage, true, new KeyUsage(KeyUsage.digitalSignature));
+            builder.addExtension(Extension.extendedKeyUsage, true,
+                    new ExtendedKeyUsage(KeyPurposeId.id_kp_timeStamping));
+        } catch (IOException e) {
+            throw new GeneralSecurityException(e);
+        }
+        X509Certificate certificate = sign(builder, caKeys.getPrivate());
+        return new Identity(keys.getPrivate(), new Certificate[]{certificate, caCertificate});
+    }
+
+    /**
+     * Escribe un PDF de {@code pages} páginas con una línea de texto en cada una.
+     */
+    static Path writePdf(Path path, int pages) throws IOException {
+        try (PdfDocument document = new PdfDocument(new PdfWriter(path.toString()))) {
+            for (int i = 1; i <= pages; i++) {
+                PdfPage page = document.addNewPage();
+                new PdfCanvas(page).beginText()
+                        .setFontAndSize(PdfFontFactory.createFont(StandardFonts.HELVETICA), 12)
+                        .moveText(72, 720)
+                        .showText("Documento de prueba " + path.getFileName() + ", página " + i)
+                        .endText();
+            }
+        }
+        return path;
+    }
+
+    private static KeyPair generateKeys() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private static X509Certificate sign(X509v3CertificateBuilder builder, PrivateKey key)
+            throws GeneralSecurityException {
+        try {
+            return new JcaX509CertificateConverter()
+                    .getCertificate(builder.build(new JcaContentSignerBuilder("SHA256withRSA").build(key)));
+        } catch (OperatorCreationException e) {
+            throw new GeneralSecurityException(e);
+        }
+    }
+
+    private static GeneralName uri(String url) {
+        return new GeneralName(GeneralName.uniformResourceIdentifier, url);
+    }
+
+    private static Date notBefore() {
+        return new Date(System.currentTimeMillis() - DAY_MILLIS);
+    }
+
+    private static Date notAfter() {
+        return new Date(System.currentTimeMillis() + 365 * DAY_MILLIS);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.signatures.PdfPKCS7;
+import com.itextpdf.signatures.SignatureUtil;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningOptions;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningRequest;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningResult;
+import com.sun.net.httpserver.HttpServer;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.cert.jcajce.JcaCertStore;
+import org.bouncycastle.cms.jcajce.JcaSimpleSignerInfoGeneratorBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.tsp.TSPAlgorithms;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.bouncycastle.tsp.TimeStampResponseGenerator;
+import org.bouncycastle.tsp.TimeStampTokenGenerator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Sellos de tiempo contra una TSA local armada con el generador RFC 3161 de BouncyCastle,
+ * que puede alterar el nonce o el resumen de la respuesta, demorarla o cambiar de
+ * certificado.
+ */
+class TsaClientTest {
+    // Referencia fuerte: sin ella el manejador se pierde cuando el recolector libera el logger.
+    private static final Logger TSA_LOGGER = Logger.getLogger(TsaClient.class.getName());
+
+    private enum Tamper { NONE, NONCE, IMPRINT }
+
+    @TempDir
+    Path directory;
+
+    private TestPki pki;
+    private HttpServer server;
+    private URI url;
+    private volatile TestPki.Identity tsa;
+    private volatile Tamper tamper = Tamper.NONE;
+    private volatile long delayMillis;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicLong serials = new AtomicLong();
+    private final AtomicInteger verifiersBuilt = new AtomicInteger();
+    private final Handler verifierLog = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            if (record.getMessage().startsWith("Certificado de la TSA")) {
+                verifiersBuilt.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @BeforeEach
+    void startTsa() throws Exception {
+        pki = TestPki.create();
+        tsa = pki.issueTsa("TSA Prueba");
+        TSA_LOGGER.addHandler(verifierLog);
+
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/tsa", exchange -> {
+            try (exchange) {
+                requests.incrementAndGet();
+                byte[] body;
+                try {
+                    if (delayMillis > 0) {
+                        Thread.sleep(delayMillis);
+                    }
+                    body = respond(new TimeStampRequest(exchange.getRequestBody().readAllBytes()));
+                } catch (Exception e) {
+                    exchange.sendResponseHeaders(500, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/timestamp-reply");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.start();
+        url = URI.create("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                + server.getAddress().getPort() + "/tsa");
+    }
+
+    @AfterEach
+    void stopTsa() {
+        TSA_LOGGER.removeHandler(verifierLog);
+        server.stop(0);
+    }
+
+    @Test
+    void embedsVerifiableTimestampAndReportsLatency() throws Exception {
+        TestPki.Identity signer = pki.issue("Firmante Sellado", null);
+        PdfSigningEngine engine = PdfSigningEngine.of(signer.privateKey(), signer.chain());
+        Path input = TestPki.writePdf(directory.resolve("entrada.pdf"), 1);
+        Path output = directory.resolve("sellado.pdf");
+
+        delayMillis = 150;
+        SigningResult result = engine.sign(new SigningRequest(input, output, options()));
+
+        assertTrue(result.timestampMillis() >= 150, "Demora de la TSA: " + result.timestampMillis());
+        assertTrue(result.timestampMillis() <= result.elapsedMillis());
+        try (PdfDocument document = new PdfDocument(new PdfReader(output.toString()))) {
+            SignatureUtil util = new SignatureUtil(document);
+            PdfPKCS7 pkcs7 = util.readSignatureData(util.getSignatureNames().get(0));
+            assertNotNull(pkcs7.getTimeStampTokenInfo());
+            assertTrue(pkcs7.verifyTimestampImprint());
+            assertTrue(pkcs7.verifySignatureIntegrityAndAuthenticity());
+        }
+    }
+
+    @Test
+    void rejectsResponseForAnotherNonce() {
+        tamper = Tamper.NONCE;
+        GeneralSecurityException error = assertThrows(GeneralSecurityException.class,
+                () -> new TsaClient(url).forDocument().getTimeStampToken(imprint("documento")));
+        assertTrue(error.getMessage().contains("no válida"), error.getMessage());
+    }
+
+    @Test
+    void rejectsResponseForAnotherImprint() {
+        tamper = Tamper.IMPRINT;
+        GeneralSecurityException error = assertThrows(GeneralSecurityException.class,
+                () -> new TsaClient(url).forDocument().getTimeStampToken(imprint("documento")));
+        assertTrue(error.getMessage().contains("no válida"), error.getMessage());
+    }
+
+    @Test
+    void reusesVerifierUntilTsaCertificateChanges() throws Exception {
+        TestPki.Identity signer = pki.issue("Firmante Lote", null);
+        PdfSigningEngine engine = PdfSigningEngine.of(signer.privateKey(), signer.chain());
+        Path input = TestPki.writePdf(directory.resolve("entrada.pdf"), 1);
+
+        for (int i = 0; i < 3; i++) {
+            engine.sign(new SigningRequest(input, directory.resolve("lote" + i + ".pdf"), options()));
+        }
+        assertEquals(3, requests.get());
+        assertEquals(1, verifiersBuilt.get());
+
+        // La TSA renueva su certificado: el siguiente sello arma un verificador nuevo.
+        tsa = pki.issueTsa("TSA Prueba Renovada");
+        for (int i = 3; i < 5; i++) {
+            engine.sign(new SigningRequest(input, directory.resolve("lote" + i + ".pdf"), options()));
+        }
+        assertEquals(5, requests.get());
+        assertEquals(2, verifiersBuilt.get());
+
+        try (PdfDocument document = new PdfDocument(new PdfReader(directory.resolve("lote4.pdf").toString()))) {
+            SignatureUtil util = new SignatureUtil(document);
+            PdfPKCS7 pkcs7 = util.readSignatureData(util.getSignatureNames().get(0));
+            assertNotNull(pkcs7.getTimeStampTokenInfo());
+            assertTrue(pkcs7.verifyTimestampImprint());
+        }
+    }
+
+    private SigningOptions options() {
+        return new SigningOptions(false, 0, 0, null, false, PdfInput.Mode.MEMORY, -1, null, null, false, url,
+                null, null);
+    }
+
+    /**
+     * Respuesta de la TSA. Con {@link Tamper} se responde a otra solicitud, con otro nonce u
+     * otro resumen, como haría una TSA defectuosa o una respuesta reenviada.
+     */
+    private byte[] respond(TimeStampRequest request) throws Exception {
+        TimeStampRequestGenerator generator = new TimeStampRequestGenerator();
+        generator.setCertReq(request.getCertReq());
+        TimeStampRequest answered = switch (tamper) {
+            case NONE -> request;
+            case NONCE -> generator.generate(request.getMessageImprintAlgOID(), request.getMessageImprintDigest(),
+                    request.getNonce().add(BigInteger.ONE));
+            case IMPRINT -> generator.generate(request.getMessageImprintAlgOID(), imprint("otro documento"),
+                    request.getNonce());
+        };
+
+        TestPki.Identity identity = tsa;
+        X509Certificate certificate = identity.certificate();
+        TimeStampTokenGenerator tokens = new TimeStampTokenGenerator(
+                new JcaSimpleSignerInfoGeneratorBuilder().build("SHA256withRSA", identity.privateKey(), certificate),
+                new JcaDigestCalculatorProviderBuilder().build().get(new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1)),
+                new ASN1ObjectIdentifier("1.3.6.1.4.1.99999.1"));
+        tokens.addCertificates(new JcaCertStore(List.of(certificate)));
+        return new TimeStampResponseGenerator(tokens, TSPAlgorithms.ALLOWED)
+                .generate(answered, BigInteger.valueOf(serials.incrementAndGet()), new Date())
+                .getEncoded();
+    }
+
+    private static byte[] imprint(String text) throws GeneralSecurityException {
+        return MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,169 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_signer_pkcs12;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.itextpdf.forms.PdfAcroForm;
+import com.itextpdf.forms.fields.PdfFormField;
+import com.itextpdf.kernel.geom.Rectangle;
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.signatures.SignatureUtil;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningOptions;
+import com.sauken.s_fide.pdf_signer_pkcs12.PdfSigningEngine.SigningRequest;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Costo de la firma visible: el mismo documento se firma de a uno, alternando rondas
+ * invisibles y visibles, e informa los milisegundos por documento de cada modo (la mejor
+ * ronda y la mediana) y la diferencia entre ambos. La apariencia visible sale de
+ * {@link SignatureAppearanceCache}, que la diagrama una vez por firmante.
+ *
+ * <p>No forma parte de la compilación normal; se ejecuta con
+ * {@code mvn -P benchmark test -pl pdf_signer_pkcs12}. El tamaño de cada ronda se ajusta
+ * con {@code -Dbenchmark.documents} (por defecto 300) y la cantidad de rondas con
+ * {@code -Dbenchmark.rounds} (por defecto 5).</p>
+ */
+class VisibleSignatureBenchmark {
+    private static final int DOCUMENTS = Integer.getInteger("benchmark.documents", 300);
+    private static final int ROUNDS = Integer.getInteger("benchmark.rounds", 5);
+    private static final float X = 40;
+    private static final float Y = 40;
+    // Referencia fuerte: sin ella el nivel se pierde cuando el recolector libera el logger.
+    private static final Logger ENGINE_LOGGER = Logger.getLogger(PdfSigningEngine.class.getName());
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void visibleSignatureOverhead() throws Exception {
+        ENGINE_LOGGER.setLevel(Level.WARNING);
+        TestPki.Identity identity = TestPki.create().issue("Firmante Visible", null);
+        PdfSigningEngine engine = PdfSigningEngine.of(identity.privateKey(), identity.chain());
+        SigningOptions invisible = options(0, 0);
+        SigningOptions visible = options(X, Y);
+
+        Path input = TestPki.writePdf(directory.resolve("entrada.pdf"), 3);
+        Path invisibleOutput = directory.resolve("invisible.pdf");
+        Path visibleOutput = directory.resolve("visible.pdf");
+
+        // Calentamiento de ambos caminos para que el JIT compile iText y el proveedor.
+        sign(engine, invisible, input, invisibleOutput);
+        sign(engine, visible, input, visibleOutput);
+
+        double[] invisibleMillis = new double[ROUNDS];
+        double[] visibleMillis = new double[ROUNDS];
+        for (int round = 0; round < ROUNDS; round++) {
+            invisibleMillis[round] = sign(engine, invisible, input, invisibleOutput);
+            visibleMillis[round] = sign(engine, visible, input, visibleOutput);
+        }
+
+        System.out.printf("documentos por ronda: %d, rondas: %d%n", DOCUMENTS, ROUNDS);
+        System.out.printf("%10s %10s %10s%n", "modo", "mejor", "mediana");
+        System.out.printf("%10s %7.3f ms %7.3f ms%n", "invisible", min(invisibleMillis), median(invisibleMillis));
+        System.out.printf("%10s %7.3f ms %7.3f ms%n", "visible", min(visibleMillis), median(visibleMillis));
+        System.out.printf("%10s %7.3f ms %7.3f ms%n", "diferencia", min(visibleMillis) - min(invisibleMillis),
+                median(visibleMillis) - median(invisibleMillis));
+
+        assertSigned(invisibleOutput, false);
+        assertSigned(visibleOutput, true);
+    }
+
+    private static SigningOptions options(float x, float y) {
+        return new SigningOptions(false, x, y, "Prueba de apariencia", false, PdfInput.Mode.MEMORY, -1, null,
+                null, false, null, null, null);
+    }
+
+    /** Milisegundos por documento firmando {@link #DOCUMENTS} veces en un solo hilo. */
+    private static double sign(PdfSigningEngine engine, SigningOptions options, Path input, Path output)
+            throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < DOCUMENTS; i++) {
+            engine.sign(new SigningRequest(input, output, options));
+        }
+        return (System.nanoTime() - start) / 1e6 / DOCUMENTS;
+    }
+
+    private static void assertSigned(Path path, boolean visible) throws Exception {
+        try (PdfDocument document = new PdfDocument(new PdfReader(path.toString()))) {
+            SignatureUtil util = new SignatureUtil(document);
+            List<String> names = util.getSignatureNames();
+            assertEquals(1, names.size());
+            assertTrue(util.readSignatureData(names.get(0)).verifySignatureIntegrityAndAuthenticity());
+
+            PdfFormField field = PdfAcroForm.getAcroForm(document, false).getField(names.get(0));
+            Rectangle rect = field.getWidgets().get(0).getRectangle().toRectangle();
+            assertEquals(visible, rect.getWidth() > 0 && rect.getHeight() > 0, path.toString());
+            if (visible) {
+                assertEquals(X, rect.getX(), 0.01);
+                assertEquals(Y, rect.getY(), 0.01);
+            }
+        }
+    }
+
+    private static double min(double[] values) {
+        return Arrays.stream(values).min().orElseThrow();
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
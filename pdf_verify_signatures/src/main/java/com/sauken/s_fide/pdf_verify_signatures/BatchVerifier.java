@@ -0,0 +1,390 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_verify_signatures;
+
+import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.signatures.SignatureUtil;
+import com.sauken.s_fide.pdf_verify_signatures.PDFVerifySignatures.SignatureOutcome;
+import com.sauken.s_fide.pdf_verify_signatures.utils.PdfInput;
+import com.sauken.s_fide.pdf_verify_signatures.utils.PhaseClock;
+import com.sauken.s_fide.pdf_verify_signatures.utils.TimingLog;
+import com.sauken.s_fide.pdf_verify_signatures.validation.CrlStore;
+import com.sauken.s_fide.pdf_verify_signatures.validation.RevocationCache;
+import com.sauken.s_fide.pdf_verify_signatures.validation.RevocationValidator;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Verificación por lotes: los documentos de directorios, patrones glob o archivos de lista
+ * se verifican en un conjunto acotado de hilos y el resultado de cada firma se escribe apenas
+ * termina el documento, en NDJSON o CSV. Los cachés de revocación, el almacén de CRL y el
+ * cliente HTTP se comparten entre todos los documentos del lote.
+ */
+final class BatchVerifier {
+    private static final Logger LOGGER = Logger.getLogger(BatchVerifier.class.getName());
+    private static final String STANDARD_OUTPUT = "-";
+    private static final String LIST_PREFIX = "@";
+    private static final String GLOB_CHARACTERS = "*?[{";
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    enum Format {
+        NDJSON, CSV;
+
+        static Format fromArgument(String value) {
+            return switch (value.toLowerCase(Locale.ROOT)) {
+                case "ndjson" -> NDJSON;
+                case "csv" -> CSV;
+                default -> throw new IllegalArgumentException("Formato de salida no reconocido: " + value);
+            };
+        }
+    }
+
+    record Settings(List<String> sources, Format format, String output, int workers, PdfInput.Mode mode,
+                    Path timingsFile) {
+    }
+
+    private final Settings settings;
+    private final PrintStream out;
+    private final TimingLog timings;
+    private final ExecutorService revocation = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong validDocuments = new AtomicLong();
+    private final AtomicLong failedDocuments = new AtomicLong();
+    private final AtomicLong signatures = new AtomicLong();
+    private final AtomicLong validSignatures = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    private BatchVerifier(Settings settings, PrintStream out, TimingLog timings) {
+        this.settings = settings;
+        this.out = out;
+        this.timings = timings;
+    }
+
+    /**
+     * Verifica el lote y devuelve {@code true} si todos los documentos tienen sólo firmas
+     * válidas.
+     */
+    static boolean run(Settings settings) throws IOException {
+        PrintStream out = STANDARD_OUTPUT.equals(settings.output())
+                ? new PrintStream(new FileOutputStream(FileDescriptor.out), false, StandardCharsets.UTF_8)
+                : new PrintStream(Files.newOutputStream(Paths.get(settings.output())), false, StandardCharsets.UTF_8);
+        TimingLog timings = settings.timingsFile() != null ? TimingLog.open(settings.timingsFile()) : null;
+        BatchVerifier batch = new BatchVerifier(settings, out, timings);
+        long start = System.nanoTime();
+        try {
+            batch.verifyAll();
+        } finally {
+            batch.revocation.shutdown();
+            if (timings != null) {
+                timings.close();
+            }
+            out.flush();
+            if (out.checkError()) {
+                LOGGER.severe("Error escribiendo el resultado del lote en " + settings.output());
+            }
+            if (!STANDARD_OUTPUT.equals(settings.output())) {
+                out.close();
+            }
+        }
+        batch.logSummary((System.nanoTime() - start) / 1_000_000);
+        return batch.documents.get() > 0 && batch.validDocuments.get() == batch.documents.get();
+    }
+
+    /**
+     * Recorre los orígenes a medida que se verifican los documentos: nunca hay más de dos
+     * documentos por hilo esperando, sin importar el tamaño del lote.
+     */
+    private void verifyAll() throws IOException {
+        int workers = Math.max(1, settings.workers());
+        Semaphore pending = new Semaphore(workers * 2);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            if (settings.format() == Format.CSV) {
+                out.println("documento;firma;estado;firmante;revocacion;ms_integridad;ms_revocacion;ms_documento;error");
+            }
+            for (String source : settings.sources()) {
+                forEachInput(source, path -> {
+                    pending.acquireUninterruptibly();
+                    pool.execute(() -> {
+                        try {
+                            verify(path);
+                        } finally {
+                            pending.release();
+                        }
+                    });
+                });
+            }
+        } finally {
+            pool.shutdown();
+            pending.acquireUninterruptibly(workers * 2);
+        }
+    }
+
+    private void verify(Path path) {
+        long start = System.nanoTime();
+        PhaseClock clock = new PhaseClock(path.toString());
+        List<SignatureOutcome> outcomes = new ArrayList<>();
+        String error;
+        long size = 0;
+        if (!Files.isRegularFile(path)) {
+            error = "El archivo PDF no existe o no es accesible";
+        } else {
+            try {
+                size = Files.size(path);
+                error = verifySignatures(path, clock, outcomes);
+            } catch (Exception e) {
+                error = e.getMessage() != null ? e.getMessage() : e.toString();
+                LOGGER.log(Level.FINE, "Error verificando " + path, e);
+            }
+        }
+        clock.stop();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        boolean valid = error == null && outcomes.stream().allMatch(SignatureOutcome::valid);
+        documents.incrementAndGet();
+        bytes.addAndGet(size);
+        signatures.addAndGet(outcomes.size());
+        validSignatures.addAndGet(outcomes.stream().filter(SignatureOutcome::valid).count());
+        if (valid) {
+            validDocuments.incrementAndGet();
+        } else if (error != null) {
+            failedDocuments.incrementAndGet();
+        }
+
+        write(path, outcomes, error, millis);
+        if (timings != null) {
+            timings.write(clock.toJson(size));
+        }
+    }
+
+    /**
+     * Verifica las firmas del documento y devuelve el error que impidió hacerlo, o
+     * {@code null}. El hash corre en este mismo hilo de trabajo y la revocación en hilos
+     * virtuales.
+     */
+    private String verifySignatures(Path path, PhaseClock clock, List<SignatureOutcome> outcomes)
+            throws IOException {
+        clock.enter(PhaseClock.READ);
+        try (PdfInput input = PdfInput.open(path, settings.mode());
+             PdfDocument pdfDoc = new PdfDocument(input.reader())) {
+            SignatureUtil signUtil = new SignatureUtil(pdfDoc);
+            List<String> names = signUtil.getSignatureNames();
+            clock.stop();
+            if (names.isEmpty()) {
+                return "El documento no contiene firmas digitales.";
+            }
+            List<CompletableFuture<SignatureOutcome>> results = new ArrayList<>();
+            for (String name : names) {
+                results.add(PDFVerifySignatures.startVerification(input, signUtil, name, DISCARD, clock,
+                        Runnable::run, revocation));
+            }
+            for (CompletableFuture<SignatureOutcome> result : results) {
+                outcomes.add(result.join());
+            }
+            return null;
+        }
+    }
+
+    private void write(Path path, List<SignatureOutcome> outcomes, String error, long millis) {
+        StringBuilder lines = new StringBuilder();
+        if (error != null) {
+            lines.append(record(path, null, error, millis)).append(System.lineSeparator());
+        }
+        for (SignatureOutcome outcome : outcomes) {
+            lines.append(record(path, outcome, outcome.error(), millis)).append(System.lineSeparator());
+        }
+        synchronized (out) {
+            out.print(lines);
+            out.flush();
+        }
+    }
+
+    private String record(Path path, SignatureOutcome outcome, String error, long millis) {
+        String signature = outcome != null ? outcome.name() : null;
+        String signer = outcome != null ? outcome.signer() : null;
+        String revocationStatus = outcome != null && outcome.revocation() != null ? outcome.revocation().name() : null;
+        long integrityMillis = outcome != null ? outcome.integrityMillis() : 0;
+        long revocationMillis = outcome != null ? outcome.revocationMillis() : 0;
+        if (settings.format() == Format.CSV) {
+            String state = outcome == null ? "ERROR" : outcome.valid() ? "VALIDA" : "INVALIDA";
+            return String.join(";", csv(path.toString()), csv(signature), state, csv(signer), csv(revocationStatus),
+                    Long.toString(integrityMillis), Long.toString(revocationMillis), Long.toString(millis), csv(error));
+        }
+        return String.format(Locale.ROOT,
+                "{\"documento\":%s,\"firma\":%s,\"valida\":%b,\"firmante\":%s,\"revocacion\":%s,"
+                        + "\"ms_integridad\":%d,\"ms_revocacion\":%d,\"ms_documento\":%d,\"error\":%s}",
+                TimingLog.quote(path.toString()), TimingLog.quote(signature), outcome != null && outcome.valid(),
+                TimingLog.quote(signer), TimingLog.quote(revocationStatus), integrityMillis, revocationMillis, millis,
+                TimingLog.quote(error));
+    }
+
+    private static String csv(String value) {
+        return value == null ? "" : value.replace(';', ',').replace('\r', ' ').replace('\n', ' ');
+    }
+
+    /**
+     * Un origen del lote: {@code @lista} es un archivo con una ruta por línea (se ignoran las
+     * vacías y las que empiezan con #); un patrón glob se aplica desde el directorio anterior
+     * al primer comodín, y {@code **} recorre subdirectorios; un directorio aporta todos los PDF
+     * que contiene, recursivamente; cualquier otra ruta se toma como un documento.
+     */
+    private static void forEachInput(String source, Consumer<Path> action) throws IOException {
+        if (source.startsWith(LIST_PREFIX)) {
+            try (Stream<String> lines = Files.lines(Paths.get(source.substring(LIST_PREFIX.length())),
+                    StandardCharsets.UTF_8)) {
+                lines.map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .map(Paths::get)
+                        .forEach(action);
+            }
+            return;
+        }
+
+        int wildcard = indexOfGlob(source);
+        if (wildcard >= 0) {
+            int separator = Math.max(source.lastIndexOf('/', wildcard), source.lastIndexOf('\\', wildcard));
+            Path base = separator < 0 ? Paths.get("") : Paths.get(source.substring(0, separator + 1));
+            String pattern = source.substring(separator + 1);
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+            int depth = pattern.contains("**") ? Integer.MAX_VALUE : pattern.split("[/\\\\]").length;
+            walk(base.toString().isEmpty() ? Paths.get(".") : base, depth,
+                    (root, file) -> matcher.matches(root.relativize(file)), action);
+            return;
+        }
+
+        Path path = Paths.get(source);
+        if (Files.isDirectory(path)) {
+            walk(path, Integer.MAX_VALUE,
+                    (root, file) -> file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".pdf"), action);
+        } else {
+            action.accept(path);
+        }
+    }
+
+    private interface FileFilter {
+        boolean accept(Path root, Path file);
+    }
+
+    /**
+     * Recorre el árbol sin armar la lista completa; los directorios ilegibles se informan y
+     * se saltean en lugar de cortar el lote.
+     */
+    private static void walk(Path root, int depth, FileFilter filter, Consumer<Path> action) throws IOException {
+        Files.walkFileTree(root, EnumSet.noneOf(FileVisitOption.class), depth, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && filter.accept(root, file)) {
+                    action.accept(root.toString().equals(".") ? root.relativize(file) : file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                LOGGER.warning("No se pudo leer " + file + ": " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static int indexOfGlob(String source) {
+        for (int i = 0; i < source.length(); i++) {
+            if (GLOB_CHARACTERS.indexOf(source.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void logSummary(long elapsedMillis) {
+        double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+        long total = documents.get();
+        LOGGER.info("\n=== RESUMEN DEL LOTE ===");
+        LOGGER.info("Documentos verificados: " + total);
+        LOGGER.info("Documentos válidos: " + validDocuments.get());
+        LOGGER.info("Documentos inválidos: " + (total - validDocuments.get() - failedDocuments.get()));
+        LOGGER.info("Documentos con error: " + failedDocuments.get());
+        LOGGER.info("Firmas verificadas: " + signatures.get() + " (" + validSignatures.get() + " válidas)");
+        LOGGER.info(String.format(Locale.ROOT, "Tiempo total: %.2f s", seconds));
+        LOGGER.info(String.format(Locale.ROOT, "Rendimiento: %.2f documentos/s, %.2f MB/s",
+                total / seconds, bytes.get() / seconds / (1024.0 * 1024.0)));
+        RevocationCache.Stats cache = RevocationValidator.cache().stats();
+        CrlStore.Stats crls = CrlStore.get().stats();
+        LOGGER.info("Caché de revocación: " + cache.hits() + " aciertos, " + cache.misses() + " consultas; "
+                + "almacén de CRL: " + crls.hits() + " aciertos, " + crls.downloads() + " descargas");
+    }
+}
@@ -50,16 +50,36 @@
 
 package com.sauken.s_fide.pdf_verify_signatures;
 
+import com.itextpdf.io.font.PdfEncodings;
+import com.itextpdf.kernel.pdf.PdfDate;
 import com.itextpdf.kernel.pdf.PdfDocument;
+import com.itextpdf.kernel.pdf.PdfName;
 import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.PdfString;
 import com.itextpdf.signatures.*;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import com.sauken.s_fide.pdf_verify_signatures.utils.PdfInput;
+import com.sauken.s_fide.pdf_verify_signatures.utils.PhaseClock;
+import com.sauken.s_fide.pdf_verify_signatures.utils.TimingLog;
+import com.sauken.s_fide.pdf_verify_signatures.validation.CrlStore;
+import com.sauken.s_fide.pdf_verify_signatures.validation.RevocationCache;
+import com.sauken.s_fide.pdf_verify_signatures.validation.ResponderTimings;
 import com.sauken.s_fide.pdf_verify_signatures.validation.RevocationValidator;
 import com.sauken.s_fide.pdf_verify_signatures.validation.RevocationValidator.RevocationStatus;
+import com.sauken.s_fide.pdf_verify_signatures.validation.SharedHttpClient;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.*;
 import java.security.cert.*;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.*;
 import java.nio.charset.StandardCharsets;
 
@@ -70,6 +90,8 @@ public class PDFVerifySignatures {
     private static final String HELP_TEXT;
     private static final String SEPARATOR = "\n----------------------------------------\n";
     private static boolean simpleOutput = false;
+    private static PdfInput.Mode inputMode = PdfInput.Mode.MAPPED;
+    private static Path timingsFile = null;
 
     static {
         Security.addProvider(new BouncyCastleProvider());
@@ -117,9 +139,52 @@ public class PDFVerifySignatures {
                 }
             }
 
-            String pdfPath = args[0];
-            if (args.length > 1 && "-simple".equalsIgnoreCase(args[1])) {
-                simpleOutput = true;
+            String pdfPath = null;
+            List<String> batchSources = new ArrayList<>();
+            BatchVerifier.Format batchFormat = BatchVerifier.Format.NDJSON;
+            String batchOutput = "-";
+            int batchWorkers = Runtime.getRuntime().availableProcessors();
+            for (int i = 0; i < args.length; i++) {
+                if ("-simple".equalsIgnoreCase(args[i])) {
+                    simpleOutput = true;
+                } else if ("-modo-lectura".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                    inputMode = PdfInput.Mode.fromArgument(args[++i]);
+                } else if ("-tiempos".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                    timingsFile = Paths.get(args[++i]);
+                } else if ("-revocacion-tolerancia".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                    RevocationValidator.cache().setStaleWindow(Duration.ofSeconds(Long.parseLong(args[++i])));
+                } else if ("-crl-especulativa".equalsIgnoreCase(args[i])) {
+                    RevocationValidator.setSpeculativeCrl(true);
+                } else if ("-proxy".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                    SharedHttpClient.configure(SharedHttpClient.settings().withProxy(args[++i]));
+                } else if ("-conexiones-por-servidor".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                    SharedHttpClient.configure(SharedHttpClient.settings()
+                            .withMaxConnectionsPerHost(Integer.parseInt(args[++i])));
+                } else if ("-crl-almacen".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                    CrlStore.configure(Paths.get(args[++i]));
+                } else if ("-lote".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                    batchSources.add(args[++i]);
+                } else if ("-formato".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                    batchFormat = BatchVerifier.Format.fromArgument(args[++i]);
+                } else if ("-salida".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                    batchOutput = args[++i];
+                } else if ("-hilos".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                    batchWorkers = Integer.parseInt(args[++i]);
+                } else if (pdfPath == null) {
+                    pdfPath = args[i];
+                }
+            }
+
+            if (!batchSources.isEmpty()) {
+                if (pdfPath != null) {
+                    batchSources.add(0, pdfPath);
+                }
+                boolean allValid = BatchVerifier.run(new BatchVerifier.Settings(batchSources, batchFormat,
+                        batchOutput, batchWorkers, inputMode, timingsFile));
+                System.exit(allValid ? 0 : 1);
+            }
+            if (pdfPath == null) {
+                throw new IllegalArgumentException("No se indicó el documento PDF a verificar.");
             }
 
             verifyPDFSignatures(pdfPath);
@@ -141,8 +206,12 @@ public class PDFVerifySignatures {
     }
 
     private static void verifyPDFSignatures(String pdfPath) throws IOException {
-        try (PdfReader reader = new PdfReader(pdfPath);
-             PdfDocument pdfDoc = new PdfDocument(reader)) {
+        PhaseClock clock = new PhaseClock(pdfPath);
+        clock.enter(PhaseClock.READ);
+        try (PdfInput input = PdfInput.open(Paths.get(pdfPath), inputMode);
+             PdfDocument pdfDoc = new PdfDocument(input.reader())) {
+
+            PdfReader reader = input.reader();
 
             SignatureUtil signUtil = new SignatureUtil(pdfDoc);
             List<String> names = signUtil.getSignatureNames();
@@ -151,23 +220,36 @@ public class PDFVerifySignatures {
                 throw new IllegalArgumentException("El documento no contiene firmas digitales.");
             }
 
+            // El hash y la verificación criptográfica usan un hilo por procesador; la consulta de
+            // revocación, que espera a la red, corre en hilos virtuales. Cada firma escribe su
+            // reporte aparte y se imprimen en el orden del documento.
+            ExecutorService hashing = Executors.newFixedThreadPool(
+                    Math.min(names.size(), Runtime.getRuntime().availableProcessors()));
+            ExecutorService revocation = Executors.newVirtualThreadPerTaskExecutor();
             boolean hasErrors = false;
-            for (int i = 0; i < names.size(); i++) {
-                if (i > 0) {
-                    System.out.println(SEPARATOR);
+            try {
+                List<ByteArrayOutputStream> reports = new ArrayList<>();
+                List<CompletableFuture<SignatureOutcome>> results = new ArrayList<>();
+                for (String name : names) {
+                    ByteArrayOutputStream report = new ByteArrayOutputStream();
+                    reports.add(report);
+                    results.add(startVerification(input, signUtil, name,
+                            new PrintStream(report, true, StandardCharsets.UTF_8), clock, hashing, revocation));
                 }
+                clock.stop();
 
-                String name = names.get(i);
-                System.out.println("Verificando firma #" + (i + 1) + ":");
+                for (int i = 0; i < names.size(); i++) {
+                    if (i > 0) {
+                        System.out.println(SEPARATOR);
+                    }
 
-                try {
-                    boolean isValid = verifySignature(signUtil, name);
-                    hasErrors |= !isValid;
-                } catch (Exception e) {
-                    LOGGER.severe("Error verificando firma " + name + ": " + e.getMessage());
-                    System.out.println("Error en firma " + name + ": " + e.getMessage());
-                    hasErrors = true;
+                    System.out.println("Verificando firma #" + (i + 1) + ":");
+                    hasErrors |= !results.get(i).join().valid();
+                    System.out.print(reports.get(i).toString(StandardCharsets.UTF_8));
                 }
+            } finally {
+                hashing.shutdown();
+                revocation.shutdown();
             }
 
             System.out.println("\n=== RESULTADO FINAL ===");
@@ -181,82 +263,280 @@ public class PDFVerifySignatures {
             System.out.println("- Documento bloqueado: " + (pdfDoc.getWriter() == null ? "Sí" : "No"));
             System.out.println("- Documento encriptado: " + (reader.isEncrypted() ? "Sí" : "No"));
 
+            recordTimings(clock, Files.size(Paths.get(pdfPath)));
             System.exit(hasErrors ? 1 : 0);
         }
     }
 
-    private static boolean verifySignature(SignatureUtil signUtil, String name)
-            throws GeneralSecurityException, IOException {
-        PdfPKCS7 pkcs7 = signUtil.readSignatureData(name);
+    private static void recordTimings(PhaseClock clock, long documentBytes) throws IOException {
+        clock.stop();
+        if (timingsFile == null) {
+            return;
+        }
+        RevocationCache.Stats cache = RevocationValidator.cache().stats();
+        clock.attach("cache_revocacion", String.format(Locale.ROOT,
+                "{\"aciertos\":%d,\"fallos\":%d,\"vencidas\":%d,\"entradas\":%d}",
+                cache.hits(), cache.misses(), cache.staleHits(), cache.entries()));
+        CrlStore.Stats crls = CrlStore.get().stats();
+        clock.attach("almacen_crl", String.format(Locale.ROOT,
+                "{\"aciertos\":%d,\"descargas\":%d,\"descargas_delta\":%d,\"errores\":%d}",
+                crls.hits(), crls.downloads(), crls.deltaDownloads(), crls.failures()));
+        StringBuilder responders = new StringBuilder();
+        for (Map.Entry<String, ResponderTimings.Stats> responder
+                : RevocationValidator.responderTimings().snapshot().entrySet()) {
+            ResponderTimings.Stats stats = responder.getValue();
+            responders.append(responders.isEmpty() ? "{" : ",").append(TimingLog.quote(responder.getKey()))
+                    .append(String.format(Locale.ROOT,
+                            ":{\"consultas\":%d,\"respuestas\":%d,\"sin_respuesta\":%d,\"errores\":%d,"
+                                    + "\"canceladas\":%d,\"ms_promedio\":%d,\"ms_max\":%d}",
+                            stats.requests(), stats.answered(), stats.noAnswer(), stats.errors(), stats.cancelled(),
+                            stats.averageMillis(), stats.maxMillis()));
+        }
+        clock.attach("respondedores", responders.isEmpty() ? "{}" : responders.append('}').toString());
+        try (TimingLog log = TimingLog.open(timingsFile)) {
+            log.write(clock.toJson(documentBytes));
+        }
+    }
 
-        boolean coversWholeDoc = signUtil.signatureCoversWholeDocument(name);
-        System.out.println("Cubre todo el documento: " + (coversWholeDoc ? "Sí" : "No"));
+    /**
+     * Datos de una firma tomados del documento. Se leen en el hilo principal porque el
+     * PdfDocument no admite accesos concurrentes; el resto de la verificación usa solo estos
+     * datos y su propio origen para el /ByteRange.
+     */
+    private record SignatureData(String name, PdfName subFilter, byte[] contents, byte[] certificate,
+                                 Calendar signDate, String signName, String reason, String location,
+                                 long[] byteRange, boolean coversWholeDocument) {
+    }
 
-        boolean integrityValid = pkcs7.verifySignatureIntegrityAndAuthenticity();
-        System.out.println("Integridad de firma: " + (integrityValid ? "Válida" : "Inválida"));
-        if (!integrityValid) return false;
+    /**
+     * Firma íntegra y con emisor aceptado, lista para consultar la revocación del firmante.
+     */
+    private record VerifiedSignature(PdfPKCS7 pkcs7, X509Certificate signingCert, Date signDate) {
+    }
+
+    /**
+     * Resultado de la verificación criptográfica: {@code verified} es nulo si la firma no
+     * pasó, con el motivo en {@code error}. El tiempo incluye el hash del /ByteRange.
+     */
+    private record Integrity(VerifiedSignature verified, String signer, String error, long millis) {
+    }
+
+    /**
+     * Resultado de una firma, tal como se informa en la verificación por lotes. La
+     * revocación es nula si no se llegó a consultar.
+     */
+    record SignatureOutcome(String name, boolean valid, String signer, RevocationStatus revocation, String error,
+                            long integrityMillis, long revocationMillis) {
+    }
+
+    /**
+     * Inicia la verificación de una firma: el hash y la verificación en {@code hashing}, la
+     * revocación en {@code revocation}. El reporte de la firma se escribe en {@code out}.
+     */
+    static CompletableFuture<SignatureOutcome> startVerification(PdfInput input, SignatureUtil signUtil, String name,
+                                                                 PrintStream out, PhaseClock clock,
+                                                                 Executor hashing, Executor revocation) {
+        CompletableFuture<SignatureOutcome> result;
+        try {
+            SignatureData data = readSignature(signUtil, name);
+            result = CompletableFuture
+                    .supplyAsync(() -> verifyIntegrity(input, data, out, clock), hashing)
+                    .thenApplyAsync(integrity -> integrity.verified() != null
+                            ? checkRevocation(name, integrity, out, clock)
+                            : new SignatureOutcome(name, false, integrity.signer(), null, integrity.error(),
+                                    integrity.millis(), 0), revocation);
+        } catch (Exception e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        return result.exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            LOGGER.severe("Error verificando firma " + name + ": " + cause.getMessage());
+            out.println("Error en firma " + name + ": " + cause.getMessage());
+            return new SignatureOutcome(name, false, null, null, cause.getMessage(), 0, 0);
+        });
+    }
+
+    private static SignatureData readSignature(SignatureUtil signUtil, String name) {
+        PdfSignature signature = signUtil.getSignature(name);
+        if (signature == null || signature.getContents() == null || signature.getByteRange() == null) {
+            throw new IllegalArgumentException("No se encontró el diccionario de la firma");
+        }
+
+        PdfName subFilter = signature.getSubFilter();
+        byte[] certificate = null;
+        if (PdfName.Adbe_x509_rsa_sha1.equals(subFilter)) {
+            PdfString cert = signature.getPdfObject().getAsString(PdfName.Cert);
+            if (cert == null) {
+                cert = signature.getPdfObject().getAsArray(PdfName.Cert).getAsString(0);
+            }
+            certificate = cert.getValueBytes();
+        }
+
+        PdfString date = signature.getDate();
+        return new SignatureData(name, subFilter,
+                PdfEncodings.convertToBytes(signature.getContents().getValue(), null), certificate,
+                date != null ? PdfDate.decode(date.toString()) : null,
+                signature.getName(), signature.getReason(), signature.getLocation(),
+                signature.getByteRange().toLongArray(), signUtil.signatureCoversWholeDocument(name));
+    }
+
+    /**
+     * Equivalente a {@link SignatureUtil#readSignatureData(String)} sobre los datos ya
+     * leídos, recorriendo el /ByteRange con un origen propio.
+     */
+    private static PdfPKCS7 readSignatureData(PdfInput input, SignatureData data, PhaseClock clock)
+            throws IOException, GeneralSecurityException {
+        PdfPKCS7 pkcs7 = data.certificate() != null
+                ? new PdfPKCS7(data.contents(), data.certificate(), null)
+                : new PdfPKCS7(data.contents(), data.subFilter(), null);
+
+        long expectedBytes = 0;
+        for (int i = 1; i < data.byteRange().length; i += 2) {
+            expectedBytes += data.byteRange()[i];
+        }
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream range = clock.measureHash(input.openRange(data.byteRange()), data.name(), expectedBytes)) {
+            int read;
+            while ((read = range.read(buffer, 0, buffer.length)) > 0) {
+                pkcs7.update(buffer, 0, read);
+            }
+        }
+
+        if (data.signDate() != null) {
+            pkcs7.setSignDate(data.signDate());
+        }
+        if (data.signName() != null) {
+            pkcs7.setSignName(data.signName());
+        }
+        if (data.reason() != null) {
+            pkcs7.setReason(data.reason());
+        }
+        if (data.location() != null) {
+            pkcs7.setLocation(data.location());
+        }
+        return pkcs7;
+    }
+
+    private static Integrity verifyIntegrity(PdfInput input, SignatureData data, PrintStream out,
+                                             PhaseClock clock) {
+        try {
+            long started = System.nanoTime();
+            PdfPKCS7 pkcs7 = readSignatureData(input, data, clock);
+            long start = System.nanoTime();
+            Integrity checked;
+            try {
+                checked = verifySigner(pkcs7, data, out);
+            } finally {
+                clock.add(PhaseClock.VERIFY, System.nanoTime() - start);
+            }
+            return new Integrity(checked.verified(), checked.signer(), checked.error(),
+                    (System.nanoTime() - started) / 1_000_000);
+        } catch (GeneralSecurityException | IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static Integrity verifySigner(PdfPKCS7 pkcs7, SignatureData data, PrintStream out)
+            throws GeneralSecurityException {
+        out.println("Cubre todo el documento: " + (data.coversWholeDocument() ? "Sí" : "No"));
 
         X509Certificate signingCert = pkcs7.getSigningCertificate();
+        String signer = signingCert != null ? extractCN(signingCert.getSubjectX500Principal().getName()) : null;
+
+        boolean integrityValid = pkcs7.verifySignatureIntegrityAndAuthenticity();
+        out.println("Integridad de firma: " + (integrityValid ? "Válida" : "Inválida"));
+        if (!integrityValid) return new Integrity(null, signer, "Integridad de firma inválida", 0);
+
         if (signingCert == null) {
-            System.out.println("Error: No se pudo obtener el certificado firmante");
-            return false;
+            out.println("Error: No se pudo obtener el certificado firmante");
+            return new Integrity(null, null, "No se pudo obtener el certificado firmante", 0);
         }
 
         // Verificar emisor
         String issuerCN = extractCN(signingCert.getIssuerX500Principal().getName());
         if (issuerCN.isEmpty() || issuerCN.toLowerCase().contains("self signed") ||
                 issuerCN.toLowerCase().contains("localhost")) {
-            System.out.println("\nADVERTENCIA: Certificado no confiable o autofirmado");
-            System.out.println("Este certificado podría haber sido generado para uso interno o para realizar pruebas");
-            return false;
+            out.println("\nADVERTENCIA: Certificado no confiable o autofirmado");
+            out.println("Este certificado podría haber sido generado para uso interno o para realizar pruebas");
+            return new Integrity(null, signer, "Certificado no confiable o autofirmado", 0);
         }
 
         Date signDate = pkcs7.getSignDate().getTime();
-        System.out.println("Fecha de firma: " + signDate);
+        out.println("Fecha de firma: " + signDate);
+        return new Integrity(new VerifiedSignature(pkcs7, signingCert, signDate), signer, null, 0);
+    }
 
-        RevocationStatus revocationStatus = RevocationValidator.checkCertificateRevocation(signingCert, signDate);
-        System.out.println("Estado de revocación: " + revocationStatus);
+    private static SignatureOutcome checkRevocation(String name, Integrity integrity, PrintStream out,
+                                                    PhaseClock clock) {
+        VerifiedSignature verified = integrity.verified();
+        long start = System.nanoTime();
+        RevocationStatus revocationStatus = RevocationValidator.checkCertificateRevocation(
+                verified.signingCert(), findIssuer(verified.pkcs7(), verified.signingCert()), verified.signDate());
+        long elapsed = System.nanoTime() - start;
+        clock.add(PhaseClock.REVOCATION, elapsed);
+        out.println("Estado de revocación: " + revocationStatus);
         if (revocationStatus == RevocationStatus.REVOKED) {
-            System.out.println("Error: Certificado revocado al momento de la firma");
-            return false;
+            out.println("Error: Certificado revocado al momento de la firma");
+            return new SignatureOutcome(name, false, integrity.signer(), revocationStatus,
+                    "Certificado revocado al momento de la firma", integrity.millis(), elapsed / 1_000_000);
         }
 
         if (!simpleOutput) {
-            printSignatureInfo(pkcs7);
+            printSignatureInfo(verified.pkcs7(), out);
         }
 
-        return true;
+        return new SignatureOutcome(name, true, integrity.signer(), revocationStatus, null, integrity.millis(),
+                elapsed / 1_000_000);
+    }
+
+    /**
+     * Busca entre los certificados incluidos en la firma el emisor del certificado firmante.
+     */
+    private static X509Certificate findIssuer(PdfPKCS7 pkcs7, X509Certificate cert) {
+        for (java.security.cert.Certificate candidate : pkcs7.getCertificates()) {
+            if (candidate instanceof X509Certificate issuer && issuer != cert
+                    && issuer.getSubjectX500Principal().equals(cert.getIssuerX500Principal())) {
+                try {
+                    cert.verify(issuer.getPublicKey());
+                    return issuer;
+                } catch (GeneralSecurityException e) {
+                    LOGGER.fine("El certificado " + issuer.getSubjectX500Principal() + " no es el emisor: "
+                            + e.getMessage());
+                }
+            }
+        }
+        return null;
     }
 
-    private static void printSignatureInfo(PdfPKCS7 pkcs7) {
-        System.out.println("\nInformación adicional de la firma:");
+    private static void printSignatureInfo(PdfPKCS7 pkcs7, PrintStream out) {
+        out.println("\nInformación adicional de la firma:");
 
         X509Certificate signingCert = pkcs7.getSigningCertificate();
         if (signingCert != null) {
             String dn = signingCert.getSubjectX500Principal().getName();
-            System.out.println("Firmante: " + extractCN(dn));
-            System.out.println("Organización: " + extractO(dn));
-            System.out.println("Número de serie del certificado: " + signingCert.getSerialNumber().toString(16));
-            System.out.println("Válido desde: " + signingCert.getNotBefore());
-            System.out.println("Válido hasta: " + signingCert.getNotAfter());
-            System.out.println("Emisor: " + extractCN(signingCert.getIssuerX500Principal().getName()));
+            out.println("Firmante: " + extractCN(dn));
+            out.println("Organización: " + extractO(dn));
+            out.println("Número de serie del certificado: " + signingCert.getSerialNumber().toString(16));
+            out.println("Válido desde: " + signingCert.getNotBefore());
+            out.println("Válido hasta: " + signingCert.getNotAfter());
+            out.println("Emisor: " + extractCN(signingCert.getIssuerX500Principal().getName()));
         }
 
         Calendar signDate = pkcs7.getSignDate();
         if (signDate != null) {
-            System.out.println("Fecha y hora de firma: " +
+            out.println("Fecha y hora de firma: " +
                     String.format("%1$td/%1$tm/%1$tY %1$tH:%1$tM:%1$tS", signDate));
         }
 
-        System.out.println("Tipo de firma: " + pkcs7.getFilterSubtype());
-        System.out.println("Algoritmo de firma: " + getSignatureAlgorithmName(signingCert));
+        out.println("Tipo de firma: " + pkcs7.getFilterSubtype());
+        out.println("Algoritmo de firma: " + getSignatureAlgorithmName(signingCert));
 
         try {
             X509Certificate[] certChain = (X509Certificate[]) pkcs7.getSignCertificateChain();
             if (certChain != null && certChain.length > 1) {
-                System.out.println("\nCadena de certificación:");
+                out.println("\nCadena de certificación:");
                 for (X509Certificate cert : certChain) {
-                    System.out.println(" - " + extractCN(cert.getSubjectX500Principal().getName()));
+                    out.println(" - " + extractCN(cert.getSubjectX500Principal().getName()));
                 }
             }
         } catch (Exception e) {
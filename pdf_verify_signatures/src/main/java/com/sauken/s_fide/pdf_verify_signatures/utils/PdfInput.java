@@ -0,0 +1,159 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+package com.sauken.s_fide.pdf_verify_signatures.utils;
+
+import com.itextpdf.io.source.IRandomAccessSource;
+import com.itextpdf.io.source.IndependentRandomAccessSource;
+import com.itextpdf.io.source.RASInputStream;
+import com.itextpdf.io.source.RandomAccessSourceFactory;
+import com.itextpdf.kernel.pdf.PdfReader;
+import com.itextpdf.kernel.pdf.ReaderProperties;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Origen de lectura del PDF a verificar. Los modos {@code mmap} y {@code raf} leen el
+ * documento desde el disco sin copiarlo completo al heap.
+ */
+public final class PdfInput implements Closeable {
+
+    public enum Mode {
+        MEMORY, MAPPED, RANDOM_ACCESS;
+
+        public static Mode fromArgument(String value) {
+            return switch (value.toLowerCase()) {
+                case "memoria" -> MEMORY;
+                case "mmap" -> MAPPED;
+                case "raf" -> RANDOM_ACCESS;
+                default -> throw new IllegalArgumentException("Modo de lectura no reconocido: " + value);
+            };
+        }
+    }
+
+    private final Path path;
+    private final Mode mode;
+    private final IRandomAccessSource source;
+    private final PdfReader reader;
+
+    private PdfInput(Path path, Mode mode, IRandomAccessSource source) throws IOException {
+        this.path = path;
+        this.mode = mode;
+        this.source = source;
+        try {
+            this.reader = new PdfReader(source, new ReaderProperties());
+        } catch (IOException | RuntimeException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    public static PdfInput open(Path path, Mode mode) throws IOException {
+        if (mode == Mode.MEMORY) {
+            try (InputStream inputStream = Files.newInputStream(path)) {
+                return new PdfInput(path, mode, new RandomAccessSourceFactory().setForceRead(false)
+                        .createSource(inputStream));
+            }
+        }
+        return new PdfInput(path, mode, diskSource(path, mode));
+    }
+
+    public PdfReader reader() {
+        return reader;
+    }
+
+    /**
+     * Abre el /ByteRange de una firma con un origen propio, de modo que varias firmas se
+     * puedan leer a la vez sin compartir la posición del lector del documento. En memoria
+     * se comparte el arreglo; en {@code mmap} y {@code raf} se abre el archivo de nuevo.
+     */
+    public InputStream openRange(long[] byteRange) throws IOException {
+        IRandomAccessSource base = mode == Mode.MEMORY
+                ? new IndependentRandomAccessSource(source)
+                : diskSource(path, mode);
+        IRandomAccessSource ranged;
+        try {
+            ranged = new RandomAccessSourceFactory().createRanged(base, byteRange);
+        } catch (IOException | RuntimeException e) {
+            base.close();
+            throw e;
+        }
+        return new FilterInputStream(new RASInputStream(ranged)) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    ranged.close();
+                } finally {
+                    base.close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            reader.close();
+        } finally {
+            source.close();
+        }
+    }
+
+    private static IRandomAccessSource diskSource(Path path, Mode mode) throws IOException {
+        RandomAccessSourceFactory factory = new RandomAccessSourceFactory().setForceRead(false);
+        if (mode == Mode.RANDOM_ACCESS) {
+            factory.setUsePlainRandomAccess(true);
+        }
+        return factory.createBestSource(path.toString());
+    }
+}
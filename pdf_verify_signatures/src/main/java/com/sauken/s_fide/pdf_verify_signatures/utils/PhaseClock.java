@@ -0,0 +1,231 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_verify_signatures.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tiempos por fase de la verificación de un documento: lectura, hash del /ByteRange,
+ * verificación criptográfica y consulta de revocación. Cuenta los bytes que recorre el
+ * hash, informa el avance periódicamente en documentos grandes y arma el registro final
+ * en JSON.
+ *
+ * <p>La lectura es secuencial: entrar en una fase cierra la anterior. Las firmas se
+ * verifican en paralelo y cada una suma sus tiempos con {@link #add}, por lo que la suma
+ * de las fases puede superar el total.
+ */
+public final class PhaseClock {
+    public static final String READ = "lectura";
+    public static final String HASH = "hash";
+    public static final String VERIFY = "verificacion";
+    public static final String REVOCATION = "revocacion";
+
+    private static final Logger LOGGER = Logger.getLogger(PhaseClock.class.getName());
+    private static final long PROGRESS_INTERVAL_NANOS = 1_000_000_000L;
+    private static final double MEGABYTE = 1024.0 * 1024.0;
+
+    private final String documentName;
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Long> nanos = new LinkedHashMap<>();
+    private final Map<String, String> fields = new LinkedHashMap<>();
+    private String current;
+    private long since;
+    private long hashedBytes;
+    private long hashNanos;
+    private int signatures;
+
+    public PhaseClock(String documentName) {
+        this.documentName = documentName;
+    }
+
+    public synchronized void enter(String phase) {
+        long now = System.nanoTime();
+        if (current != null) {
+            add(current, now - since);
+        }
+        current = phase;
+        since = now;
+    }
+
+    public void stop() {
+        enter(null);
+    }
+
+    /**
+     * Suma a la fase el tiempo medido por una firma.
+     */
+    public synchronized void add(String phase, long elapsedNanos) {
+        nanos.merge(phase, elapsedNanos, Long::sum);
+        if (elapsedNanos >= PROGRESS_INTERVAL_NANOS) {
+            LOGGER.log(Level.INFO, String.format(Locale.ROOT, "%s: fase %s en %.1f s", documentName, phase,
+                    elapsedNanos / 1e9));
+        }
+    }
+
+    /**
+     * Envuelve el flujo del /ByteRange de una firma: cuenta los bytes, informa el avance y
+     * suma el tiempo a la fase de hash al llegar al final o al cerrarlo.
+     */
+    public InputStream measureHash(InputStream rangeStream, String signatureName, long expectedBytes) {
+        return new HashProgressStream(rangeStream, signatureName, expectedBytes);
+    }
+
+    /**
+     * Agrega al registro final un campo con un valor JSON ya armado.
+     */
+    public synchronized void attach(String name, String json) {
+        fields.put(name, json);
+    }
+
+    public long totalMillis() {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Registro en una línea con los tiempos en milisegundos y el rendimiento del hash.
+     */
+    public synchronized String toJson(long documentBytes) {
+        StringBuilder phases = new StringBuilder();
+        for (Map.Entry<String, Long> phase : nanos.entrySet()) {
+            if (!phases.isEmpty()) {
+                phases.append(',');
+            }
+            phases.append('"').append(phase.getKey()).append("\":").append(phase.getValue() / 1_000_000);
+        }
+        StringBuilder extra = new StringBuilder();
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            extra.append(",\"").append(field.getKey()).append("\":").append(field.getValue());
+        }
+        return String.format(Locale.ROOT,
+                "{\"documento\":%s,\"bytes\":%d,\"firmas\":%d,\"bytes_hash\":%d,\"hash_mb_s\":%.1f,"
+                        + "\"total_ms\":%d,\"fases_ms\":{%s}%s}",
+                TimingLog.quote(documentName), documentBytes, signatures, hashedBytes, hashThroughput(),
+                totalMillis(), phases, extra);
+    }
+
+    private synchronized void recordHash(long bytes, long elapsedNanos) {
+        hashedBytes += bytes;
+        hashNanos += elapsedNanos;
+        signatures++;
+        add(HASH, elapsedNanos);
+    }
+
+    private double hashThroughput() {
+        return hashNanos == 0 ? 0 : hashedBytes / MEGABYTE / (hashNanos / 1e9);
+    }
+
+    private final class HashProgressStream extends FilterInputStream {
+        private final String signatureName;
+        private final long expectedBytes;
+        private final long streamStart = System.nanoTime();
+        private long read;
+        private long nextReport = streamStart + PROGRESS_INTERVAL_NANOS;
+        private boolean finished;
+
+        HashProgressStream(InputStream in, String signatureName, long expectedBytes) {
+            super(in);
+            this.signatureName = signatureName;
+            this.expectedBytes = expectedBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            advance(b < 0 ? -1 : 1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            advance(count);
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            super.close();
+        }
+
+        private void advance(int count) {
+            if (count < 0) {
+                finish();
+                return;
+            }
+            read += count;
+            long now = System.nanoTime();
+            if (now >= nextReport) {
+                nextReport = now + PROGRESS_INTERVAL_NANOS;
+                double seconds = (now - streamStart) / 1e9;
+                LOGGER.log(Level.INFO, String.format(Locale.ROOT,
+                        "Hash de %s (%s): %d %% (%.1f de %.1f MB, %.0f MB/s)", documentName, signatureName,
+                        expectedBytes > 0 ? Math.min(100, read * 100 / expectedBytes) : 0, read / MEGABYTE,
+                        expectedBytes / MEGABYTE, read / MEGABYTE / seconds));
+            }
+        }
+
+        private void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            recordHash(read, System.nanoTime() - streamStart);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.net.*;
 import java.net.http.*;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 public class NetworkUtils {
@@ -32,13 +33,20 @@ public class NetworkUtils {
 
     public static HttpResponse<byte[]> sendRequest(String url, byte[] data, String contentType)
             throws IOException, InterruptedException {
-        HttpClient client = HttpClient.newBuilder()
-                .connectTimeout(TIMEOUT)
-                .build();
+        return SharedHttpClient.get().send(buildRequest(url, data, contentType));
+    }
+
+    /**
+     * Igual que {@link #sendRequest} pero sin bloquear. Cancelar el resultado corta la
+     * consulta en curso.
+     */
+    public static CompletableFuture<HttpResponse<byte[]>> sendRequestAsync(String url, byte[] data,
+                                                                          String contentType) {
+        return SharedHttpClient.get().sendAsync(buildRequest(url, data, contentType));
+    }
 
-        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .timeout(TIMEOUT);
+    private static HttpRequest buildRequest(String url, byte[] data, String contentType) {
+        HttpRequest.Builder requestBuilder = SharedHttpClient.get().newRequest(url);
 
         if (data != null) {
             requestBuilder.POST(HttpRequest.BodyPublishers.ofByteArray(data))
@@ -47,6 +55,6 @@ public class NetworkUtils {
             requestBuilder.GET();
         }
 
-        return client.send(requestBuilder.build(), HttpResponse.BodyHandlers.ofByteArray());
+        return requestBuilder.build();
     }
-}
\ No newline at end of file
+}
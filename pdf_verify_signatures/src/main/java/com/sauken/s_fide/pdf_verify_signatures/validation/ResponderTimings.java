@@ -0,0 +1,98 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_verify_signatures.validation;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tiempos de respuesta de cada servidor OCSP o CRL consultado por el proceso. Una consulta
+ * termina con una respuesta válida, sin respuesta útil (error HTTP, respuesta ilegible o
+ * estado desconocido), con error de red o cancelada porque otro servidor respondió antes.
+ */
+public final class ResponderTimings {
+
+    public enum Outcome {
+        ANSWERED, NO_ANSWER, ERROR, CANCELLED
+    }
+
+    public record Stats(long requests, long answered, long noAnswer, long errors, long cancelled,
+                        long totalMillis, long maxMillis) {
+
+        public long averageMillis() {
+            return requests == 0 ? 0 : totalMillis / requests;
+        }
+
+        Stats add(Outcome outcome, long millis) {
+            return new Stats(requests + 1,
+                    answered + (outcome == Outcome.ANSWERED ? 1 : 0),
+                    noAnswer + (outcome == Outcome.NO_ANSWER ? 1 : 0),
+                    errors + (outcome == Outcome.ERROR ? 1 : 0),
+                    cancelled + (outcome == Outcome.CANCELLED ? 1 : 0),
+                    totalMillis + millis, Math.max(maxMillis, millis));
+        }
+    }
+
+    private static final Stats EMPTY = new Stats(0, 0, 0, 0, 0, 0, 0);
+
+    private final Map<String, Stats> responders = new TreeMap<>();
+
+    synchronized void record(String url, Outcome outcome, long millis) {
+        responders.put(url, responders.getOrDefault(url, EMPTY).add(outcome, millis));
+    }
+
+    /**
+     * Copia de los tiempos por servidor, ordenada por URL.
+     */
+    public synchronized Map<String, Stats> snapshot() {
+        return new TreeMap<>(responders);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_verify_signatures.validation;
+
+import com.sauken.s_fide.pdf_verify_signatures.validation.RevocationValidator.RevocationAnswer;
+import com.sauken.s_fide.pdf_verify_signatures.validation.RevocationValidator.RevocationStatus;
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Respuestas de revocación por certificado (emisor y número de serie), compartidas por
+ * todas las firmas y documentos que verifica el proceso. Cada respuesta vale hasta el
+ * nextUpdate del OCSP o de la CRL que la respaldó, y las consultas sin respuesta se
+ * reintentan al minuto. Las firmas del mismo certificado que se verifican a la vez esperan
+ * una única consulta.
+ *
+ * <p>Con una tolerancia mayor a cero, una respuesta vencida se sigue usando durante ese
+ * lapso mientras se renueva en segundo plano. Si la renovación no obtiene respuesta, se
+ * conserva la anterior hasta que venza la tolerancia y la renovación se reintenta al minuto.
+ */
+public final class RevocationCache {
+    private static final Logger LOGGER = Logger.getLogger(RevocationCache.class.getName());
+    private static final Duration DEFAULT_VALIDITY = Duration.ofMinutes(30);
+    private static final Duration FAILURE_RETRY = Duration.ofMinutes(1);
+
+    /**
+     * Contadores desde el inicio del proceso. Las respuestas vencidas servidas dentro de la
+     * tolerancia se cuentan aparte de los aciertos.
+     */
+    public record Stats(long hits, long misses, long staleHits, int entries) {
+    }
+
+    private record Key(X500Principal issuer, BigInteger serialNumber) {
+    }
+
+    private record Cached(RevocationAnswer answer, Instant expiresAt) {
+    }
+
+    private static final class Slot {
+        final CompletableFuture<Cached> value;
+        boolean refreshing;
+        /** Antes de este momento no se intenta otra renovación (la última falló). */
+        Instant retryAfter = Instant.MIN;
+
+        Slot(CompletableFuture<Cached> value) {
+            this.value = value;
+        }
+    }
+
+    private final int maxEntries;
+    private final Map<Key, Slot> entries;
+    private Duration staleWindow = Duration.ZERO;
+    private long hits;
+    private long misses;
+    private long staleHits;
+
+    RevocationCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Slot> eldest) {
+                return size() > RevocationCache.this.maxEntries;
+            }
+        };
+    }
+
+    public synchronized void setStaleWindow(Duration staleWindow) {
+        this.staleWindow = staleWindow;
+    }
+
+    public synchronized Stats stats() {
+        return new Stats(hits, misses, staleHits, entries.size());
+    }
+
+    /**
+     * Devuelve la respuesta guardada para el certificado o la obtiene con {@code fetch}.
+     */
+    RevocationAnswer lookup(X509Certificate certificate, Supplier<RevocationAnswer> fetch) {
+        Key key = new Key(certificate.getIssuerX500Principal(), certificate.getSerialNumber());
+        CompletableFuture<Cached> pending = null;
+        CompletableFuture<Cached> owned = null;
+        synchronized (this) {
+            Slot slot = entries.get(key);
+            Instant now = Instant.now();
+            if (slot != null && !slot.value.isDone()) {
+                hits++;
+                pending = slot.value;
+            } else if (slot != null) {
+                Cached cached = slot.value.join();
+                if (now.isBefore(cached.expiresAt())) {
+                    hits++;
+                    return cached.answer();
+                }
+                if (now.isBefore(cached.expiresAt().plus(staleWindow))) {
+                    staleHits++;
+                    if (!slot.refreshing && !now.isBefore(slot.retryAfter)) {
+                        slot.refreshing = true;
+                        Thread.ofVirtual().name("revocacion").start(() -> refresh(key, slot, fetch));
+                    }
+                    return cached.answer();
+                }
+            }
+            if (pending == null) {
+                misses++;
+                owned = new CompletableFuture<>();
+                entries.put(key, new Slot(owned));
+                pending = owned;
+            }
+        }
+        if (owned != null) {
+            owned.complete(fetchEntry(fetch));
+        }
+        return pending.join().answer();
+    }
+
+    private void refresh(Key key, Slot stale, Supplier<RevocationAnswer> fetch) {
+        Cached fresh = fetchEntry(fetch);
+        synchronized (this) {
+            if (entries.get(key) != stale) {
+                return;
+            }
+            if (fresh.answer().status() == RevocationStatus.UNKNOWN
+                    && stale.value.join().answer().status() != RevocationStatus.UNKNOWN) {
+                stale.refreshing = false;
+                stale.retryAfter = Instant.now().plus(FAILURE_RETRY);
+                return;
+            }
+            entries.put(key, new Slot(CompletableFuture.completedFuture(fresh)));
+        }
+    }
+
+    private static Cached fetchEntry(Supplier<RevocationAnswer> fetch) {
+        RevocationAnswer answer;
+        try {
+            answer = fetch.get();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Error verificando revocación: {0}", e.getMessage());
+            answer = RevocationAnswer.UNKNOWN;
+        }
+
+        Instant now = Instant.now();
+        if (answer.status() == RevocationStatus.UNKNOWN) {
+            return new Cached(answer, now.plus(FAILURE_RETRY));
+        }
+        Instant expiresAt = answer.nextUpdate() != null ? answer.nextUpdate().toInstant()
+                : now.plus(DEFAULT_VALIDITY);
+        return new Cached(answer, expiresAt);
+    }
+}
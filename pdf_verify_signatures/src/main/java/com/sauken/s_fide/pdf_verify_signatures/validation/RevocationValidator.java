@@ -2,118 +2,273 @@ package com.sauken.s_fide.pdf_verify_signatures.validation;
 
 import org.bouncycastle.cert.ocsp.*;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
 import java.io.*;
+import java.math.BigInteger;
 import java.net.*;
 import java.net.http.*;
 import java.security.cert.*;
 import java.time.*;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 import java.util.logging.*;
 
 public class RevocationValidator {
     private static final Logger LOGGER = Logger.getLogger(RevocationValidator.class.getName());
     private static final Duration TIMEOUT = Duration.ofSeconds(10);
 
+    private static final int CACHE_ENTRIES = 10_000;
+    private static final RevocationCache CACHE = new RevocationCache(CACHE_ENTRIES);
+    private static final ResponderTimings TIMINGS = new ResponderTimings();
+    private static volatile boolean speculativeCrl = false;
+
     public enum RevocationStatus {
         GOOD, REVOKED, UNKNOWN
     }
 
+    /**
+     * Respuesta de un OCSP o de una CRL para un certificado, sin depender de la fecha de
+     * firma. La fecha de revocación la informan ambos; un certificado revocado después de
+     * la fecha de validación no se da por revocado.
+     */
+    record RevocationAnswer(RevocationStatus status, Date revocationDate, Date nextUpdate) {
+        static final RevocationAnswer UNKNOWN = new RevocationAnswer(RevocationStatus.UNKNOWN, null, null);
+
+        RevocationStatus statusAt(Date validationDate) {
+            if (status != RevocationStatus.REVOKED || revocationDate == null) {
+                return status;
+            }
+            return revocationDate.before(validationDate) ? RevocationStatus.REVOKED : RevocationStatus.UNKNOWN;
+        }
+    }
+
+    /**
+     * Caché de respuestas compartido por todas las verificaciones del proceso.
+     */
+    public static RevocationCache cache() {
+        return CACHE;
+    }
+
+    /**
+     * Tiempos de respuesta por servidor OCSP y CRL desde el inicio del proceso.
+     */
+    public static ResponderTimings responderTimings() {
+        return TIMINGS;
+    }
+
+    /**
+     * Con {@code true} la descarga de la CRL empieza junto con las consultas OCSP en lugar de
+     * esperar a que éstas fallen, y se usa la primera respuesta válida de cualquiera de ellas.
+     */
+    public static void setSpeculativeCrl(boolean speculative) {
+        speculativeCrl = speculative;
+    }
+
     public static RevocationStatus checkCertificateRevocation(X509Certificate cert, Date validationDate) {
+        return checkCertificateRevocation(cert, null, validationDate);
+    }
+
+    /**
+     * Consulta la revocación del certificado. El emisor hace falta para armar la consulta
+     * OCSP y para verificar la CRL; sin él el estado queda desconocido.
+     */
+    public static RevocationStatus checkCertificateRevocation(X509Certificate cert, X509Certificate issuer,
+                                                              Date validationDate) {
+        return CACHE.lookup(cert, () -> fetchRevocation(cert, issuer)).statusAt(validationDate);
+    }
+
+    /**
+     * Consulta todos los servidores OCSP a la vez y usa la primera respuesta válida; el resto
+     * de las consultas se cancela. Si ninguno responde se descargan las CRL, también a la vez.
+     */
+    private static RevocationAnswer fetchRevocation(X509Certificate cert, X509Certificate issuer) {
         try {
-            // Intentar OCSP primero
-            RevocationStatus status = checkOCSP(cert, validationDate);
-            if (status != RevocationStatus.UNKNOWN) {
-                return status;
+            List<Probe> probes = new ArrayList<>(startOCSP(cert, issuer));
+            if (speculativeCrl) {
+                probes.addAll(startCRL(cert, issuer));
+            }
+            RevocationAnswer answer = firstAnswer(probes);
+            if (answer.status() != RevocationStatus.UNKNOWN || speculativeCrl) {
+                return answer;
             }
 
             // Si OCSP falla, intentar CRL
-            return checkCRL(cert, validationDate);
+            return firstAnswer(startCRL(cert, issuer));
 
         } catch (Exception e) {
             LOGGER.warning("Error verificando revocación: " + e.getMessage());
-            return RevocationStatus.UNKNOWN;
+            return RevocationAnswer.UNKNOWN;
         }
     }
 
-    private static RevocationStatus checkOCSP(X509Certificate cert, Date validationDate) {
-        try {
-            byte[] response = null;
-            List<String> ocspUrls = com.sauken.s_fide.pdf_verify_signatures.utils.CertificateUtils.getOCSPUrls(cert);
-
-            for (String url : ocspUrls) {
-                try {
-                    HttpResponse<byte[]> httpResponse = NetworkUtils.sendRequest(
-                            url,
-                            generateBasicOCSPRequest(cert),
-                            "application/ocsp-request"
-                    );
-
-                    if (httpResponse.statusCode() == 200) {
-                        response = httpResponse.body();
-                        break;
-                    }
-                } catch (Exception e) {
-                    LOGGER.fine("Error OCSP para " + url + ": " + e.getMessage());
-                }
+    /**
+     * Consulta en curso a un servidor. {@code request} es el envío HTTP, o la consulta al
+     * almacén de CRL, que es lo que hay que cancelar para cortar la conexión; {@code answer}
+     * es la respuesta ya interpretada. Una consulta cancelada puede terminar con error de red
+     * en lugar de cancelación, por eso se marca antes de cancelarla.
+     */
+    private record Probe(String url, CompletableFuture<?> request,
+                         CompletableFuture<RevocationAnswer> answer, AtomicBoolean cancelled) {
+
+        void cancel() {
+            if (!request.isDone()) {
+                cancelled.set(true);
+                request.cancel(true);
             }
+        }
 
-            if (response != null) {
-                OCSPResp ocspResp = new OCSPResp(response);
-                if (ocspResp.getStatus() == OCSPRespBuilder.SUCCESSFUL) {
-                    BasicOCSPResp basicResp = (BasicOCSPResp) ocspResp.getResponseObject();
-                    SingleResp[] responses = basicResp.getResponses();
+        static Probe start(String url, byte[] data, String contentType,
+                           Function<HttpResponse<byte[]>, RevocationAnswer> parser) {
+            return timed(url, NetworkUtils.sendRequestAsync(url, data, contentType),
+                    response -> response.statusCode() == 200 ? parser.apply(response) : RevocationAnswer.UNKNOWN);
+        }
 
-                    if (responses.length > 0) {
-                        SingleResp resp = responses[0];
-                        org.bouncycastle.cert.ocsp.CertificateStatus status = resp.getCertStatus();
+        /**
+         * Consulta de una CRL a través del almacén local. Si la CRL está vigente en el
+         * almacén la respuesta es inmediata y no cuenta como consulta al servidor.
+         */
+        static Probe fromStore(String url, BigInteger serial, X509Certificate issuer) {
+            CrlStore.Lookup stored = CrlStore.get().cached(url, serial, issuer);
+            if (stored != null) {
+                CompletableFuture<RevocationAnswer> answer = CompletableFuture.completedFuture(toAnswer(stored));
+                return new Probe(url, answer, answer, new AtomicBoolean());
+            }
+            return timed(url, CrlStore.get().fetch(url, serial, issuer), RevocationValidator::toAnswer);
+        }
 
-                        if (status == null) return RevocationStatus.GOOD;
-                        if (status instanceof RevokedStatus) return RevocationStatus.REVOKED;
+        private static <T> Probe timed(String url, CompletableFuture<T> request,
+                                       Function<T, RevocationAnswer> parser) {
+            long start = System.nanoTime();
+            AtomicBoolean cancelled = new AtomicBoolean();
+            CompletableFuture<RevocationAnswer> answer = request.handle((response, error) -> {
+                RevocationAnswer parsed = RevocationAnswer.UNKNOWN;
+                ResponderTimings.Outcome outcome;
+                if (error != null) {
+                    outcome = cancelled.get() || error instanceof CancellationException
+                            ? ResponderTimings.Outcome.CANCELLED : ResponderTimings.Outcome.ERROR;
+                    if (outcome == ResponderTimings.Outcome.ERROR) {
+                        LOGGER.fine("Error consultando " + url + ": " + error.getMessage());
                     }
+                } else {
+                    try {
+                        parsed = parser.apply(response);
+                    } catch (RuntimeException e) {
+                        LOGGER.fine("Respuesta ilegible de " + url + ": " + e.getMessage());
+                    }
+                    outcome = parsed.status() != RevocationStatus.UNKNOWN
+                            ? ResponderTimings.Outcome.ANSWERED : ResponderTimings.Outcome.NO_ANSWER;
+                }
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                TIMINGS.record(url, outcome, millis);
+                LOGGER.fine(url + ": " + outcome + " en " + millis + " ms");
+                return parsed;
+            });
+            return new Probe(url, request, answer, cancelled);
+        }
+    }
+
+    private static RevocationAnswer firstAnswer(List<Probe> probes) {
+        if (probes.isEmpty()) {
+            return RevocationAnswer.UNKNOWN;
+        }
+
+        CompletableFuture<RevocationAnswer> first = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(probes.size());
+        for (Probe probe : probes) {
+            probe.answer().thenAccept(answer -> {
+                if (answer.status() != RevocationStatus.UNKNOWN) {
+                    first.complete(answer);
                 }
+                if (pending.decrementAndGet() == 0) {
+                    first.complete(RevocationAnswer.UNKNOWN);
+                }
+            });
+        }
+
+        RevocationAnswer answer = first.join();
+        for (Probe probe : probes) {
+            probe.cancel();
+        }
+        return answer;
+    }
+
+    private static List<Probe> startOCSP(X509Certificate cert, X509Certificate issuer) {
+        List<Probe> probes = new ArrayList<>();
+        if (issuer == null) {
+            LOGGER.fine("Sin certificado emisor para la consulta OCSP de " + cert.getSubjectX500Principal());
+            return probes;
+        }
+        try {
+            byte[] request = generateBasicOCSPRequest(cert, issuer);
+            for (String url : com.sauken.s_fide.pdf_verify_signatures.utils.CertificateUtils.getOCSPUrls(cert)) {
+                probes.add(Probe.start(url, request, "application/ocsp-request", RevocationValidator::parseOCSP));
             }
         } catch (Exception e) {
             LOGGER.warning("Error en verificación OCSP: " + e.getMessage());
         }
-        return RevocationStatus.UNKNOWN;
+        return probes;
     }
 
-    private static RevocationStatus checkCRL(X509Certificate cert, Date validationDate) {
+    private static RevocationAnswer parseOCSP(HttpResponse<byte[]> httpResponse) {
         try {
-            List<String> crlUrls = com.sauken.s_fide.pdf_verify_signatures.utils.CertificateUtils.getCRLUrls(cert);
-            for (String url : crlUrls) {
-                try {
-                    HttpResponse<byte[]> response = NetworkUtils.sendRequest(url, null, "application/x-pkcs7-crl");
-
-                    if (response.statusCode() == 200) {
-                        CertificateFactory cf = CertificateFactory.getInstance("X.509");
-                        X509CRL crl = (X509CRL) cf.generateCRL(new ByteArrayInputStream(response.body()));
-
-                        X509CRLEntry entry = crl.getRevokedCertificate(cert.getSerialNumber());
-                        if (entry != null && entry.getRevocationDate().before(validationDate)) {
-                            return RevocationStatus.REVOKED;
-                        } else if (entry == null) {
-                            return RevocationStatus.GOOD;
-                        }
+            OCSPResp ocspResp = new OCSPResp(httpResponse.body());
+            if (ocspResp.getStatus() == OCSPRespBuilder.SUCCESSFUL) {
+                BasicOCSPResp basicResp = (BasicOCSPResp) ocspResp.getResponseObject();
+                SingleResp[] responses = basicResp.getResponses();
+
+                if (responses.length > 0) {
+                    SingleResp resp = responses[0];
+                    org.bouncycastle.cert.ocsp.CertificateStatus status = resp.getCertStatus();
+
+                    if (status == null) {
+                        return new RevocationAnswer(RevocationStatus.GOOD, null, resp.getNextUpdate());
+                    }
+                    if (status instanceof RevokedStatus revoked) {
+                        return new RevocationAnswer(RevocationStatus.REVOKED, revoked.getRevocationTime(),
+                                resp.getNextUpdate());
                     }
-                } catch (Exception e) {
-                    LOGGER.fine("Error CRL para " + url + ": " + e.getMessage());
                 }
             }
+        } catch (IOException | OCSPException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return RevocationAnswer.UNKNOWN;
+    }
+
+    private static List<Probe> startCRL(X509Certificate cert, X509Certificate issuer) {
+        List<Probe> probes = new ArrayList<>();
+        if (issuer == null) {
+            LOGGER.fine("Sin certificado emisor para verificar la CRL de " + cert.getSubjectX500Principal());
+            return probes;
+        }
+        try {
+            for (String url : com.sauken.s_fide.pdf_verify_signatures.utils.CertificateUtils.getCRLUrls(cert)) {
+                probes.add(Probe.fromStore(url, cert.getSerialNumber(), issuer));
+            }
         } catch (Exception e) {
             LOGGER.warning("Error en verificación CRL: " + e.getMessage());
         }
-        return RevocationStatus.UNKNOWN;
+        return probes;
+    }
+
+    private static RevocationAnswer toAnswer(CrlStore.Lookup lookup) {
+        return lookup.revoked()
+                ? new RevocationAnswer(RevocationStatus.REVOKED, lookup.revocationDate(), lookup.nextUpdate())
+                : new RevocationAnswer(RevocationStatus.GOOD, null, lookup.nextUpdate());
     }
 
-    private static byte[] generateBasicOCSPRequest(X509Certificate cert) throws Exception {
+    private static byte[] generateBasicOCSPRequest(X509Certificate cert, X509Certificate issuer) throws Exception {
         OCSPReqBuilder builder = new OCSPReqBuilder();
         CertificateID certId = new CertificateID(
-                null, // Sin DigestCalculatorProvider por simplicidad
-                new JcaX509CertificateHolder(cert),
+                new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+                new JcaX509CertificateHolder(issuer),
                 cert.getSerialNumber()
         );
         builder.addRequest(certId);
         return builder.build().getEncoded();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,265 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_verify_signatures.validation;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Cliente HTTP único del proceso para las consultas OCSP y CRL. Reutiliza las conexiones
+ * entre consultas, negocia HTTP/2 con los servidores https que lo admiten y limita las
+ * consultas simultáneas a un mismo servidor; las que exceden el límite esperan su turno
+ * sin ocupar un hilo. Se configura con {@link #configure} antes de la primera consulta.
+ */
+public final class SharedHttpClient {
+
+    /**
+     * Configuración del cliente. Un {@code requestTimeout} nulo no limita la duración de
+     * la consulta; un {@code proxy} nulo usa el de la JVM (propiedades http.proxyHost y
+     * https.proxyHost).
+     */
+    public record Settings(Duration connectTimeout, Duration requestTimeout, int maxConnectionsPerHost,
+                           ProxySelector proxy) {
+
+        public static Settings defaults() {
+            return new Settings(Duration.ofSeconds(5), Duration.ofSeconds(5), 6, null);
+        }
+
+        public Settings withMaxConnectionsPerHost(int maxConnectionsPerHost) {
+            if (maxConnectionsPerHost < 1) {
+                throw new IllegalArgumentException("La cantidad de conexiones por servidor debe ser mayor a cero");
+            }
+            return new Settings(connectTimeout, requestTimeout, maxConnectionsPerHost, proxy);
+        }
+
+        /**
+         * Proxy HTTP fijo con el formato {@code servidor:puerto}.
+         */
+        public Settings withProxy(String hostAndPort) {
+            int colon = hostAndPort.lastIndexOf(':');
+            if (colon <= 0 || colon == hostAndPort.length() - 1) {
+                throw new IllegalArgumentException("Proxy no válido, se espera servidor:puerto: " + hostAndPort);
+            }
+            int port = Integer.parseInt(hostAndPort.substring(colon + 1));
+            return new Settings(connectTimeout, requestTimeout, maxConnectionsPerHost,
+                    ProxySelector.of(InetSocketAddress.createUnresolved(hostAndPort.substring(0, colon), port)));
+        }
+    }
+
+    private static Settings settings = Settings.defaults();
+    private static SharedHttpClient instance;
+
+    private final Settings config;
+    private final HttpClient client;
+    private final Map<String, HostLimiter> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Cliente independiente del compartido; el proceso usa {@link #get()}.
+     */
+    SharedHttpClient(Settings config) {
+        this.config = config;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(config.connectTimeout())
+                .proxy(config.proxy() != null ? config.proxy() : ProxySelector.getDefault())
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    public static synchronized void configure(Settings newSettings) {
+        if (instance != null) {
+            throw new IllegalStateException("El cliente HTTP ya está en uso");
+        }
+        settings = newSettings;
+    }
+
+    public static synchronized Settings settings() {
+        return settings;
+    }
+
+    public static synchronized SharedHttpClient get() {
+        if (instance == null) {
+            instance = new SharedHttpClient(settings);
+        }
+        return instance;
+    }
+
+    /**
+     * Solicitud con el tiempo máximo configurado. Para https se pide HTTP/2, que se negocia
+     * en el handshake y vuelve a HTTP/1.1 si el servidor no lo admite; para http se usa
+     * HTTP/1.1 para no intentar el cambio de protocolo con servidores OCSP antiguos.
+     */
+    public HttpRequest.Builder newRequest(String url) {
+        URI uri = URI.create(url);
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .version("https".equalsIgnoreCase(uri.getScheme())
+                        ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1);
+        if (config.requestTimeout() != null) {
+            builder.timeout(config.requestTimeout());
+        }
+        return builder;
+    }
+
+    public HttpResponse<byte[]> send(HttpRequest request) throws IOException, InterruptedException {
+        CompletableFuture<HttpResponse<byte[]>> response = sendAsync(request);
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            response.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Envía la solicitud cuando el servidor tiene una conexión libre. Cancelar el resultado
+     * corta la consulta en curso o la saca de la espera.
+     */
+    public CompletableFuture<HttpResponse<byte[]>> sendAsync(HttpRequest request) {
+        URI uri = request.uri();
+        HostLimiter limiter = hosts.computeIfAbsent(uri.getHost() + ":" + uri.getPort(),
+                ignored -> new HostLimiter(config.maxConnectionsPerHost()));
+        CompletableFuture<HttpResponse<byte[]>> result = new CompletableFuture<>();
+        limiter.submit(() -> {
+            if (result.isDone()) {
+                return false;
+            }
+            CompletableFuture<HttpResponse<byte[]>> exchange =
+                    client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray());
+            exchange.whenComplete((response, error) -> {
+                limiter.release();
+                if (error != null) {
+                    result.completeExceptionally(error instanceof CancellationException ? error : unwrap(error));
+                } else {
+                    result.complete(response);
+                }
+            });
+            result.whenComplete((response, error) -> {
+                if (result.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+            return true;
+        });
+        return result;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error.getCause() != null && error instanceof java.util.concurrent.CompletionException
+                ? error.getCause() : error;
+    }
+
+    /**
+     * Turnos de conexión de un servidor: hasta {@code max} consultas en curso y el resto en
+     * una cola que avanza a medida que terminan. Cada consulta arranca con {@code start},
+     * que devuelve {@code false} si ya no hace falta enviarla (fue cancelada en la espera).
+     */
+    private static final class HostLimiter {
+        private final int max;
+        private final Deque<BooleanSupplier> waiting = new ArrayDeque<>();
+        private int active;
+
+        HostLimiter(int max) {
+            this.max = max;
+        }
+
+        void submit(BooleanSupplier start) {
+            synchronized (this) {
+                if (active >= max) {
+                    waiting.add(start);
+                    return;
+                }
+                active++;
+            }
+            if (!start.getAsBoolean()) {
+                release();
+            }
+        }
+
+        /**
+         * Pasa el turno a la primera consulta en espera que siga vigente. Las canceladas se
+         * descartan en este mismo ciclo, sin anidar llamadas por cada una.
+         */
+        void release() {
+            while (true) {
+                BooleanSupplier next;
+                synchronized (this) {
+                    next = waiting.poll();
+                    if (next == null) {
+                        active--;
+                        return;
+                    }
+                }
+                if (next.getAsBoolean()) {
+                    return;
+                }
+            }
+        }
+    }
+}
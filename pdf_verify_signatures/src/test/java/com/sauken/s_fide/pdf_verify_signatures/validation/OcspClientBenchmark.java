@@ -0,0 +1,235 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_verify_signatures.validation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Mil consultas OCSP contra un respondedor local que devuelve una respuesta ya firmada,
+ * con un HttpClient nuevo por consulta (como antes del cliente compartido) y con
+ * {@link SharedHttpClient}. Informa consultas por segundo, latencias p50/p99, conexiones
+ * TCP abiertas y el máximo de consultas simultáneas que vio el servidor.
+ *
+ * <p>No forma parte de la compilación normal; se ejecuta con
+ * {@code mvn -P benchmark test -pl pdf_verify_signatures}. La demora del respondedor se
+ * ajusta con {@code -Dbenchmark.delay} (milisegundos, por defecto 0).</p>
+ */
+class OcspClientBenchmark {
+    private static final int REQUESTS = 1000;
+    private static final int WARMUP = 50;
+    private static final int DELAY_MILLIS = Integer.getInteger("benchmark.delay", 0);
+
+    static {
+        // Sin TCP_NODELAY el servidor del JDK demora cada respuesta en una conexión
+        // reutilizada unos 40 ms (Nagle y ACK diferido); los respondedores reales lo activan.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private static byte[] request;
+    private static byte[] response;
+    private static final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private static final AtomicInteger active = new AtomicInteger();
+    private static final AtomicInteger maxActive = new AtomicInteger();
+
+    @FunctionalInterface
+    private interface Caller {
+        byte[] call(String url) throws Exception;
+    }
+
+    @BeforeAll
+    static void prepareResponse() throws Exception {
+        TestPki pki = TestPki.create("CA OCSP");
+        CertificateID id = new CertificateID(
+                new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+                new JcaX509CertificateHolder(pki.certificate()), BigInteger.valueOf(4242));
+        request = new OCSPReqBuilder().addRequest(id).build().getEncoded();
+        response = pki.ocspResponse(request, CertificateStatus.GOOD);
+    }
+
+    /**
+     * Respondedor nuevo para cada medición: las conexiones que dejan abiertas los clientes
+     * descartados llenan el cupo de conexiones inactivas del servidor del JDK, que entonces
+     * cierra las que el cliente compartido pensaba reutilizar.
+     */
+    private static HttpServer startResponder() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 200);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/ocsp", exchange -> {
+            try (exchange) {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                clientPorts.add(exchange.getRemoteAddress().getPort());
+                exchange.getRequestBody().readAllBytes();
+                if (DELAY_MILLIS > 0) {
+                    Thread.sleep(DELAY_MILLIS);
+                }
+                // Antes de responder: el cliente puede enviar la siguiente apenas recibe ésta.
+                active.decrementAndGet();
+                exchange.getResponseHeaders().add("Content-Type", "application/ocsp-response");
+                exchange.sendResponseHeaders(200, response.length);
+                exchange.getResponseBody().write(response);
+            } catch (InterruptedException e) {
+                active.decrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    @Test
+    void sharedClientAgainstClientPerRequest() throws Exception {
+        SharedHttpClient.Settings defaults = SharedHttpClient.Settings.defaults();
+        System.out.printf("respondedor local, demora %d ms, %d consultas%n", DELAY_MILLIS, REQUESTS);
+        for (int inFlight : new int[]{1, 64}) {
+            run("nuevo", inFlight, OcspClientBenchmark::newClientPerRequest);
+            SharedHttpClient shared = new SharedHttpClient(defaults);
+            run("compartido", inFlight, url -> sharedClient(shared, url));
+        }
+        SharedHttpClient wide = new SharedHttpClient(defaults.withMaxConnectionsPerHost(16));
+        run("compartido/16", 64, url -> sharedClient(wide, url));
+    }
+
+    private static void run(String mode, int inFlight, Caller caller) throws Exception {
+        HttpServer server = startResponder();
+        try {
+            measure(mode, inFlight, caller, "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                    + server.getAddress().getPort() + "/ocsp");
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void measure(String mode, int inFlight, Caller caller, String url) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            caller.call(url);
+        }
+        clientPorts.clear();
+        maxActive.set(0);
+
+        long[] latencies = new long[REQUESTS];
+        Semaphore permits = new Semaphore(inFlight);
+        long start = System.nanoTime();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>(REQUESTS);
+            for (int i = 0; i < REQUESTS; i++) {
+                int index = i;
+                permits.acquire();
+                futures.add(executor.submit(() -> {
+                    try {
+                        long begin = System.nanoTime();
+                        assertEquals(OCSPResp.SUCCESSFUL, new OCSPResp(caller.call(url)).getStatus());
+                        latencies[index] = System.nanoTime() - begin;
+                        return null;
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        double millis = (System.nanoTime() - start) / 1e6;
+
+        Arrays.sort(latencies);
+        System.out.printf("%-14s en vuelo %2d: %6.0f consultas/s, p50 %6.2f ms, p99 %6.2f ms, "
+                        + "conexiones %4d, simultáneas en el servidor %2d%n",
+                mode, inFlight, REQUESTS * 1000 / millis, latencies[REQUESTS / 2] / 1e6,
+                latencies[REQUESTS * 99 / 100] / 1e6, clientPorts.size(), maxActive.get());
+    }
+
+    private static byte[] newClientPerRequest(String url) throws Exception {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        HttpRequest httpRequest = HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(5))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(request))
+                .header("Content-Type", "application/ocsp-request")
+                .build();
+        return client.send(httpRequest, HttpResponse.BodyHandlers.ofByteArray()).body();
+    }
+
+    private static byte[] sharedClient(SharedHttpClient client, String url) throws Exception {
+        HttpRequest httpRequest = client.newRequest(url)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(request))
+                .header("Content-Type", "application/ocsp-request")
+                .build();
+        return client.send(httpRequest).body();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_verify_signatures.validation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.sauken.s_fide.pdf_verify_signatures.validation.RevocationValidator.RevocationAnswer;
+import com.sauken.s_fide.pdf_verify_signatures.validation.RevocationValidator.RevocationStatus;
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+
+class RevocationCacheTest {
+
+    @Test
+    void failedStaleRefreshBacksOff() throws Exception {
+        TestPki pki = TestPki.create("CA Cache");
+        X509Certificate certificate = pki.issue("Firmante", BigInteger.valueOf(42), null, null);
+        RevocationCache cache = new RevocationCache(10);
+        cache.setStaleWindow(Duration.ofHours(1));
+
+        // Respuesta ya vencida, dentro de la tolerancia; luego el servidor deja de responder.
+        AtomicInteger fetches = new AtomicInteger();
+        AtomicReference<RevocationAnswer> next = new AtomicReference<>(new RevocationAnswer(
+                RevocationStatus.GOOD, null, new Date(System.currentTimeMillis() - 1000)));
+        RevocationAnswer first = cache.lookup(certificate, () -> {
+            fetches.incrementAndGet();
+            return next.get();
+        });
+        assertEquals(RevocationStatus.GOOD, first.status());
+        next.set(RevocationAnswer.UNKNOWN);
+
+        // La primera consulta vencida lanza la renovación, que falla.
+        assertEquals(RevocationStatus.GOOD, cache.lookup(certificate, () -> {
+            fetches.incrementAndGet();
+            return next.get();
+        }).status());
+        awaitFetches(fetches, 2);
+        Thread.sleep(200);
+
+        // Durante la espera las consultas usan la respuesta anterior sin volver al servidor.
+        for (int i = 0; i < 20; i++) {
+            assertEquals(RevocationStatus.GOOD, cache.lookup(certificate, () -> {
+                fetches.incrementAndGet();
+                return next.get();
+            }).status());
+        }
+        Thread.sleep(200);
+        assertEquals(2, fetches.get());
+        assertEquals(21, cache.stats().staleHits());
+    }
+
+    private static void awaitFetches(AtomicInteger fetches, int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (fetches.get() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, fetches.get());
+    }
+}
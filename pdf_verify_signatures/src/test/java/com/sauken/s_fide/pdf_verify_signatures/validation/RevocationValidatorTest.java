@@ -0,0 +1,117 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.pdf_verify_signatures.validation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.sauken.s_fide.pdf_verify_signatures.validation.RevocationValidator.RevocationStatus;
+import com.sun.net.httpserver.HttpServer;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class RevocationValidatorTest {
+    private static final long DAY_MILLIS = 24 * TestPki.HOUR_MILLIS;
+
+    private final Date revocationTime = new Date(System.currentTimeMillis() - DAY_MILLIS);
+    private TestPki pki;
+    private HttpServer responder;
+
+    @BeforeEach
+    void startResponder() throws Exception {
+        pki = TestPki.create("CA OCSP");
+        responder = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        responder.createContext("/ocsp", exchange -> {
+            try (exchange) {
+                byte[] body;
+                try {
+                    body = pki.ocspResponse(exchange.getRequestBody().readAllBytes(),
+                            new RevokedStatus(revocationTime, CRLReason.keyCompromise));
+                } catch (Exception e) {
+                    exchange.sendResponseHeaders(500, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/ocsp-response");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        responder.start();
+    }
+
+    @AfterEach
+    void stopResponder() {
+        responder.stop(0);
+    }
+
+    @Test
+    void ocspRevocationOnlyAppliesAfterTheRevocationTime() throws Exception {
+        String url = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                + responder.getAddress().getPort() + "/ocsp";
+        X509Certificate certificate = pki.issue("Firmante Revocado", BigInteger.valueOf(5150), url, null);
+
+        Date before = new Date(revocationTime.getTime() - TestPki.HOUR_MILLIS);
+        Date after = new Date(revocationTime.getTime() + TestPki.HOUR_MILLIS);
+
+        // Firmado antes de la revocación: OCSP no permite afirmar que ya estuviera revocado.
+        assertEquals(RevocationStatus.UNKNOWN,
+                RevocationValidator.checkCertificateRevocation(certificate, pki.certificate(), before));
+        assertEquals(RevocationStatus.REVOKED,
+                RevocationValidator.checkCertificateRevocation(certificate, pki.certificate(), after));
+    }
+}
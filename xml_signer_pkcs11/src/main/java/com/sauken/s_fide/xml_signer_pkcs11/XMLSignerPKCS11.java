@@ -135,18 +135,41 @@ public class XMLSignerPKCS11 {
     private static void validateAndProcessStandardArguments(String[] args) throws Exception {
         String pkcs11LibraryPath = args[0];
         String password = args[1];
-        int slotNumber;
+        List<Integer> slotNumbers = new ArrayList<>();
         String xmlFile = args[3];
         String uri = args[4];
 
         try {
-            slotNumber = Integer.parseInt(args[2]);
+            for (String slot : args[2].split(",")) {
+                slotNumbers.add(Integer.parseInt(slot.trim()));
+            }
         } catch (NumberFormatException e) {
             throw new IllegalArgumentException("Error: El número de slot debe ser un valor numérico.");
         }
 
         validateFiles(pkcs11LibraryPath, xmlFile);
-        signXML(pkcs11LibraryPath, password, slotNumber, xmlFile, uri);
+        signWithAvailableSlot(pkcs11LibraryPath, password, slotNumbers, xmlFile, uri);
+    }
+
+    /**
+     * Firma con el primer slot de la lista cuyo token responde. Sólo se pasa al siguiente
+     * slot ante fallos de acceso al token; una contraseña incorrecta o un error del
+     * documento se informan de inmediato para no bloquear los demás tokens.
+     */
+    private static void signWithAvailableSlot(String pkcs11LibraryPath, String password, List<Integer> slotNumbers,
+                                              String xmlFile, String uri) {
+        for (int i = 0; i < slotNumbers.size(); i++) {
+            try {
+                signXML(pkcs11LibraryPath, password, slotNumbers.get(i), xmlFile, uri);
+                return;
+            } catch (TokenAccessException e) {
+                if (i == slotNumbers.size() - 1) {
+                    throw new IllegalArgumentException(e.getMessage());
+                }
+                errorStream.println("Advertencia: " + e.getMessage() + " en el slot " + slotNumbers.get(i)
+                        + ", se intenta con el slot " + slotNumbers.get(i + 1));
+            }
+        }
     }
 
     private static void validateFiles(String pkcs11LibraryPath, String xmlFile) throws IllegalArgumentException {
@@ -244,26 +267,32 @@ public class XMLSignerPKCS11 {
         return dbf;
     }
 
-    private static void signXML(String pkcs11LibraryPath, String password, int slotNumber, String xmlFile, String uri) {
+    private static void signXML(String pkcs11LibraryPath, String password, int slotNumber, String xmlFile, String uri)
+            throws TokenAccessException {
         Provider provider = null;
         try {
-            provider = configurePKCS11Provider(pkcs11LibraryPath, slotNumber);
-            Security.addProvider(provider);
-
-            KeyStore keyStore = loadKeyStore(password);
-            String alias = keyStore.aliases().nextElement();
-            PrivateKey privateKey = (PrivateKey) keyStore.getKey(alias, password.toCharArray());
-            X509Certificate cert = (X509Certificate) keyStore.getCertificate(alias);
+            PrivateKey privateKey;
+            X509Certificate cert;
+            try {
+                provider = configurePKCS11Provider(pkcs11LibraryPath, slotNumber);
+                Security.addProvider(provider);
+
+                KeyStore keyStore = loadKeyStore(password);
+                String alias = keyStore.aliases().nextElement();
+                privateKey = (PrivateKey) keyStore.getKey(alias, password.toCharArray());
+                cert = (X509Certificate) keyStore.getCertificate(alias);
+            } catch (ProviderException | KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException e) {
+                throw new TokenAccessException();
+            }
 
             processAndSignDocument(xmlFile, uri, privateKey, cert);
 
+        } catch (TokenAccessException e) {
+            throw e;
         } catch (Exception e) {
             String errorMessage = "Error en el proceso de firma";
             if (e instanceof IllegalArgumentException) {
-                errorMessage = e.getMessage();
-            } else if (e instanceof KeyStoreException || e instanceof NoSuchAlgorithmException ||
-                    e instanceof UnrecoverableKeyException) {
-                errorMessage = "Error en el acceso al token";
+                throw (IllegalArgumentException) e;
             } else if (e instanceof IOException) {
                 errorMessage = "Error de E/S: " + e.getMessage();
             }
@@ -456,4 +485,17 @@ public class XMLSignerPKCS11 {
         }
         return null;
     }
-}
\ No newline at end of file
+
+    /**
+     * Fallo al configurar el proveedor o al leer la clave del token, que permite probar con
+     * el siguiente slot.
+     */
+    private static final class TokenAccessException extends Exception {
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        TokenAccessException() {
+            super("Error en el acceso al token");
+        }
+    }
+}
@@ -52,6 +52,7 @@ package com.sauken.s_fide.xml_verify_signatures;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.security.*;
 import java.security.cert.*;
 import java.util.*;
@@ -64,7 +65,9 @@ import org.w3c.dom.*;
 import org.xml.sax.InputSource;
 import com.sauken.s_fide.xml_verify_signatures.utils.CertificateUtils;
 import com.sauken.s_fide.xml_verify_signatures.validation.RevocationValidator;
+import com.sauken.s_fide.xml_verify_signatures.validation.CrlStore;
 import com.sauken.s_fide.xml_verify_signatures.validation.NetworkUtils;
+import com.sauken.s_fide.xml_verify_signatures.validation.SharedHttpClient;
 import com.sauken.s_fide.xml_verify_signatures.timestamp.SignatureTimeExtractor;
 import com.sauken.s_fide.xml_verify_signatures.validation.RevocationValidator.RevocationResult;
 import com.sauken.s_fide.xml_verify_signatures.timestamp.SignatureTimeExtractor.SigningTimeResult;
@@ -131,17 +134,21 @@ public class XMLVerifySignatures {
             }
         }
 
-        if (args.length > 2) {
-            throw new IllegalArgumentException("Número incorrecto de argumentos.\n\n" + HELP_TEXT);
-        }
-
         String xmlFile = args[0];
 
-        if (args.length == 2) {
-            if (!"-simple".equalsIgnoreCase(args[1])) {
-                throw new IllegalArgumentException("Argumento no válido: " + args[1] + "\n\n" + HELP_TEXT);
+        for (int i = 1; i < args.length; i++) {
+            if ("-simple".equalsIgnoreCase(args[i])) {
+                simpleOutput = true;
+            } else if ("-proxy".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                SharedHttpClient.configure(SharedHttpClient.settings().withProxy(args[++i]));
+            } else if ("-conexiones-por-servidor".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                SharedHttpClient.configure(SharedHttpClient.settings()
+                        .withMaxConnectionsPerHost(Integer.parseInt(args[++i])));
+            } else if ("-crl-almacen".equalsIgnoreCase(args[i]) && i + 1 < args.length) {
+                CrlStore.configure(Paths.get(args[++i]));
+            } else {
+                throw new IllegalArgumentException("Argumento no válido: " + args[i] + "\n\n" + HELP_TEXT);
             }
-            simpleOutput = true;
         }
 
         try {
@@ -458,7 +465,7 @@ public class XMLVerifySignatures {
                 for (String crlUrl : crlUrls) {
                     try {
                         RevocationResult crlResult = RevocationValidator.checkCRLStatus(
-                                cert, crlUrl, signingTimeResult);
+                                cert, crlUrl, issuerCert, signingTimeResult);
 
                         if (crlResult.getStatus() != RevocationValidator.RevocationStatus.UNKNOWN) {
                             printRevocationResult(crlResult);
@@ -544,7 +551,7 @@ public class XMLVerifySignatures {
             for (String crlUrl : crlUrls) {
                 try {
                     RevocationResult result = RevocationValidator.checkCRLStatus(
-                            cert, crlUrl, signingTimeResult);
+                            cert, crlUrl, issuerCert, signingTimeResult);
                     if (result.getStatus() != RevocationValidator.RevocationStatus.UNKNOWN) {
                         printSimpleRevocationResult(result);
                         return result.getStatus() == RevocationValidator.RevocationStatus.REVOKED;
@@ -0,0 +1,611 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.xml_verify_signatures.validation;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.net.http.HttpResponse;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CRLException;
+import java.security.cert.CRLReason;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Almacén local de CRL. Cada CRL se descarga una vez por período de validez (hasta su
+ * nextUpdate, como mucho un día) y se guarda como un índice ordenado de números de serie
+ * revocados, que se consulta con búsqueda binaria sobre el archivo mapeado en memoria sin
+ * volver a interpretar la CRL. Sólo se guardan CRL emitidas y firmadas por el emisor del
+ * certificado consultado, y el índice queda asociado a la clave de ese emisor. Los
+ * archivos se reemplazan de forma atómica, de modo que el almacén se comparte entre
+ * ejecuciones y entre procesos. Si la CRL anuncia una delta (FreshestCRL), ésta se renueva
+ * por separado según su propio nextUpdate.
+ */
+public final class CrlStore {
+    private static final Logger LOGGER = Logger.getLogger(CrlStore.class.getName());
+
+    private static final int MAGIC = 0x53464352;
+    private static final int VERSION = 2;
+    private static final int REMOVE_FROM_CRL = CRLReason.REMOVE_FROM_CRL.ordinal();
+    /** Validez que se asume para una CRL sin nextUpdate, contada desde la descarga. */
+    private static final Duration DEFAULT_VALIDITY = Duration.ofHours(1);
+    /**
+     * Validez máxima de una CRL guardada, contada desde la descarga, aunque anuncie un
+     * nextUpdate posterior.
+     */
+    static final Duration MAX_VALIDITY = Duration.ofDays(1);
+
+    /**
+     * Resultado para un número de serie. {@code nextUpdate} es el vencimiento en el almacén
+     * de la CRL base o de la delta, el que llegue primero.
+     */
+    public record Lookup(boolean revoked, Date revocationDate, Date nextUpdate) {
+    }
+
+    public record Stats(long hits, long downloads, long deltaDownloads, long failures) {
+    }
+
+    private static Path directory = Paths.get(System.getProperty("user.home"), ".s-fide", "crl");
+    private static CrlStore instance;
+
+    private final Path dir;
+    private final Map<String, Index> indexes = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Index>> downloads = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong baseDownloads = new AtomicLong();
+    private final AtomicLong deltaDownloads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * Almacén independiente del compartido; el proceso usa {@link #get()}.
+     */
+    CrlStore(Path dir) {
+        this.dir = dir;
+    }
+
+    public static synchronized void configure(Path newDirectory) {
+        if (instance != null) {
+            throw new IllegalStateException("El almacén de CRL ya está en uso");
+        }
+        directory = newDirectory;
+    }
+
+    public static synchronized CrlStore get() {
+        if (instance == null) {
+            instance = new CrlStore(directory);
+        }
+        return instance;
+    }
+
+    public Stats stats() {
+        return new Stats(hits.get(), baseDownloads.get(), deltaDownloads.get(), failures.get());
+    }
+
+    /**
+     * Respuesta tomada sólo del almacén, o {@code null} si la CRL (o su delta) del emisor
+     * indicado no está o está vencida.
+     */
+    public Lookup cached(String url, BigInteger serial, X509Certificate issuer) {
+        long now = System.currentTimeMillis();
+        byte[] issuerKey = issuerKey(issuer);
+        Index base = current(url, issuerKey, now);
+        if (base == null || !base.fresh(now)) {
+            return null;
+        }
+        Index delta = null;
+        if (base.deltaUrl() != null) {
+            delta = current(base.deltaUrl(), issuerKey, now);
+            if (delta == null || !delta.fresh(now)) {
+                return null;
+            }
+        }
+        hits.incrementAndGet();
+        return answer(base, delta, serial);
+    }
+
+    /**
+     * Respuesta del almacén, descargando antes la CRL base y la delta que estén vencidas.
+     * Una CRL descargada que no esté emitida y firmada por {@code issuer} se rechaza y no
+     * se guarda. Las descargas de una misma URL se comparten entre consultas simultáneas y
+     * no se interrumpen al cancelar el resultado, para que la CRL quede guardada igual.
+     */
+    public CompletableFuture<Lookup> fetch(String url, BigInteger serial, X509Certificate issuer) {
+        Lookup stored = cached(url, serial, issuer);
+        if (stored != null) {
+            return CompletableFuture.completedFuture(stored);
+        }
+        byte[] issuerKey = issuerKey(issuer);
+        long now = System.currentTimeMillis();
+        Index current = current(url, issuerKey, now);
+        CompletableFuture<Index> base = current != null && current.fresh(now)
+                ? CompletableFuture.completedFuture(current)
+                : refresh(url, issuer, issuerKey, false);
+        return base.thenCompose(index -> {
+            if (index.deltaUrl() == null) {
+                return CompletableFuture.completedFuture(answer(index, null, serial));
+            }
+            Index delta = current(index.deltaUrl(), issuerKey, System.currentTimeMillis());
+            CompletableFuture<Index> fresh = delta != null && delta.fresh(System.currentTimeMillis())
+                    ? CompletableFuture.completedFuture(delta)
+                    : refresh(index.deltaUrl(), issuer, issuerKey, true).exceptionally(e -> {
+                        LOGGER.fine("Sin CRL delta " + index.deltaUrl() + ": " + e.getMessage());
+                        return null;
+                    });
+            return fresh.thenApply(d -> answer(index, d, serial));
+        });
+    }
+
+    private Lookup answer(Index base, Index delta, BigInteger serial) {
+        Date nextUpdate = base.expiryDate();
+        if (delta != null) {
+            if (delta.baseCrlNumber() != null && base.crlNumber() != null
+                    && delta.baseCrlNumber().compareTo(base.crlNumber()) > 0) {
+                LOGGER.fine("La CRL delta " + delta.url() + " corresponde a una base más nueva; se ignora");
+                delta = null;
+            } else {
+                Date deltaNext = delta.expiryDate();
+                if (deltaNext.before(nextUpdate)) {
+                    nextUpdate = deltaNext;
+                }
+                int entry = delta.find(serial);
+                if (entry >= 0) {
+                    return delta.reason(entry) == REMOVE_FROM_CRL
+                            ? new Lookup(false, null, nextUpdate)
+                            : new Lookup(true, new Date(delta.revocationDate(entry)), nextUpdate);
+                }
+            }
+        }
+        int entry = base.find(serial);
+        return entry >= 0
+                ? new Lookup(true, new Date(base.revocationDate(entry)), nextUpdate)
+                : new Lookup(false, null, nextUpdate);
+    }
+
+    /**
+     * Índice en memoria, o el del disco si aquél no está vigente (otro proceso pudo haberlo
+     * renovado).
+     */
+    private Index current(String url, byte[] issuerKey, long now) {
+        String key = key(url, issuerKey);
+        Index index = indexes.get(key);
+        if (index != null && index.fresh(now)) {
+            return index;
+        }
+        Path file = fileFor(key);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Index stored = Index.read(url, issuerKey,
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            if (stored != null && (index == null || stored.fetchedAt() > index.fetchedAt())) {
+                indexes.put(key, stored);
+                return stored;
+            }
+        } catch (NoSuchFileException e) {
+            // Todavía no se descargó
+        } catch (IOException | RuntimeException e) {
+            LOGGER.fine("Índice de CRL ilegible " + file + ": " + e.getMessage());
+        }
+        return index;
+    }
+
+    private CompletableFuture<Index> refresh(String url, X509Certificate issuer, byte[] issuerKey, boolean delta) {
+        String key = key(url, issuerKey);
+        CompletableFuture<Index> created = new CompletableFuture<>();
+        CompletableFuture<Index> download = downloads.putIfAbsent(key, created);
+        if (download == null) {
+            download = created;
+            created.whenComplete((index, error) -> downloads.remove(key, created));
+            Index current = current(url, issuerKey, System.currentTimeMillis());
+            if (current != null && current.fresh(System.currentTimeMillis())) {
+                // Otra consulta la renovó mientras tanto
+                created.complete(current);
+            } else {
+                (delta ? deltaDownloads : baseDownloads).incrementAndGet();
+                try {
+                    SharedHttpClient client = SharedHttpClient.get();
+                    client.sendAsync(client.newRequest(url).GET().build())
+                            .thenApply(response -> store(url, issuer, issuerKey, response))
+                            .whenComplete((index, error) -> {
+                                if (error != null) {
+                                    failures.incrementAndGet();
+                                    created.completeExceptionally(error);
+                                } else {
+                                    created.complete(index);
+                                }
+                            });
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                    created.completeExceptionally(e);
+                }
+            }
+        }
+        return download.thenApply(index -> index);
+    }
+
+    private Index store(String url, X509Certificate issuer, byte[] issuerKey, HttpResponse<byte[]> response) {
+        if (response.statusCode() != 200) {
+            throw new UncheckedIOException(new IOException("HTTP " + response.statusCode() + " al descargar " + url));
+        }
+        X509CRL crl;
+        try {
+            crl = (X509CRL) CertificateFactory.getInstance("X.509")
+                    .generateCRL(new ByteArrayInputStream(response.body()));
+        } catch (CertificateException | CRLException e) {
+            throw new IllegalStateException("CRL no válida en " + url + ": " + e.getMessage(), e);
+        }
+        verifyIssuer(url, crl, issuer);
+
+        String key = key(url, issuerKey);
+        ByteBuffer encoded = Index.encode(url, issuerKey, crl, System.currentTimeMillis());
+        Index index = Index.read(url, issuerKey, encoded);
+        try {
+            Files.createDirectories(dir);
+            Path file = fileFor(key);
+            Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temp, encoded.array());
+                try {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                Index mapped = Index.read(url, issuerKey,
+                        channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                if (mapped != null) {
+                    index = mapped;
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warning("No se pudo guardar la CRL de " + url + " en " + dir + ": " + e.getMessage());
+        }
+        indexes.put(key, index);
+        return index;
+    }
+
+    /**
+     * Rechaza la CRL si no la emitió el emisor del certificado o si su firma no se verifica
+     * con la clave de ese emisor: una respuesta falsa quedaría guardada para las ejecuciones
+     * siguientes y para los demás procesos.
+     */
+    private static void verifyIssuer(String url, X509CRL crl, X509Certificate issuer) {
+        if (!crl.getIssuerX500Principal().equals(issuer.getSubjectX500Principal())) {
+            throw new IllegalStateException("La CRL de " + url + " fue emitida por "
+                    + crl.getIssuerX500Principal().getName() + " y no por "
+                    + issuer.getSubjectX500Principal().getName());
+        }
+        try {
+            crl.verify(issuer.getPublicKey());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("La firma de la CRL de " + url + " no es válida: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Huella de la clave pública del emisor: el mismo nombre con otra clave es otro emisor.
+     */
+    private static byte[] issuerKey(X509Certificate issuer) {
+        return sha256(issuer.getPublicKey().getEncoded());
+    }
+
+    private static String key(String url, byte[] issuerKey) {
+        return url + "#" + HexFormat.of().formatHex(issuerKey);
+    }
+
+    private Path fileFor(String key) {
+        return dir.resolve(HexFormat.of().formatHex(sha256(key.getBytes(StandardCharsets.UTF_8))) + ".idx");
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Índice de una CRL. Formato (big-endian): encabezado con la URL, la huella de la clave
+     * del emisor, fechas, número de CRL, número de la base si es delta y URL de la delta;
+     * luego las entradas ordenadas por número de serie, cada una con el serie en
+     * complemento a dos extendido a un ancho fijo, la fecha de revocación y el motivo.
+     */
+    record Index(String url, long fetchedAt, long nextUpdate, BigInteger crlNumber,
+                 BigInteger baseCrlNumber, String deltaUrl, int width, int count, int entriesOffset,
+                 ByteBuffer buffer) {
+
+        /**
+         * Vencimiento en el almacén: el nextUpdate de la CRL, limitado a
+         * {@link #MAX_VALIDITY} desde la descarga.
+         */
+        long expiry() {
+            if (nextUpdate < 0) {
+                return fetchedAt + DEFAULT_VALIDITY.toMillis();
+            }
+            return Math.min(nextUpdate, fetchedAt + MAX_VALIDITY.toMillis());
+        }
+
+        boolean fresh(long now) {
+            return now < expiry();
+        }
+
+        Date expiryDate() {
+            return new Date(expiry());
+        }
+
+        private int entrySize() {
+            return width + Long.BYTES + 1;
+        }
+
+        int find(BigInteger serial) {
+            byte[] key = serial.toByteArray();
+            if (key.length > width) {
+                return -1;
+            }
+            byte[] padded = new byte[width];
+            byte pad = serial.signum() < 0 ? (byte) 0xFF : 0;
+            int offset = width - key.length;
+            for (int i = 0; i < offset; i++) {
+                padded[i] = pad;
+            }
+            System.arraycopy(key, 0, padded, offset, key.length);
+
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(mid, padded);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        private int compare(int entry, byte[] key) {
+            int position = entriesOffset + entry * entrySize();
+            for (int i = 0; i < width; i++) {
+                int a = buffer.get(position + i);
+                int b = key[i];
+                if (i > 0) {
+                    a &= 0xFF;
+                    b &= 0xFF;
+                }
+                if (a != b) {
+                    return Integer.compare(a, b);
+                }
+            }
+            return 0;
+        }
+
+        long revocationDate(int entry) {
+            return buffer.getLong(entriesOffset + entry * entrySize() + width);
+        }
+
+        int reason(int entry) {
+            return buffer.get(entriesOffset + entry * entrySize() + width + Long.BYTES);
+        }
+
+        /**
+         * Interpreta el índice, o devuelve {@code null} si no es de esta URL y este emisor o
+         * si está incompleto (por ejemplo, un archivo truncado).
+         */
+        static Index read(String url, byte[] issuerKey, ByteBuffer buffer) {
+            ByteBuffer in = buffer.duplicate();
+            try {
+                if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                    return null;
+                }
+                String storedUrl = new String(bytes(in), StandardCharsets.UTF_8);
+                if (!storedUrl.equals(url) || !Arrays.equals(bytes(in), issuerKey)) {
+                    return null;
+                }
+                long fetchedAt = in.getLong();
+                long nextUpdate = in.getLong();
+                BigInteger crlNumber = number(bytes(in));
+                BigInteger baseCrlNumber = number(bytes(in));
+                byte[] delta = bytes(in);
+                String deltaUrl = delta.length == 0 ? null : new String(delta, StandardCharsets.UTF_8);
+                int width = in.getInt();
+                int count = in.getInt();
+                int entriesOffset = in.position();
+                if (width < 1 || count < 0 || (long) count * (width + Long.BYTES + 1) != in.remaining()) {
+                    return null;
+                }
+                return new Index(url, fetchedAt, nextUpdate, crlNumber, baseCrlNumber, deltaUrl, width, count,
+                        entriesOffset, buffer);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        static ByteBuffer encode(String url, byte[] issuerKey, X509CRL crl, long fetchedAt) {
+            Set<? extends X509CRLEntry> revoked = crl.getRevokedCertificates();
+            List<X509CRLEntry> entries = revoked == null ? new ArrayList<>() : new ArrayList<>(revoked);
+            entries.sort(Comparator.comparing(X509CRLEntry::getSerialNumber));
+            int width = 1;
+            for (X509CRLEntry entry : entries) {
+                width = Math.max(width, entry.getSerialNumber().toByteArray().length);
+            }
+
+            byte[] urlBytes = url.getBytes(StandardCharsets.UTF_8);
+            byte[] crlNumber = extensionNumber(crl, Extension.cRLNumber.getId());
+            byte[] baseCrlNumber = extensionNumber(crl, Extension.deltaCRLIndicator.getId());
+            String deltaUrl = deltaUrl(crl);
+            byte[] deltaBytes = deltaUrl == null ? new byte[0] : deltaUrl.getBytes(StandardCharsets.UTF_8);
+
+            int header = 4 + 4 + 4 + urlBytes.length + 4 + issuerKey.length + 8 + 8 + 4 + crlNumber.length
+                    + 4 + baseCrlNumber.length + 4 + deltaBytes.length + 4 + 4;
+            ByteBuffer out = ByteBuffer.allocate(header + entries.size() * (width + Long.BYTES + 1));
+            out.putInt(MAGIC).putInt(VERSION);
+            out.putInt(urlBytes.length).put(urlBytes);
+            out.putInt(issuerKey.length).put(issuerKey);
+            out.putLong(fetchedAt).putLong(crl.getNextUpdate() != null ? crl.getNextUpdate().getTime() : -1);
+            out.putInt(crlNumber.length).put(crlNumber);
+            out.putInt(baseCrlNumber.length).put(baseCrlNumber);
+            out.putInt(deltaBytes.length).put(deltaBytes);
+            out.putInt(width).putInt(entries.size());
+            for (X509CRLEntry entry : entries) {
+                BigInteger serial = entry.getSerialNumber();
+                byte[] raw = serial.toByteArray();
+                byte pad = serial.signum() < 0 ? (byte) 0xFF : 0;
+                for (int i = raw.length; i < width; i++) {
+                    out.put(pad);
+                }
+                out.put(raw);
+                out.putLong(entry.getRevocationDate().getTime());
+                CRLReason reason = entry.getRevocationReason();
+                out.put((byte) (reason != null ? reason.ordinal() : CRLReason.UNSPECIFIED.ordinal()));
+            }
+            return out.flip();
+        }
+
+        private static byte[] bytes(ByteBuffer in) {
+            int length = in.getInt();
+            if (length < 0 || length > in.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            byte[] value = new byte[length];
+            in.get(value);
+            return value;
+        }
+
+        private static BigInteger number(byte[] value) {
+            return value.length == 0 ? null : new BigInteger(value);
+        }
+
+        private static byte[] extensionNumber(X509CRL crl, String oid) {
+            byte[] extension = crl.getExtensionValue(oid);
+            if (extension == null) {
+                return new byte[0];
+            }
+            try {
+                return ASN1Integer.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extension))
+                        .getValue().toByteArray();
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.fine("Extensión " + oid + " ilegible: " + e.getMessage());
+                return new byte[0];
+            }
+        }
+
+        private static String deltaUrl(X509CRL crl) {
+            byte[] extension = crl.getExtensionValue(Extension.freshestCRL.getId());
+            if (extension == null) {
+                return null;
+            }
+            try {
+                CRLDistPoint points = CRLDistPoint.getInstance(JcaX509ExtensionUtils.parseExtensionValue(extension));
+                for (DistributionPoint point : points.getDistributionPoints()) {
+                    DistributionPointName name = point.getDistributionPoint();
+                    if (name == null || name.getType() != DistributionPointName.FULL_NAME) {
+                        continue;
+                    }
+                    for (GeneralName generalName : GeneralNames.getInstance(name.getName()).getNames()) {
+                        if (generalName.getTagNo() == GeneralName.uniformResourceIdentifier) {
+                            String url = generalName.getName().toString();
+                            if (url.startsWith("http")) {
+                                return url;
+                            }
+                        }
+                    }
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.fine("Extensión FreshestCRL ilegible: " + e.getMessage());
+            }
+            return null;
+        }
+    }
+}
@@ -57,12 +57,11 @@ import com.sauken.s_fide.xml_verify_signatures.timestamp.SignatureTimeExtractor.
 
 import java.io.*;
 import java.net.*;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.security.cert.*;
-import java.time.Duration;
 import java.util.Date;
+import java.util.concurrent.ExecutionException;
 
 public class RevocationValidator {
     public enum RevocationStatus {
@@ -192,76 +191,61 @@ public class RevocationValidator {
     }
 
     private static byte[] sendOCSPRequest(String ocspUrl, byte[] ocspReqData) throws IOException, InterruptedException {
-        HttpClient client = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(5))
-                .build();
-
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(ocspUrl))
+        HttpRequest request = SharedHttpClient.get().newRequest(ocspUrl)
                 .header("Content-Type", "application/ocsp-request")
                 .header("Accept", "application/ocsp-response")
                 .POST(HttpRequest.BodyPublishers.ofByteArray(ocspReqData))
                 .build();
 
-        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        HttpResponse<byte[]> response = SharedHttpClient.get().send(request);
         return response.body();
     }
 
     public static RevocationResult checkCRLStatus(X509Certificate cert, String crlUrl,
-                                                  SigningTimeResult signingTimeResult) throws Exception {
+                                                  X509Certificate issuerCert, SigningTimeResult signingTimeResult) throws Exception {
+
+        // Sin el emisor no se puede verificar la firma de la CRL
+        if (issuerCert == null) {
+            return new RevocationResult(RevocationStatus.UNKNOWN, "CRL",
+                    "No se pudo obtener el certificado emisor", false, null, null);
+        }
 
         String cleanUrl = cleanUrl(crlUrl);
 
+        CrlStore.Lookup lookup;
         try {
-            HttpClient client = HttpClient.newBuilder()
-                    .connectTimeout(Duration.ofSeconds(5))
-                    .build();
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(cleanUrl))
-                    .GET()
-                    .build();
-
-            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
-
-            try (InputStream in = response.body()) {
-                CertificateFactory cf = CertificateFactory.getInstance("X.509");
-                X509CRL crl = (X509CRL) cf.generateCRL(in);
-
-                X509CRLEntry revokedCertEntry = crl.getRevokedCertificate(cert.getSerialNumber());
-                Date signingTime = signingTimeResult.getDate();
-
-                if (revokedCertEntry != null) {
-                    Date revocationDate = revokedCertEntry.getRevocationDate();
-
-                    // Si la firma se realizó antes de la revocación, es válida
-                    if (signingTime.before(revocationDate)) {
-                        return new RevocationResult(RevocationStatus.GOOD, "CRL",
-                                "Certificado revocado posteriormente a la firma",
-                                signingTimeResult.isUsingCurrentTime(),
-                                revocationDate, signingTime);
-                    }
-
-                    // La firma se realizó en o después de la revocación
-                    String message = signingTimeResult.isUsingCurrentTime() ?
-                            "Validación realizada con fecha actual debido a: " + signingTimeResult.getErrorMessage() :
-                            "La firma se realizó cuando el certificado ya estaba revocado";
-
-                    return new RevocationResult(RevocationStatus.REVOKED, "CRL", message,
-                            signingTimeResult.isUsingCurrentTime(), revocationDate, signingTime);
-                }
+            lookup = CrlStore.get().fetch(cleanUrl, cert.getSerialNumber(), issuerCert).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            String prefix = cause instanceof IllegalStateException ? "Error procesando CRL: " : "Error descargando CRL: ";
+            return new RevocationResult(RevocationStatus.UNKNOWN, "CRL",
+                    prefix + cause.getMessage(), false, null, signingTimeResult.getDate());
+        }
 
-                // Certificado no revocado
-                return new RevocationResult(RevocationStatus.GOOD, "CRL", null,
-                        signingTimeResult.isUsingCurrentTime(), null, signingTime);
+        Date signingTime = signingTimeResult.getDate();
 
-            } catch (Exception e) {
-                return new RevocationResult(RevocationStatus.UNKNOWN, "CRL",
-                        "Error procesando CRL: " + e.getMessage(), false, null, signingTimeResult.getDate());
+        if (lookup.revoked()) {
+            Date revocationDate = lookup.revocationDate();
+
+            // Si la firma se realizó antes de la revocación, es válida
+            if (signingTime.before(revocationDate)) {
+                return new RevocationResult(RevocationStatus.GOOD, "CRL",
+                        "Certificado revocado posteriormente a la firma",
+                        signingTimeResult.isUsingCurrentTime(),
+                        revocationDate, signingTime);
             }
-        } catch (Exception e) {
-            return new RevocationResult(RevocationStatus.UNKNOWN, "CRL",
-                    "Error descargando CRL: " + e.getMessage(), false, null, signingTimeResult.getDate());
+
+            // La firma se realizó en o después de la revocación
+            String message = signingTimeResult.isUsingCurrentTime() ?
+                    "Validación realizada con fecha actual debido a: " + signingTimeResult.getErrorMessage() :
+                    "La firma se realizó cuando el certificado ya estaba revocado";
+
+            return new RevocationResult(RevocationStatus.REVOKED, "CRL", message,
+                    signingTimeResult.isUsingCurrentTime(), revocationDate, signingTime);
         }
+
+        // Certificado no revocado
+        return new RevocationResult(RevocationStatus.GOOD, "CRL", null,
+                signingTimeResult.isUsingCurrentTime(), null, signingTime);
     }
 }
\ No newline at end of file
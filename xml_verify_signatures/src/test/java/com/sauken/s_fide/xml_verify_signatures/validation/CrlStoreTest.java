@@ -0,0 +1,309 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.xml_verify_signatures.validation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CrlStoreTest {
+    private static final long DAY_MILLIS = 24 * TestPki.HOUR_MILLIS;
+    private static final BigInteger MAX_SERIAL = BigInteger.ONE.shiftLeft(159).subtract(BigInteger.ONE);
+    private static final BigInteger MIN_SERIAL = BigInteger.ONE.shiftLeft(159).negate();
+    private static final byte[] ISSUER_KEY = new byte[32];
+
+    @TempDir
+    Path dir;
+
+    private final Map<String, byte[]> published = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+    private TestPki pki;
+    private HttpServer responder;
+
+    @BeforeEach
+    void startResponder() throws Exception {
+        pki = TestPki.create("CA CRL");
+        responder = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        responder.createContext("/", exchange -> {
+            try (exchange) {
+                String path = exchange.getRequestURI().getPath();
+                requests.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+                byte[] body = published.get(path);
+                if (body == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+                exchange.getResponseHeaders().add("Content-Type", "application/pkix-crl");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        responder.start();
+    }
+
+    @AfterEach
+    void stopResponder() {
+        responder.stop(0);
+    }
+
+    @Test
+    void findsSerialsOfEveryWidthAndSign() throws Exception {
+        List<BigInteger> revoked = Stream.of(-300, -129, -128, -1, 1, 127, 128, 255)
+                .map(BigInteger::valueOf).collect(Collectors.toList());
+        revoked.add(MAX_SERIAL);
+        revoked.add(MIN_SERIAL);
+        X509v2CRLBuilder builder = pki.crl(new Date(System.currentTimeMillis() + DAY_MILLIS));
+        for (BigInteger serial : revoked) {
+            builder.addCRLEntry(serial, revocationDate(revoked.indexOf(serial)), CRLReason.keyCompromise);
+        }
+        CrlStore.Index index = encode(pki.sign(builder));
+
+        // El ancho lo fija el serie más largo: 20 octetos, el máximo de RFC 5280.
+        assertEquals(20, index.width());
+        for (BigInteger serial : revoked) {
+            int entry = index.find(serial);
+            assertTrue(entry >= 0, "No se encontró el serie " + serial);
+            assertEquals(revocationDate(revoked.indexOf(serial)).getTime(), index.revocationDate(entry));
+        }
+        for (BigInteger serial : List.of(BigInteger.ZERO, BigInteger.TWO, BigInteger.valueOf(-2),
+                BigInteger.valueOf(256), BigInteger.valueOf(-301), MAX_SERIAL.subtract(BigInteger.ONE),
+                MIN_SERIAL.add(BigInteger.ONE), MAX_SERIAL.add(BigInteger.ONE), MIN_SERIAL.subtract(BigInteger.ONE))) {
+            assertEquals(-1, index.find(serial), "Se encontró el serie " + serial);
+        }
+    }
+
+    @Test
+    void findsShortSerialsWithoutPadding() throws Exception {
+        X509v2CRLBuilder builder = pki.crl(new Date(System.currentTimeMillis() + DAY_MILLIS));
+        for (int serial : new int[]{-128, -5, 3, 127}) {
+            builder.addCRLEntry(BigInteger.valueOf(serial), new Date(), CRLReason.keyCompromise);
+        }
+        CrlStore.Index index = encode(pki.sign(builder));
+
+        assertEquals(1, index.width());
+        assertTrue(index.find(BigInteger.valueOf(-128)) >= 0);
+        assertTrue(index.find(BigInteger.valueOf(-5)) >= 0);
+        assertTrue(index.find(BigInteger.valueOf(3)) >= 0);
+        assertTrue(index.find(BigInteger.valueOf(127)) >= 0);
+        // Series más anchos que el índice no pueden estar en la CRL.
+        assertEquals(-1, index.find(BigInteger.valueOf(128)));
+        assertEquals(-1, index.find(BigInteger.valueOf(-129)));
+    }
+
+    @Test
+    void truncatedIndexIsIgnored() throws Exception {
+        X509v2CRLBuilder builder = pki.crl(new Date(System.currentTimeMillis() + DAY_MILLIS));
+        builder.addCRLEntry(BigInteger.valueOf(77), new Date(), CRLReason.keyCompromise);
+        ByteBuffer encoded = CrlStore.Index.encode("http://crl.test/ca.crl", ISSUER_KEY, parse(pki.sign(builder)),
+                System.currentTimeMillis());
+
+        for (int length = 0; length < encoded.limit(); length++) {
+            assertNull(CrlStore.Index.read("http://crl.test/ca.crl", ISSUER_KEY, encoded.duplicate().limit(length)),
+                    "Se aceptó un índice de " + length + " bytes");
+        }
+        assertNull(CrlStore.Index.read("http://crl.test/ca.crl", new byte[31], encoded));
+        assertTrue(CrlStore.Index.read("http://crl.test/ca.crl", ISSUER_KEY, encoded).find(BigInteger.valueOf(77)) >= 0);
+    }
+
+    @Test
+    void tornFileIsDownloadedAgain() throws Exception {
+        X509v2CRLBuilder builder = pki.crl(new Date(System.currentTimeMillis() + DAY_MILLIS));
+        builder.addCRLEntry(BigInteger.valueOf(77), new Date(), CRLReason.keyCompromise);
+        published.put("/ca.crl", pki.sign(builder));
+
+        assertTrue(new CrlStore(dir).fetch(url("/ca.crl"), BigInteger.valueOf(77), pki.certificate()).get().revoked());
+        Path file;
+        try (Stream<Path> files = Files.list(dir)) {
+            file = files.filter(f -> f.toString().endsWith(".idx")).findFirst().orElseThrow();
+        }
+        byte[] content = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(content, content.length - 3));
+
+        CrlStore store = new CrlStore(dir);
+        assertNull(store.cached(url("/ca.crl"), BigInteger.valueOf(77), pki.certificate()));
+        assertTrue(store.fetch(url("/ca.crl"), BigInteger.valueOf(77), pki.certificate()).get().revoked());
+        assertEquals(2, requests.get("/ca.crl").get());
+    }
+
+    @Test
+    void deltaRemovesAndAddsEntries() throws Exception {
+        X509v2CRLBuilder base = pki.crl(new Date(System.currentTimeMillis() + DAY_MILLIS));
+        base.addExtension(Extension.cRLNumber, false, new ASN1Integer(10));
+        base.addExtension(Extension.freshestCRL, false, distributionPoint(url("/delta.crl")));
+        base.addCRLEntry(BigInteger.valueOf(1), new Date(), CRLReason.certificateHold);
+        base.addCRLEntry(BigInteger.valueOf(2), new Date(), CRLReason.keyCompromise);
+        published.put("/base.crl", pki.sign(base));
+
+        X509v2CRLBuilder delta = pki.crl(new Date(System.currentTimeMillis() + TestPki.HOUR_MILLIS));
+        delta.addExtension(Extension.cRLNumber, false, new ASN1Integer(11));
+        delta.addExtension(Extension.deltaCRLIndicator, true, new ASN1Integer(10));
+        delta.addCRLEntry(BigInteger.valueOf(1), new Date(), CRLReason.removeFromCRL);
+        delta.addCRLEntry(BigInteger.valueOf(3), new Date(), CRLReason.keyCompromise);
+        published.put("/delta.crl", pki.sign(delta));
+
+        CrlStore store = new CrlStore(dir);
+        assertFalse(store.fetch(url("/base.crl"), BigInteger.valueOf(1), pki.certificate()).get().revoked());
+        assertTrue(store.fetch(url("/base.crl"), BigInteger.valueOf(2), pki.certificate()).get().revoked());
+        assertTrue(store.fetch(url("/base.crl"), BigInteger.valueOf(3), pki.certificate()).get().revoked());
+        assertFalse(store.fetch(url("/base.crl"), BigInteger.valueOf(4), pki.certificate()).get().revoked());
+        assertEquals(1, requests.get("/base.crl").get());
+        assertEquals(1, requests.get("/delta.crl").get());
+    }
+
+    @Test
+    void crlSignedByAnotherKeyIsRejectedAndNotStored() throws Exception {
+        // Mismo nombre que la CA verdadera, otra clave.
+        TestPki impostor = TestPki.create("CA CRL");
+        X509v2CRLBuilder builder = impostor.crl(new Date(System.currentTimeMillis() + 365 * DAY_MILLIS));
+        published.put("/ca.crl", impostor.sign(builder));
+
+        assertRejected(new CrlStore(dir), url("/ca.crl"));
+    }
+
+    @Test
+    void crlFromAnotherIssuerIsRejectedAndNotStored() throws Exception {
+        TestPki other = TestPki.create("Otra CA");
+        published.put("/ca.crl", other.sign(other.crl(new Date(System.currentTimeMillis() + DAY_MILLIS))));
+
+        assertRejected(new CrlStore(dir), url("/ca.crl"));
+    }
+
+    @Test
+    void storedValidityIsCapped() throws Exception {
+        long start = System.currentTimeMillis();
+        published.put("/ca.crl", pki.sign(pki.crl(new Date(start + 365 * DAY_MILLIS))));
+
+        CrlStore.Lookup lookup = new CrlStore(dir)
+                .fetch(url("/ca.crl"), BigInteger.TEN, pki.certificate()).get();
+        assertTrue(lookup.nextUpdate().getTime() <= System.currentTimeMillis() + CrlStore.MAX_VALIDITY.toMillis());
+
+        CrlStore.Index index = encode(pki.sign(pki.crl(new Date(start + 365 * DAY_MILLIS))), start);
+        assertTrue(index.fresh(start + CrlStore.MAX_VALIDITY.toMillis() - 1));
+        assertFalse(index.fresh(start + CrlStore.MAX_VALIDITY.toMillis()));
+    }
+
+    private void assertRejected(CrlStore store, String url) throws IOException {
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> store.fetch(url, BigInteger.TEN, pki.certificate()).get());
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+        assertNull(store.cached(url, BigInteger.TEN, pki.certificate()));
+        if (Files.exists(dir)) {
+            try (Stream<Path> files = Files.list(dir)) {
+                assertEquals(0, files.count(), "La CRL rechazada quedó guardada");
+            }
+        }
+    }
+
+    /** Las fechas de la CRL tienen precisión de segundos. */
+    private static Date revocationDate(int position) {
+        return new Date(1_700_000_000_000L + position * 1000L);
+    }
+
+    private String url(String path) {
+        return "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                + responder.getAddress().getPort() + path;
+    }
+
+    private static CrlStore.Index encode(byte[] crl) throws Exception {
+        return encode(crl, System.currentTimeMillis());
+    }
+
+    private static CrlStore.Index encode(byte[] crl, long fetchedAt) throws Exception {
+        return CrlStore.Index.read("http://crl.test/ca.crl", ISSUER_KEY,
+                CrlStore.Index.encode("http://crl.test/ca.crl", ISSUER_KEY, parse(crl), fetchedAt));
+    }
+
+    private static X509CRL parse(byte[] crl) throws Exception {
+        return (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(new ByteArrayInputStream(crl));
+    }
+
+    private static CRLDistPoint distributionPoint(String url) {
+        return new CRLDistPoint(new DistributionPoint[]{new DistributionPoint(new DistributionPointName(
+                new GeneralNames(new GeneralName(GeneralName.uniformResourceIdentifier, url))), null, null)});
+    }
+}
@@ -0,0 +1,219 @@
+/*
+  Derechos Reservados © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  Este es un Software Libre; como tal redistribuirlo y/o modificarlo está
+  permitido, siempre y cuando se haga bajo los términos y condiciones de la
+  Licencia Pública General GNU publicada por la Free Software Foundation,
+  ya sea en su versión 2 ó cualquier otra de las posteriores a la misma.
+
+  Este “Programa” se distribuye con la intención de que sea útil, sin
+  embargo carece de garantía, ni siquiera tiene la garantía implícita de
+  tipo comercial o inherente al propósito del mismo “Programa”. Ver la
+  Licencia Pública General GNU para más detalles.
+
+  Se debe haber recibido una copia de la Licencia Pública General GNU con
+  este “Programa”, si este no fue el caso, favor de escribir a la Free
+  Software Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+  MA 02110-1301 USA.
+
+  Autores: Juan Carlos Ríos y Juan Ignacio Ríos con la asistencia de Claude AI 3.5 Sonnet
+  Correo electrónico: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Empresa: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+  <>
+
+  Copyright © 2024 Juan Carlos Ríos y Juan Ignacio Ríos, Grupo Sauken S.A.
+
+  This program is free software; you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation; either version 2 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License along
+  with this program; if not, write to the Free Software Foundation, Inc.,
+  51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+
+  Authors: Juan Carlos Ríos y Juan Ignacio Ríos with support of Claude AI 3.5 Sonnet
+  E-mail: mailto:jrios@sauken.com.ar,nrios@sauken.com.ar
+  Company: Grupo Sauken S.A.
+  WebSite: https://www.sauken.com.ar/
+  Git: https://github.com/Grupo-Sauken-S-A/S-FIDE
+
+ */
+
+package com.sauken.s_fide.xml_verify_signatures.validation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Límite de consultas simultáneas por servidor, contra un servidor local que retiene cada
+ * consulta hasta que la prueba la libera y registra cuántas atendió a la vez.
+ */
+class SharedHttpClientTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    private HttpServer server;
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final List<String> served = new ArrayList<>();
+    private String baseUrl;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            try (exchange) {
+                maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                synchronized (served) {
+                    served.add(exchange.getRequestURI().getPath());
+                }
+                if (!exchange.getRequestURI().getPath().startsWith("/libre")) {
+                    release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                }
+                active.decrementAndGet();
+                exchange.sendResponseHeaders(200, -1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.start();
+        baseUrl = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":"
+                + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    void stopServer() {
+        release.countDown();
+        server.stop(0);
+    }
+
+    @Test
+    void limitsConcurrentRequestsPerHost() throws Exception {
+        SharedHttpClient client = client(2);
+
+        List<CompletableFuture<HttpResponse<byte[]>>> responses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            responses.add(client.sendAsync(get(client, "/consulta" + i)));
+        }
+        awaitServed(2);
+        // Las otras ocho esperan en el cliente sin llegar al servidor.
+        Thread.sleep(200);
+        assertEquals(2, served().size());
+
+        release.countDown();
+        for (CompletableFuture<HttpResponse<byte[]>> response : responses) {
+            assertEquals(200, response.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).statusCode());
+        }
+        assertEquals(2, maxActive.get());
+        assertEquals(10, served().size());
+    }
+
+    @Test
+    void cancelledWaitingRequestReleasesItsTurn() throws Exception {
+        SharedHttpClient client = client(1);
+
+        CompletableFuture<HttpResponse<byte[]>> running = client.sendAsync(get(client, "/primera"));
+        awaitServed(1);
+        CompletableFuture<HttpResponse<byte[]>> cancelled = client.sendAsync(get(client, "/cancelada"));
+        CompletableFuture<HttpResponse<byte[]>> next = client.sendAsync(get(client, "/siguiente"));
+        assertTrue(cancelled.cancel(true));
+
+        release.countDown();
+        assertEquals(200, running.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).statusCode());
+        assertEquals(200, next.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).statusCode());
+        assertThrows(CancellationException.class, cancelled::join);
+
+        // La consulta cancelada nunca llegó al servidor y el turno quedó libre.
+        assertEquals(200, client.sendAsync(get(client, "/libre")).get(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .statusCode());
+        assertEquals(List.of("/primera", "/siguiente", "/libre"), served());
+    }
+
+    @Test
+    void longQueueOfCancelledRequestsIsSkippedWithoutRecursion() throws Exception {
+        SharedHttpClient client = client(1);
+
+        CompletableFuture<HttpResponse<byte[]>> running = client.sendAsync(get(client, "/primera"));
+        awaitServed(1);
+        // Como las consultas perdedoras que se cancelan en RevocationValidator: una llamada
+        // anidada por cada una agotaría la pila del hilo que libera el turno.
+        for (int i = 0; i < 50_000; i++) {
+            client.sendAsync(get(client, "/cancelada")).cancel(true);
+        }
+        CompletableFuture<HttpResponse<byte[]>> next = client.sendAsync(get(client, "/siguiente"));
+
+        release.countDown();
+        assertEquals(200, running.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).statusCode());
+        assertEquals(200, next.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).statusCode());
+        assertEquals(List.of("/primera", "/siguiente"), served());
+    }
+
+    @Test
+    void cancelledRunningRequestReleasesItsTurn() throws Exception {
+        SharedHttpClient client = client(1);
+
+        CompletableFuture<HttpResponse<byte[]>> running = client.sendAsync(get(client, "/retenida"));
+        awaitServed(1);
+        CompletableFuture<HttpResponse<byte[]>> next = client.sendAsync(get(client, "/libre"));
+        running.cancel(true);
+
+        // El servidor sigue reteniendo la primera consulta; la siguiente pasa igual.
+        assertEquals(200, next.get(2, TimeUnit.SECONDS).statusCode());
+    }
+
+    /**
+     * Cliente sin tiempo máximo por consulta, para que sólo una cancelación o la respuesta
+     * puedan liberar el turno.
+     */
+    private static SharedHttpClient client(int maxConnectionsPerHost) {
+        return new SharedHttpClient(new SharedHttpClient.Settings(Duration.ofSeconds(5), null,
+                maxConnectionsPerHost, null));
+    }
+
+    private HttpRequest get(SharedHttpClient client, String path) {
+        return client.newRequest(baseUrl + path).GET().build();
+    }
+
+    private List<String> served() {
+        synchronized (served) {
+            return List.copyOf(served);
+        }
+    }
+
+    private void awaitServed(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (served().size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, served().size());
+    }
+}